@@ -0,0 +1,35 @@
+package com.wyldsoft.notes
+
+import com.onyx.android.sdk.data.note.TouchPoint
+import com.onyx.android.sdk.pen.data.TouchPointList
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Synthetic strokes shared by the instrumented tests and benchmarks
+ */
+object TestStrokes {
+    /**
+     * Handwriting-like stroke: a wandering curve with varying pressure, points 8ms apart
+     * Strokes are laid out on a grid by seed, so a batch of them spreads over a page.
+     * @param seed Varies the position and shape of the stroke
+     * @param pointCount Number of points
+     */
+    fun synthetic(seed: Int, pointCount: Int): TouchPointList {
+        val list = TouchPointList()
+        val originX = (seed % 40) * 40f
+        val originY = (seed / 40) * 30f
+        val timestamp = 1_700_000_000_000L + seed * 1_000L
+        for (i in 0 until pointCount) {
+            val t = i / 8f
+            val point = TouchPoint()
+            point.x = originX + i * 0.6f + 6f * sin(t + seed)
+            point.y = originY + 8f * cos(t * 0.7f + seed)
+            point.pressure = 0.4f + 0.3f * sin(t * 0.5f)
+            point.size = 1f
+            point.timestamp = timestamp + i * 8L
+            list.add(point)
+        }
+        return list
+    }
+}
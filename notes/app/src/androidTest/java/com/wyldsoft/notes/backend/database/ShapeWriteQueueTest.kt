@@ -0,0 +1,126 @@
+package com.wyldsoft.notes.backend.database
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.wyldsoft.notes.TestStrokes
+import com.wyldsoft.notes.backend.database.entities.Shape
+import com.wyldsoft.notes.backend.database.repository.ShapeChangeStore
+import com.wyldsoft.notes.data.ShapeFactory
+import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+
+@RunWith(AndroidJUnit4::class)
+class ShapeWriteQueueTest {
+    companion object {
+        private const val NOTE = "note"
+
+        // Long enough that only flush() commits during a test
+        private const val NO_TIMED_COMMIT_MS = 60_000L
+    }
+
+    /**
+     * Records every batch instead of writing it
+     */
+    private class FakeShapeChangeStore(private val failWrites: Boolean = false) : ShapeChangeStore {
+        val batches = mutableListOf<Pair<List<Shape>, List<String>>>()
+
+        override suspend fun applyShapeChanges(inserted: List<Shape>, deletedIds: List<String>) {
+            if (failWrites) throw IllegalStateException("Simulated crash before commit")
+            batches.add(inserted to deletedIds)
+        }
+    }
+
+    private lateinit var database: NotesDatabase
+    private lateinit var penProfiles: PenProfileCache
+    private lateinit var directory: File
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        database = Room.inMemoryDatabaseBuilder(context, NotesDatabase::class.java).build()
+        penProfiles = PenProfileCache(database.penProfileDao())
+        directory = File(context.cacheDir, "write_queue_test_${System.nanoTime()}")
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun insertThenDeleteOfSameShapeCancelsBeforeCommit() = runBlocking {
+        val store = FakeShapeChangeStore()
+        val queue = ShapeWriteQueue(store, penProfiles, maxDelayMs = NO_TIMED_COMMIT_MS)
+        val kept = drawingShape(seed = 1)
+        val erased = drawingShape(seed = 2)
+
+        queue.enqueueInsert(kept, NOTE, null)
+        queue.enqueueInsert(erased, NOTE, null)
+        queue.enqueueDeletes(NOTE, listOf(erased.id))
+        queue.flush()
+
+        assertEquals(1, store.batches.size)
+        val (inserted, deleted) = store.batches.single()
+        assertEquals(listOf(kept.id), inserted.map { it.id })
+        // The delete is kept in case an earlier batch already stored the row
+        assertEquals(listOf(erased.id), deleted)
+        assertEquals(0, queue.getQueueDepth())
+    }
+
+    @Test
+    fun deleteThenReinsertKeepsTheInsert() = runBlocking {
+        val store = FakeShapeChangeStore()
+        val queue = ShapeWriteQueue(store, penProfiles, maxDelayMs = NO_TIMED_COMMIT_MS)
+        val shape = drawingShape(seed = 3)
+
+        queue.enqueueDeletes(NOTE, listOf(shape.id))
+        queue.enqueueInsert(shape, NOTE, null)
+        queue.flush()
+
+        val (inserted, deleted) = store.batches.single()
+        assertEquals(listOf(shape.id), inserted.map { it.id })
+        assertTrue(deleted.isEmpty())
+    }
+
+    @Test
+    fun replayAppliesCoalescedJournalAfterFailedCommit() = runBlocking {
+        val shapes = List(3) { drawingShape(seed = it) }
+        val crashed = ShapeWriteQueue(
+            FakeShapeChangeStore(failWrites = true),
+            penProfiles,
+            StrokeJournal(directory, syncEachRecord = false),
+            maxDelayMs = NO_TIMED_COMMIT_MS
+        )
+        shapes.forEach { crashed.enqueueInsert(it, NOTE, null) }
+        crashed.enqueueDeletes(NOTE, listOf(shapes[1].id))
+        crashed.flush()
+
+        // A fresh queue over the same directory, as after a restart
+        val store = FakeShapeChangeStore()
+        val journal = StrokeJournal(directory, syncEachRecord = false)
+        val recovered = ShapeWriteQueue(store, penProfiles, journal, maxDelayMs = NO_TIMED_COMMIT_MS)
+        recovered.replayJournal(NOTE)
+
+        val (inserted, deleted) = store.batches.single()
+        assertEquals(listOf(shapes[0].id, shapes[2].id), inserted.map { it.id })
+        assertEquals(listOf(shapes[1].id), deleted)
+        assertTrue(journal.segmentsFor(NOTE).isEmpty())
+    }
+
+    private fun drawingShape(seed: Int): DrawingShape {
+        return ShapeFactory.createShape(ShapeFactory.SHAPE_PENCIL_SCRIBBLE)
+            .setTouchPointList(TestStrokes.synthetic(seed, pointCount = 30))
+            .setStrokeWidth(3f)
+            .setCreatedAt(1_000L + seed)
+            .setPenProfileId(1L)
+    }
+}
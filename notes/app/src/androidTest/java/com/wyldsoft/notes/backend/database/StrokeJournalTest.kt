@@ -0,0 +1,140 @@
+package com.wyldsoft.notes.backend.database
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.wyldsoft.notes.TestStrokes
+import com.wyldsoft.notes.backend.database.entities.Shape
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.io.RandomAccessFile
+
+@RunWith(AndroidJUnit4::class)
+class StrokeJournalTest {
+    companion object {
+        private const val NOTE = "note"
+    }
+
+    private lateinit var directory: File
+    private lateinit var journal: StrokeJournal
+
+    @Before
+    fun setUp() {
+        val cacheDir = InstrumentationRegistry.getInstrumentation().targetContext.cacheDir
+        directory = File(cacheDir, "stroke_journal_test_${System.nanoTime()}")
+        journal = StrokeJournal(directory, syncEachRecord = false)
+    }
+
+    @After
+    fun tearDown() {
+        journal.seal()
+        directory.deleteRecursively()
+    }
+
+    @Test
+    fun roundTripsInsertAndDeleteRecords() {
+        val inserted = shape("a", seed = 1, withRawPoints = true)
+        journal.appendInsert(inserted)
+        journal.appendInsert(shape("b", seed = 2))
+        journal.appendDeletes(NOTE, listOf("a", "c"))
+        journal.seal()
+
+        val records = journal.read(journal.segmentsFor(NOTE))
+
+        assertEquals(3, records.size)
+        val first = (records[0] as StrokeJournal.Record.Insert).shape
+        assertEquals("a", first.id)
+        assertEquals(NOTE, first.noteId)
+        assertEquals(inserted.penProfileId, first.penProfileId)
+        assertEquals(inserted.createdAt, first.createdAt)
+        assertEquals(inserted.boundingMaxX, first.boundingMaxX, 0f)
+        assertEquals(inserted.touchPointList.size(), first.touchPointList.size())
+        assertEquals(inserted.rawTouchPointList!!.size(), first.rawTouchPointList!!.size())
+        assertEquals(inserted.touchPointList.points[5].timestamp, first.touchPointList.points[5].timestamp)
+
+        val second = (records[1] as StrokeJournal.Record.Insert).shape
+        assertEquals("b", second.id)
+        assertNull(second.rawTouchPointList)
+
+        assertEquals(listOf("a", "c"), (records[2] as StrokeJournal.Record.Delete).shapeIds)
+    }
+
+    @Test
+    fun replayStopsCleanlyAtTornLastRecord() {
+        journal.appendInsert(shape("a", seed = 1))
+        journal.appendInsert(shape("b", seed = 2))
+        journal.seal()
+        val segment = journal.segmentsFor(NOTE).single()
+
+        // A crash mid-append leaves the last record short
+        RandomAccessFile(segment, "rw").use { it.setLength(it.length() - 7) }
+
+        val records = journal.read(listOf(segment))
+
+        assertEquals(1, records.size)
+        assertEquals("a", (records[0] as StrokeJournal.Record.Insert).shape.id)
+    }
+
+    @Test
+    fun replayStopsAtChecksumMismatch() {
+        journal.appendInsert(shape("a", seed = 1))
+        journal.appendDeletes(NOTE, listOf("a"))
+        journal.seal()
+        val segment = journal.segmentsFor(NOTE).single()
+
+        // Flip the last payload byte of the delete record
+        RandomAccessFile(segment, "rw").use { file ->
+            file.seek(file.length() - 1)
+            val last = file.readByte()
+            file.seek(file.length() - 1)
+            file.writeByte(last.toInt() xor 0x5A)
+        }
+
+        val records = journal.read(listOf(segment))
+
+        assertEquals(1, records.size)
+        assertTrue(records[0] is StrokeJournal.Record.Insert)
+    }
+
+    @Test
+    fun sealedSegmentsAreReadInAppendOrder() {
+        journal.appendInsert(shape("a", seed = 1))
+        journal.seal()
+        journal.appendDeletes(NOTE, listOf("a"))
+        journal.seal()
+
+        val segments = journal.segmentsFor(NOTE)
+        val records = journal.read(segments)
+
+        assertEquals(2, segments.size)
+        assertTrue(records[0] is StrokeJournal.Record.Insert)
+        assertTrue(records[1] is StrokeJournal.Record.Delete)
+
+        journal.delete(segments)
+        assertTrue(journal.segmentsFor(NOTE).isEmpty())
+    }
+
+    private fun shape(id: String, seed: Int, withRawPoints: Boolean = false): Shape {
+        val points = TestStrokes.synthetic(seed, pointCount = 40)
+        return Shape(
+            id = id,
+            noteId = NOTE,
+            touchPointList = points,
+            shapeType = 0,
+            strokeColor = 0xFF000000.toInt(),
+            strokeWidth = 3f,
+            penProfileId = 7,
+            boundingMinX = 0f,
+            boundingMinY = 0f,
+            boundingMaxX = 100f + seed,
+            boundingMaxY = 50f,
+            createdAt = 1_000L + seed,
+            rawTouchPointList = if (withRawPoints) TestStrokes.synthetic(seed, pointCount = 120) else null
+        )
+    }
+}
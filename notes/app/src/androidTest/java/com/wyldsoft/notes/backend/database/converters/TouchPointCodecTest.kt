@@ -0,0 +1,124 @@
+package com.wyldsoft.notes.backend.database.converters
+
+import android.os.SystemClock
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.google.gson.Gson
+import com.wyldsoft.notes.TestStrokes
+import com.onyx.android.sdk.pen.data.TouchPointList
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class TouchPointCodecTest {
+    companion object {
+        private const val TAG = "TouchPointCodecTest"
+        private const val BENCHMARK_STROKES = 2_000
+        private const val BENCHMARK_POINTS = 150
+    }
+
+    private val converter = TouchPointListConverter()
+    private val gson = Gson()
+
+    @Test
+    fun roundTripKeepsPointsWithinQuantization() {
+        val original = TestStrokes.synthetic(seed = 3, pointCount = 200)
+
+        val decoded = TouchPointCodec.decode(TouchPointCodec.encode(original.points))
+
+        assertEquals(original.size(), decoded.size())
+        original.points.zip(decoded.points).forEach { (expected, actual) ->
+            assertEquals(expected.x, actual.x, 0.5f / TouchPointCodec.COORDINATE_SCALE)
+            assertEquals(expected.y, actual.y, 0.5f / TouchPointCodec.COORDINATE_SCALE)
+            assertEquals(expected.pressure, actual.pressure, 0.5f / TouchPointCodec.PRESSURE_SCALE)
+            assertEquals(expected.size, actual.size, 0.5f / TouchPointCodec.SIZE_SCALE)
+            assertEquals(expected.timestamp, actual.timestamp)
+        }
+    }
+
+    @Test
+    fun roundTripsEmptyStroke() {
+        val encoded = TouchPointCodec.encode(emptyList())
+
+        assertEquals(0, TouchPointCodec.decode(encoded).size())
+        assertEquals(TouchPointCodec.FORMAT_PACKED_V1, encoded[0])
+    }
+
+    @Test
+    fun converterFallsBackToLegacyJson() {
+        val original = TestStrokes.synthetic(seed = 7, pointCount = 20)
+        val json = legacyJson(original).toByteArray(Charsets.UTF_8)
+
+        assertTrue(TouchPointCodec.isLegacyJson(json))
+        val decoded = converter.toTouchPointList(json)!!
+
+        assertEquals(original.size(), decoded.size())
+        original.points.zip(decoded.points).forEach { (expected, actual) ->
+            // JSON rows are exact, not quantized
+            assertEquals(expected.x, actual.x, 0f)
+            assertEquals(expected.y, actual.y, 0f)
+            assertEquals(expected.pressure, actual.pressure, 0f)
+            assertEquals(expected.timestamp, actual.timestamp)
+        }
+    }
+
+    @Test
+    fun converterWritesPackedFormat() {
+        val original = TestStrokes.synthetic(seed = 11, pointCount = 50)
+
+        val stored = converter.fromTouchPointList(original)!!
+
+        assertEquals(TouchPointCodec.FORMAT_PACKED_V1, stored[0])
+        assertArrayEquals(TouchPointCodec.encode(original.points), stored)
+    }
+
+    /**
+     * Encode/decode throughput and bytes per point, packed codec against the Gson path
+     */
+    @Test
+    fun benchmarkAgainstGson() {
+        val strokes = List(BENCHMARK_STROKES) { TestStrokes.synthetic(it, BENCHMARK_POINTS) }
+        val pointCount = BENCHMARK_STROKES.toLong() * BENCHMARK_POINTS
+
+        // Warm up both paths so the timings are not dominated by class loading and JIT
+        strokes.take(100).forEach {
+            TouchPointCodec.decode(TouchPointCodec.encode(it.points))
+            converter.toTouchPointList(legacyJson(it).toByteArray(Charsets.UTF_8))
+        }
+
+        var start = SystemClock.elapsedRealtimeNanos()
+        val packed = strokes.map { TouchPointCodec.encode(it.points) }
+        val packedEncodeNs = SystemClock.elapsedRealtimeNanos() - start
+        start = SystemClock.elapsedRealtimeNanos()
+        packed.forEach { TouchPointCodec.decode(it) }
+        val packedDecodeNs = SystemClock.elapsedRealtimeNanos() - start
+
+        start = SystemClock.elapsedRealtimeNanos()
+        val json = strokes.map { legacyJson(it).toByteArray(Charsets.UTF_8) }
+        val jsonEncodeNs = SystemClock.elapsedRealtimeNanos() - start
+        start = SystemClock.elapsedRealtimeNanos()
+        json.forEach { converter.toTouchPointList(it) }
+        val jsonDecodeNs = SystemClock.elapsedRealtimeNanos() - start
+
+        val packedBytesPerPoint = packed.sumOf { it.size.toLong() }.toDouble() / pointCount
+        val jsonBytesPerPoint = json.sumOf { it.size.toLong() }.toDouble() / pointCount
+        Log.d(TAG, "Packed: %.2f bytes/point, encode %.1f Mpts/s, decode %.1f Mpts/s".format(
+            packedBytesPerPoint, pointsPerSecond(pointCount, packedEncodeNs), pointsPerSecond(pointCount, packedDecodeNs)))
+        Log.d(TAG, "Gson:   %.2f bytes/point, encode %.1f Mpts/s, decode %.1f Mpts/s".format(
+            jsonBytesPerPoint, pointsPerSecond(pointCount, jsonEncodeNs), pointsPerSecond(pointCount, jsonDecodeNs)))
+
+        // Five zig-zag varints of small deltas per point
+        assertTrue("Packed format uses $packedBytesPerPoint bytes/point", packedBytesPerPoint < 12.0)
+        assertTrue(packedBytesPerPoint * 5 < jsonBytesPerPoint)
+    }
+
+    private fun pointsPerSecond(points: Long, nanos: Long): Double = points * 1_000.0 / nanos.coerceAtLeast(1)
+
+    private fun legacyJson(list: TouchPointList): String {
+        return gson.toJson(list.points.map { SerializableTouchPoint(it.x, it.y, it.pressure, it.timestamp, it.size) })
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.wyldsoft.notes.backend.database.dao
+
+import androidx.room.Room
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.onyx.android.sdk.data.note.TouchPoint
+import com.onyx.android.sdk.pen.data.TouchPointList
+import com.wyldsoft.notes.backend.database.NotesDatabase
+import com.wyldsoft.notes.backend.database.entities.Note
+import com.wyldsoft.notes.backend.database.entities.Shape
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class ShapeDaoTest {
+    private lateinit var database: NotesDatabase
+    private lateinit var shapeDao: ShapeDao
+
+    @Before
+    fun setUp() {
+        // In-memory databases use a single connection, so total_changes() sees every write
+        database = Room.inMemoryDatabaseBuilder(
+            InstrumentationRegistry.getInstrumentation().targetContext,
+            NotesDatabase::class.java
+        ).build()
+        shapeDao = database.shapeDao()
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    @Test
+    fun eraseWritesScaleWithErasedShapesNotNoteSize() = runBlocking {
+        val smallNote = seedNote("small", shapeCount = 50)
+        val largeNote = seedNote("large", shapeCount = 1_000)
+
+        val smallErase = changesDuring { shapeDao.applyShapeChanges(emptyList(), smallNote.take(5)) }
+        val largeErase = changesDuring { shapeDao.applyShapeChanges(emptyList(), largeNote.take(5)) }
+        val largerErase = changesDuring { shapeDao.applyShapeChanges(emptyList(), largeNote.subList(5, 15)) }
+
+        assertEquals(smallErase, largeErase)
+        assertEquals(2 * largeErase, largerErase)
+        assertEquals(1_000 - 15, shapeDao.getShapeCountInNote("large"))
+    }
+
+    @Test
+    fun eraseWithFragmentsWritesOnlyTheChangedRows() = runBlocking {
+        val ids = seedNote("note", shapeCount = 500)
+        val fragments = listOf(shape("fragment-a", "note", 0), shape("fragment-b", "note", 1))
+
+        val changes = changesDuring { shapeDao.applyShapeChanges(fragments, ids.take(1)) }
+
+        // One delete plus a header and a points row per fragment
+        assertTrue("Erase wrote $changes rows", changes <= 1 + 2 * fragments.size)
+        assertEquals(500 - 1 + fragments.size, shapeDao.getShapeCountInNote("note"))
+        assertEquals(2, shapeDao.getShapePointsByIds(listOf("fragment-a", "fragment-b")).size)
+    }
+
+    @Test
+    fun deletesAreChunkedUnderTheParameterLimit() = runBlocking {
+        val count = ShapeDao.MAX_IDS_PER_STATEMENT * 2 + 17
+        val ids = seedNote("bulk", shapeCount = count)
+
+        shapeDao.applyShapeChanges(emptyList(), ids)
+
+        assertEquals(0, shapeDao.getShapeCountInNote("bulk"))
+        assertTrue(shapeDao.getShapePointsByIds(ids.take(10)).isEmpty())
+    }
+
+    @Test
+    fun rawPointsAreStoredOnlyWhenRetained() = runBlocking {
+        database.noteDao().insertNote(Note(id = "raw"))
+        val raw = shape("with-raw", "raw", 0)
+        val withRaw = shape("with-raw", "raw", 0).copy(rawTouchPointList = raw.touchPointList)
+        shapeDao.insertShapes(listOf(withRaw, shape("without-raw", "raw", 1)))
+
+        assertEquals(20, shapeDao.getShapeById("with-raw")?.rawTouchPointList?.size())
+        assertEquals(null, shapeDao.getShapeById("without-raw")?.rawTouchPointList)
+    }
+
+    private suspend fun seedNote(noteId: String, shapeCount: Int): List<String> {
+        database.noteDao().insertNote(Note(id = noteId))
+        val shapes = List(shapeCount) { shape("$noteId-$it", noteId, it) }
+        shapeDao.insertShapes(shapes)
+        return shapes.map { it.id }
+    }
+
+    private suspend fun changesDuring(block: suspend () -> Unit): Long {
+        val before = totalChanges()
+        block()
+        return totalChanges() - before
+    }
+
+    private fun totalChanges(): Long {
+        database.openHelper.writableDatabase.query("SELECT total_changes()").use { cursor ->
+            cursor.moveToFirst()
+            return cursor.getLong(0)
+        }
+    }
+
+    private fun shape(id: String, noteId: String, index: Int): Shape {
+        val points = TouchPointList()
+        repeat(20) { i ->
+            val point = TouchPoint()
+            point.x = index * 10f + i
+            point.y = index * 5f
+            point.pressure = 0.5f
+            point.size = 1f
+            point.timestamp = index * 100L + i
+            points.add(point)
+        }
+        return Shape(
+            id = id,
+            noteId = noteId,
+            touchPointList = points,
+            shapeType = 0,
+            strokeColor = 0xFF000000.toInt(),
+            strokeWidth = 5f,
+            penProfileId = 1,
+            boundingMinX = index * 10f,
+            boundingMinY = index * 5f,
+            boundingMaxX = index * 10f + 20f,
+            boundingMaxY = index * 5f + 1f,
+            createdAt = index.toLong()
+        )
+    }
+}
@@ -0,0 +1,125 @@
+package com.wyldsoft.notes.editorview.drawing.shape
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.wyldsoft.notes.TestStrokes
+import com.wyldsoft.notes.data.ShapeFactory
+import com.wyldsoft.notes.render.RendererHelper
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Stroke point memory for a synthetic large note, TouchPointList versus StrokeData
+ * Builds the same strokes in both representations and measures the heap each one retains
+ * as the used-heap delta after garbage collection, then what rendering the shapes adds.
+ */
+@RunWith(AndroidJUnit4::class)
+class StrokeMemoryBenchmark {
+    companion object {
+        private const val TAG = "StrokeMemoryBenchmark"
+        private const val STROKES = 2_000
+        private const val POINTS_PER_STROKE = 150
+
+        // Four floats and an int timestamp offset per point, plus array headers per stroke
+        private const val MAX_ESTIMATE_BYTES_PER_POINT = 21.0
+
+        // Heap deltas include GC noise, so the measured bound leaves room above the estimate
+        private const val MAX_MEASURED_BYTES_PER_POINT = 32.0
+
+        // Kept-index arrays for the three simplified LOD levels, at most one int per point each;
+        // path geometry lives in native memory and does not show in the Java heap
+        private const val MAX_RENDER_CACHE_BYTES_PER_POINT = 16.0
+    }
+
+    @Test
+    fun strokeDataEstimateStaysWithinPointBound() {
+        val strokes = List(STROKES) { StrokeData.fromTouchPointList(TestStrokes.synthetic(it, POINTS_PER_STROKE)) }
+        val pointCount = strokes.sumOf { it.size().toLong() }
+        val estimate = strokes.sumOf { it.estimateBytes() }
+
+        assertEquals(STROKES.toLong() * POINTS_PER_STROKE, pointCount)
+        assertTrue(
+            "StrokeData estimate ${estimate.toDouble() / pointCount} bytes per point",
+            estimate.toDouble() / pointCount <= MAX_ESTIMATE_BYTES_PER_POINT
+        )
+    }
+
+    @Test
+    fun strokeDataRetainsLessHeapThanTouchPointLists() {
+        val baseline = usedHeap()
+        val lists = List(STROKES) { TestStrokes.synthetic(it, POINTS_PER_STROKE) }
+        val afterLists = usedHeap()
+        val strokes = lists.map { StrokeData.fromTouchPointList(it) }
+        val afterStrokes = usedHeap()
+
+        // Read both sets after measuring so neither is collected early
+        val pointCount = lists.sumOf { it.size().toLong() }
+        assertEquals(pointCount, strokes.sumOf { it.size().toLong() })
+
+        val listBytesPerPoint = (afterLists - baseline).toDouble() / pointCount
+        val strokeBytesPerPoint = (afterStrokes - afterLists).toDouble() / pointCount
+        Log.d(TAG, "TouchPointList: ${"%.1f".format(listBytesPerPoint)} bytes/point, " +
+                "StrokeData: ${"%.1f".format(strokeBytesPerPoint)} bytes/point for $pointCount points")
+
+        assertTrue(
+            "StrokeData retained $strokeBytesPerPoint bytes per point",
+            strokeBytesPerPoint <= MAX_MEASURED_BYTES_PER_POINT
+        )
+        assertTrue(
+            "StrokeData $strokeBytesPerPoint vs TouchPointList $listBytesPerPoint bytes per point",
+            strokeBytesPerPoint * 2 < listBytesPerPoint
+        )
+    }
+
+    @Test
+    fun renderedShapesRetainNoTouchPoints() {
+        val helper = RendererHelper()
+        val bitmap = Bitmap.createBitmap(800, 800, Bitmap.Config.ARGB_8888)
+        val renderContext = helper.renderContext.apply {
+            this.bitmap = bitmap
+            canvas = Canvas(bitmap)
+            // Render through the shapes' own caches rather than recorded pictures
+            displayListsEnabled = false
+        }
+
+        val baseline = usedHeap()
+        val shapes = List(STROKES) {
+            // Pencil strokes cache paths; fountain pen strokes go through the SDK pen point lists
+            val type = if (it % 2 == 0) ShapeFactory.SHAPE_PENCIL_SCRIBBLE else ShapeFactory.SHAPE_BRUSH_SCRIBBLE
+            ShapeFactory.createShape(type).setTouchPointList(TestStrokes.synthetic(it, POINTS_PER_STROKE))
+        }
+        val afterShapes = usedHeap()
+        for (level in 0 until DrawingShape.LOD_LEVEL_COUNT) {
+            renderContext.lodLevel = level
+            renderContext.resetPaint()
+            shapes.forEach { it.renderWithDisplayList(renderContext) }
+        }
+        val afterRender = usedHeap()
+
+        val pointCount = STROKES.toLong() * POINTS_PER_STROKE
+        assertEquals(STROKES, shapes.size)
+        val shapeBytesPerPoint = (afterShapes - baseline).toDouble() / pointCount
+        val renderBytesPerPoint = (afterRender - afterShapes).toDouble() / pointCount
+        Log.d(TAG, "Shapes: ${"%.1f".format(shapeBytesPerPoint)} bytes/point, " +
+                "render caches: ${"%.1f".format(renderBytesPerPoint)} bytes/point for $pointCount points")
+
+        assertTrue(
+            "Render caches retained $renderBytesPerPoint bytes per point",
+            renderBytesPerPoint <= MAX_RENDER_CACHE_BYTES_PER_POINT
+        )
+        bitmap.recycle()
+    }
+
+    private fun usedHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        repeat(3) {
+            runtime.gc()
+            System.runFinalization()
+        }
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+}
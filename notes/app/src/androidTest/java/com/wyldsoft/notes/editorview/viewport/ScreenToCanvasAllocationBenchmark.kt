@@ -0,0 +1,111 @@
+package com.wyldsoft.notes.editorview.viewport
+
+import android.graphics.PointF
+import android.os.Debug
+import android.util.Log
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.onyx.android.sdk.data.note.TouchPoint
+import com.onyx.android.sdk.pen.data.TouchPointList
+import com.wyldsoft.notes.TestStrokes
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Allocations per stroke for the screen-to-canvas conversion of pen input
+ * Compares the old per-point PointF path with the bulk in-place transform, counting
+ * allocations on the test thread with the runtime's allocation counter.
+ */
+@RunWith(AndroidJUnit4::class)
+class ScreenToCanvasAllocationBenchmark {
+    companion object {
+        private const val TAG = "ScreenToCanvasAllocationBenchmark"
+        private const val STROKES = 200
+        private const val POINTS_PER_STROKE = 150
+    }
+
+    private lateinit var viewportManager: ViewportManager
+    private lateinit var strokes: List<TouchPointList>
+
+    @Before
+    fun setUp() {
+        viewportManager = ViewportManager(1404, 1872)
+        viewportManager.setZoomLevelAtFocus(2f, 300f, 400f)
+        viewportManager.scrollByPixels(0f, 500f)
+        strokes = List(STROKES) { TestStrokes.synthetic(it, POINTS_PER_STROKE) }
+    }
+
+    @Test
+    fun bulkTransformMatchesPerPointTransform() {
+        val stroke = strokes[0]
+        val expected = perPointTransform(stroke)
+
+        viewportManager.screenToCanvas(stroke.points)
+
+        for (i in 0 until stroke.size()) {
+            assertEquals(expected.get(i).x, stroke.get(i).x, 0.001f)
+            assertEquals(expected.get(i).y, stroke.get(i).y, 0.001f)
+        }
+    }
+
+    @Test
+    fun allocationsPerStroke() {
+        // Warm up both paths so the bulk buffer is already sized
+        perPointTransform(strokes[0])
+        viewportManager.screenToCanvas(strokes[0].points)
+
+        val before = countAllocations {
+            strokes.forEach { perPointTransform(it) }
+        }
+        val after = countAllocations {
+            strokes.forEach { viewportManager.screenToCanvas(it.points) }
+        }
+
+        val beforePerStroke = before.toDouble() / STROKES
+        val afterPerStroke = after.toDouble() / STROKES
+        Log.d(TAG, "Allocations per $POINTS_PER_STROKE-point stroke: " +
+                "per-point ${"%.1f".format(beforePerStroke)}, bulk ${"%.1f".format(afterPerStroke)}")
+
+        assertTrue("Per-point path allocated $beforePerStroke per stroke",
+            beforePerStroke >= 4.0 * POINTS_PER_STROKE)
+        assertTrue("Bulk path allocated $afterPerStroke per stroke", afterPerStroke < 1.0)
+    }
+
+    /**
+     * The conversion as it was before the bulk API: a PointF in, a float[] and PointF out,
+     * a new TouchPoint per point, an intermediate list and a final TouchPointList copy
+     */
+    private fun perPointTransform(stroke: TouchPointList): TouchPointList {
+        val converted = stroke.points.map { point ->
+            val canvasPoint = viewportManager.screenToCanvas(PointF(point.x, point.y))
+            TouchPoint().apply {
+                x = canvasPoint.x
+                y = canvasPoint.y
+                pressure = point.pressure
+                timestamp = point.timestamp
+                size = point.size
+            }
+        }
+        val result = TouchPointList()
+        converted.forEach { result.add(it) }
+        return result
+    }
+
+    private fun countAllocations(block: () -> Unit): Int {
+        @Suppress("DEPRECATION")
+        Debug.resetThreadAllocCount()
+        @Suppress("DEPRECATION")
+        Debug.startAllocCounting()
+        try {
+            block()
+        } finally {
+            @Suppress("DEPRECATION")
+            Debug.stopAllocCounting()
+        }
+        @Suppress("DEPRECATION")
+        return Debug.getThreadAllocCount()
+    }
+
+}
@@ -7,8 +7,9 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.view.SurfaceView;
 
+import com.wyldsoft.notes.editorview.drawing.onyx.OnyxEpdUpdateModeController;
+import com.wyldsoft.notes.editorview.rendering.EpdUpdateModeController;
 import com.wyldsoft.notes.render.RendererUtils;
-import com.onyx.android.sdk.api.device.epd.EpdController;
 import com.onyx.android.sdk.api.device.epd.UpdateMode;
 import com.onyx.android.sdk.rx.RxRequest;
 import com.onyx.android.sdk.utils.RectUtils;
@@ -17,6 +18,10 @@ public class PartialRefreshRequest extends RxRequest {
     private RectF refreshRect;
     private SurfaceView surfaceView;
     private Bitmap bitmap;
+    private Rect sourceRect;
+    private Runnable onRendered;
+    private UpdateMode updateMode = UpdateMode.HAND_WRITING_REPAINT_MODE;
+    private EpdUpdateModeController updateModeController = OnyxEpdUpdateModeController.INSTANCE;
 
     public PartialRefreshRequest(Context context, SurfaceView surfaceView, RectF refreshRect) {
         setContext(context);
@@ -29,9 +34,38 @@ public class PartialRefreshRequest extends RxRequest {
         return this;
     }
 
+    /**
+     * Draw only this region of the bitmap instead of scaling the whole bitmap into the refresh rect
+     */
+    public PartialRefreshRequest setSourceRect(Rect sourceRect) {
+        this.sourceRect = sourceRect;
+        return this;
+    }
+
+    // Runs on the render thread once the frame has been posted (or skipped)
+    public PartialRefreshRequest setOnRendered(Runnable onRendered) {
+        this.onRendered = onRendered;
+        return this;
+    }
+
+    /**
+     * E-ink waveform to post this frame with, chosen by the refresh policy
+     */
+    public PartialRefreshRequest setUpdateMode(UpdateMode updateMode, EpdUpdateModeController updateModeController) {
+        this.updateMode = updateMode;
+        this.updateModeController = updateModeController;
+        return this;
+    }
+
     @Override
     public void execute() throws Exception {
-        renderToScreen(surfaceView, bitmap);
+        try {
+            renderToScreen(surfaceView, bitmap);
+        } finally {
+            if (onRendered != null) {
+                onRendered.run();
+            }
+        }
     }
 
     private void renderToScreen(SurfaceView surfaceView, Bitmap bitmap) {
@@ -40,7 +74,7 @@ public class PartialRefreshRequest extends RxRequest {
         }
         Rect renderRect = RectUtils.toRect(refreshRect);
         Rect viewRect = RendererUtils.checkSurfaceView(surfaceView);
-        EpdController.setViewDefaultUpdateMode(surfaceView, UpdateMode.HAND_WRITING_REPAINT_MODE);
+        updateModeController.setViewDefaultUpdateMode(surfaceView, updateMode);
         Canvas canvas = surfaceView.getHolder().lockCanvas(renderRect);
         if (canvas == null) {
             return;
@@ -53,13 +87,15 @@ public class PartialRefreshRequest extends RxRequest {
             e.printStackTrace();
         } finally {
             surfaceView.getHolder().unlockCanvasAndPost(canvas);
-            EpdController.resetViewUpdateMode(surfaceView);
+            updateModeController.resetViewUpdateMode(surfaceView);
         }
     }
 
     private void drawRendererContent(Bitmap bitmap, Canvas canvas) {
-        // Source rectangle - entire bitmap
-        Rect srcRect = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        // Source rectangle - requested region, or the entire bitmap
+        Rect srcRect = sourceRect != null
+                ? sourceRect
+                : new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
         
         // Destination rectangle - positioned at refresh bounds on screen
         Rect dstRect = new Rect(
@@ -4,6 +4,11 @@ import android.content.Context
 import androidx.lifecycle.ViewModelProvider
 import androidx.lifecycle.ViewModelStoreOwner
 import com.wyldsoft.notes.backend.database.repository.NotesRepository
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import java.io.File
 
 /**
  * Manager class to initialize and provide database dependencies
@@ -13,15 +18,37 @@ class DatabaseManager private constructor(context: Context) {
     private val database = NotesDatabase.getDatabase(context)
     val repository = NotesRepository.getInstance(database)
 
+    // Shared pen profile instances by interned id
+    val penProfileCache = PenProfileCache(database.penProfileDao())
+
+    // Group-commits stroke inserts and deletes off the main thread, journaling them first
+    val shapeWriteQueue = ShapeWriteQueue(
+        repository,
+        penProfileCache,
+        StrokeJournal(File(context.filesDir, JOURNAL_DIRECTORY))
+    )
+
+    // Loads points of shapes read as headers only, on first render or hit test
+    val shapePointLoader = ShapePointLoader(repository)
+
+    // Background work that outlives any single screen
+    private val backgroundScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+
+    init {
+        LegacyShapeRewriter(database, backgroundScope).start()
+        backgroundScope.launch { penProfileCache.preload() }
+    }
+
     companion object {
+        private const val JOURNAL_DIRECTORY = "stroke_journal"
+
         @Volatile
         private var INSTANCE: DatabaseManager? = null
 
         fun getInstance(context: Context): DatabaseManager {
+            // Re-checked under the lock: a second instance would open a second journal on the same directory
             return INSTANCE ?: synchronized(this) {
-                val instance = DatabaseManager(context.applicationContext)
-                INSTANCE = instance
-                instance
+                INSTANCE ?: DatabaseManager(context.applicationContext).also { INSTANCE = it }
             }
         }
     }
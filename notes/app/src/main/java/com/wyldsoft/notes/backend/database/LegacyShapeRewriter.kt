@@ -0,0 +1,49 @@
+package com.wyldsoft.notes.backend.database
+
+import android.util.Log
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.launch
+
+/**
+ * Rewrites shape rows still stored as JSON text into the packed binary format.
+ * Runs in small batches so note loading never waits on the whole table.
+ */
+class LegacyShapeRewriter(
+    private val database: NotesDatabase,
+    private val scope: CoroutineScope
+) {
+    companion object {
+        private const val TAG = "LegacyShapeRewriter"
+        private const val BATCH_SIZE = 200
+    }
+
+    private var job: Job? = null
+
+    /**
+     * Start the background rewrite if it is not already running
+     */
+    fun start() {
+        if (job?.isActive == true) return
+
+        job = scope.launch {
+            val shapeDao = database.shapeDao()
+            var rewritten = 0
+
+            try {
+                while (true) {
+                    val ids = shapeDao.getLegacyEncodedShapeIds(BATCH_SIZE)
+                    if (ids.isEmpty()) break
+
+                    // Reading decodes the JSON, updating writes the packed format back
+                    val points = shapeDao.getShapePointsByIds(ids)
+                    shapeDao.updateShapePoints(points)
+                    rewritten += points.size
+                }
+                Log.d(TAG, "Rewrote $rewritten legacy shapes to packed encoding")
+            } catch (e: Exception) {
+                Log.e(TAG, "Legacy shape rewrite stopped after $rewritten shapes", e)
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@ import androidx.room.Room
 import androidx.room.RoomDatabase
 import androidx.room.TypeConverters
 import android.content.Context
+import android.util.Log
 import androidx.room.migration.Migration
 import androidx.sqlite.db.SupportSQLiteDatabase
 import com.wyldsoft.notes.backend.database.entities.*
@@ -17,23 +18,156 @@ import com.wyldsoft.notes.backend.database.converters.*
         Notebook::class,
         Note::class,
         NotebookNoteReference::class,
-        Shape::class
+        ShapeHeader::class,
+        ShapePoints::class,
+        PenProfileRecord::class
     ],
-    version = 1,
+    version = 6,
     exportSchema = true
 )
-@TypeConverters(TouchPointListConverter::class, PenProfileConverter::class)
+@TypeConverters(TouchPointListConverter::class)
 abstract class NotesDatabase : RoomDatabase() {
 
     abstract fun folderDao(): FolderDao
     abstract fun notebookDao(): NotebookDao
     abstract fun noteDao(): NoteDao
     abstract fun shapeDao(): ShapeDao
+    abstract fun penProfileDao(): PenProfileDao
 
     companion object {
+        private const val TAG = "NotesDatabase"
+
         @Volatile
         private var INSTANCE: NotesDatabase? = null
 
+        /**
+         * Version 2 stores stroke points as a packed BLOB instead of JSON text.
+         * The column is recreated with BLOB affinity; existing JSON values are copied
+         * as-is and rewritten in the background by [LegacyShapeRewriter].
+         */
+        val MIGRATION_1_2 = object : Migration(1, 2) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("""
+                    CREATE TABLE IF NOT EXISTS `shapes_new` (`id` TEXT NOT NULL, `noteId` TEXT NOT NULL, `touchPointList` BLOB NOT NULL, `shapeType` INTEGER NOT NULL, `texture` INTEGER NOT NULL, `strokeColor` INTEGER NOT NULL, `strokeWidth` REAL NOT NULL, `isTransparent` INTEGER NOT NULL, `penProfileData` TEXT NOT NULL, `boundingMinX` REAL NOT NULL, `boundingMinY` REAL NOT NULL, `boundingMaxX` REAL NOT NULL, `boundingMaxY` REAL NOT NULL, `createdAt` INTEGER NOT NULL, PRIMARY KEY(`id`), FOREIGN KEY(`noteId`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )
+                """)
+                db.execSQL("""
+                    INSERT INTO shapes_new (id, noteId, touchPointList, shapeType, texture, strokeColor, strokeWidth, isTransparent, penProfileData, boundingMinX, boundingMinY, boundingMaxX, boundingMaxY, createdAt)
+                    SELECT id, noteId, touchPointList, shapeType, texture, strokeColor, strokeWidth, isTransparent, penProfileData, boundingMinX, boundingMinY, boundingMaxX, boundingMaxY, createdAt FROM shapes
+                """)
+                db.execSQL("DROP TABLE shapes")
+                db.execSQL("ALTER TABLE shapes_new RENAME TO shapes")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_shapes_noteId` ON `shapes` (`noteId`)")
+            }
+        }
+
+        /**
+         * Version 3 replaces the noteId index with a composite (noteId, boundingMinY, boundingMaxY)
+         * index so viewport range queries on shape bounds do not scan the whole note.
+         */
+        val MIGRATION_2_3 = object : Migration(2, 3) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("DROP INDEX IF EXISTS `index_shapes_noteId`")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_shapes_noteId_boundingMinY_boundingMaxY` ON `shapes` (`noteId`, `boundingMinY`, `boundingMaxY`)")
+            }
+        }
+
+        /**
+         * Version 4 moves stroke points out of `shapes` into `shape_points`, keyed by shape id,
+         * so bounds and count queries read narrow rows. The old table is renamed aside rather
+         * than dropped first, since dropping a parent table would cascade into the new points.
+         */
+        val MIGRATION_3_4 = object : Migration(3, 4) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE shapes RENAME TO shapes_old")
+                db.execSQL("""
+                    CREATE TABLE IF NOT EXISTS `shapes` (`id` TEXT NOT NULL, `noteId` TEXT NOT NULL, `shapeType` INTEGER NOT NULL, `texture` INTEGER NOT NULL, `strokeColor` INTEGER NOT NULL, `strokeWidth` REAL NOT NULL, `isTransparent` INTEGER NOT NULL, `penProfileData` TEXT NOT NULL, `boundingMinX` REAL NOT NULL, `boundingMinY` REAL NOT NULL, `boundingMaxX` REAL NOT NULL, `boundingMaxY` REAL NOT NULL, `createdAt` INTEGER NOT NULL, PRIMARY KEY(`id`), FOREIGN KEY(`noteId`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )
+                """)
+                db.execSQL("""
+                    INSERT INTO shapes (id, noteId, shapeType, texture, strokeColor, strokeWidth, isTransparent, penProfileData, boundingMinX, boundingMinY, boundingMaxX, boundingMaxY, createdAt)
+                    SELECT id, noteId, shapeType, texture, strokeColor, strokeWidth, isTransparent, penProfileData, boundingMinX, boundingMinY, boundingMaxX, boundingMaxY, createdAt FROM shapes_old
+                """)
+                db.execSQL("""
+                    CREATE TABLE IF NOT EXISTS `shape_points` (`shapeId` TEXT NOT NULL, `touchPointList` BLOB NOT NULL, PRIMARY KEY(`shapeId`), FOREIGN KEY(`shapeId`) REFERENCES `shapes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )
+                """)
+                db.execSQL("INSERT INTO shape_points (shapeId, touchPointList) SELECT id, touchPointList FROM shapes_old")
+                // Dropping the old table also drops its index, freeing the name for the new one
+                db.execSQL("DROP TABLE shapes_old")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_shapes_noteId_boundingMinY_boundingMaxY` ON `shapes` (`noteId`, `boundingMinY`, `boundingMaxY`)")
+            }
+        }
+
+        /**
+         * Version 5 interns the per-shape JSON pen profile into `pen_profiles` and stores its
+         * integer id in `shapes`. Each distinct JSON value is parsed once here. Point rows are
+         * parked in a constraint-free copy while `shapes` is rebuilt, so dropping the old table
+         * cannot cascade into them.
+         */
+        val MIGRATION_4_5 = object : Migration(4, 5) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS `pen_profiles` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `strokeWidth` REAL NOT NULL, `penType` TEXT NOT NULL, `strokeColor` INTEGER NOT NULL, `profileId` INTEGER NOT NULL)")
+                db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_pen_profiles_strokeWidth_penType_strokeColor_profileId` ON `pen_profiles` (`strokeWidth`, `penType`, `strokeColor`, `profileId`)")
+
+                // Map every distinct embedded JSON value to its interned row
+                db.execSQL("CREATE TABLE `pen_profile_json` (`json` TEXT NOT NULL PRIMARY KEY, `penProfileId` INTEGER NOT NULL)")
+                val converter = PenProfileConverter()
+                val fallback = StoredPenProfile(strokeWidth = 5f, penType = "BALLPEN", strokeColor = -0x1000000, profileId = 0)
+                db.query("SELECT DISTINCT penProfileData FROM shapes").use { cursor ->
+                    while (cursor.moveToNext()) {
+                        val json = cursor.getString(0)
+                        val profile = try {
+                            converter.toPenProfile(json) ?: fallback
+                        } catch (e: Exception) {
+                            Log.w(TAG, "Unreadable pen profile in shapes, using default: $json", e)
+                            fallback
+                        }
+                        val penProfileId = internPenProfile(db, profile)
+                        db.execSQL("INSERT INTO pen_profile_json (json, penProfileId) VALUES (?, ?)", arrayOf<Any>(json, penProfileId))
+                    }
+                }
+
+                db.execSQL("CREATE TABLE `shape_points_copy` AS SELECT shapeId, touchPointList FROM shape_points")
+                db.execSQL("DROP TABLE shape_points")
+
+                db.execSQL("ALTER TABLE shapes RENAME TO shapes_old")
+                db.execSQL("""
+                    CREATE TABLE IF NOT EXISTS `shapes` (`id` TEXT NOT NULL, `noteId` TEXT NOT NULL, `shapeType` INTEGER NOT NULL, `texture` INTEGER NOT NULL, `strokeColor` INTEGER NOT NULL, `strokeWidth` REAL NOT NULL, `isTransparent` INTEGER NOT NULL, `penProfileId` INTEGER NOT NULL, `boundingMinX` REAL NOT NULL, `boundingMinY` REAL NOT NULL, `boundingMaxX` REAL NOT NULL, `boundingMaxY` REAL NOT NULL, `createdAt` INTEGER NOT NULL, PRIMARY KEY(`id`), FOREIGN KEY(`noteId`) REFERENCES `notes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )
+                """)
+                db.execSQL("""
+                    INSERT INTO shapes (id, noteId, shapeType, texture, strokeColor, strokeWidth, isTransparent, penProfileId, boundingMinX, boundingMinY, boundingMaxX, boundingMaxY, createdAt)
+                    SELECT s.id, s.noteId, s.shapeType, s.texture, s.strokeColor, s.strokeWidth, s.isTransparent, j.penProfileId, s.boundingMinX, s.boundingMinY, s.boundingMaxX, s.boundingMaxY, s.createdAt
+                    FROM shapes_old s INNER JOIN pen_profile_json j ON j.json = s.penProfileData
+                """)
+                db.execSQL("DROP TABLE shapes_old")
+                db.execSQL("DROP TABLE pen_profile_json")
+                db.execSQL("CREATE INDEX IF NOT EXISTS `index_shapes_noteId_boundingMinY_boundingMaxY` ON `shapes` (`noteId`, `boundingMinY`, `boundingMaxY`)")
+
+                db.execSQL("""
+                    CREATE TABLE IF NOT EXISTS `shape_points` (`shapeId` TEXT NOT NULL, `touchPointList` BLOB NOT NULL, PRIMARY KEY(`shapeId`), FOREIGN KEY(`shapeId`) REFERENCES `shapes`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )
+                """)
+                db.execSQL("INSERT INTO shape_points (shapeId, touchPointList) SELECT shapeId, touchPointList FROM shape_points_copy")
+                db.execSQL("DROP TABLE shape_points_copy")
+            }
+
+            private fun internPenProfile(db: SupportSQLiteDatabase, profile: StoredPenProfile): Long {
+                val args = arrayOf<Any>(profile.strokeWidth, profile.penType, profile.strokeColor, profile.profileId)
+                db.execSQL("INSERT OR IGNORE INTO pen_profiles (strokeWidth, penType, strokeColor, profileId) VALUES (?, ?, ?, ?)", args)
+                db.query("SELECT id FROM pen_profiles WHERE strokeWidth = ? AND penType = ? AND strokeColor = ? AND profileId = ?", args).use { cursor ->
+                    cursor.moveToFirst()
+                    return cursor.getLong(0)
+                }
+            }
+        }
+
+        /**
+         * Version 6 adds a nullable `rawTouchPointList` column to `shape_points` for the
+         * full-rate capture points of simplified strokes. Existing rows have none.
+         */
+        val MIGRATION_5_6 = object : Migration(5, 6) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL("ALTER TABLE shape_points ADD COLUMN `rawTouchPointList` BLOB")
+            }
+        }
+
         fun getDatabase(context: Context): NotesDatabase {
             return INSTANCE ?: synchronized(this) {
                 val instance = Room.databaseBuilder(
@@ -42,6 +176,7 @@ abstract class NotesDatabase : RoomDatabase() {
                     "notes_database"
                 )
                     .addCallback(DatabaseCallback())
+                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6)
                     .build()
                 INSTANCE = instance
                 instance
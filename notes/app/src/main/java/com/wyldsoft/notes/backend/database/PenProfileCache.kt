@@ -0,0 +1,100 @@
+package com.wyldsoft.notes.backend.database
+
+import android.util.Log
+import com.wyldsoft.notes.backend.database.dao.PenProfileDao
+import com.wyldsoft.notes.backend.database.entities.PenProfileRecord
+import com.wyldsoft.notes.backend.database.entities.StoredPenProfile
+import com.wyldsoft.notes.pen.PenProfile
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Maps interned pen profile ids to one shared profile instance each, and profiles to ids
+ * The table holds a handful of rows, so it is read whole on first use; shapes then resolve
+ * their profile by id without decoding anything per shape. New profiles are interned
+ * through the database once and cached.
+ */
+class PenProfileCache(
+    private val penProfileDao: PenProfileDao
+) {
+    companion object {
+        private const val TAG = "PenProfileCache"
+    }
+
+    private val idsByProfile = ConcurrentHashMap<StoredPenProfile, Long>()
+    private val storedById = ConcurrentHashMap<Long, StoredPenProfile>()
+    private val penProfilesById = ConcurrentHashMap<Long, PenProfile>()
+
+    // Serializes loading and interning so a new profile is inserted once
+    private val mutex = Mutex()
+
+    @Volatile
+    private var loaded = false
+
+    /**
+     * Read every stored profile into the cache
+     */
+    suspend fun preload() {
+        if (loaded) return
+        mutex.withLock {
+            if (loaded) return
+            penProfileDao.getAllPenProfiles().forEach { cache(it.id, it.toStored()) }
+            loaded = true
+            Log.d(TAG, "Loaded ${storedById.size} pen profiles")
+        }
+    }
+
+    /**
+     * Id of the stored row for a profile, inserting the row the first time it is seen
+     */
+    suspend fun intern(profile: StoredPenProfile): Long {
+        idsByProfile[profile]?.let { return it }
+        preload()
+        return mutex.withLock {
+            idsByProfile[profile] ?: penProfileDao.internPenProfile(PenProfileRecord.from(profile)).also { id ->
+                cache(id, profile)
+                Log.d(TAG, "Interned pen profile $id: $profile")
+            }
+        }
+    }
+
+    /**
+     * Id of the stored row for a UI pen profile
+     */
+    suspend fun intern(penProfile: PenProfile): Long = intern(ShapeUtils.toStoredPenProfile(penProfile))
+
+    /**
+     * Shared stored profile for an id, loading it if it was added after preload
+     */
+    suspend fun getStoredProfile(id: Long): StoredPenProfile? {
+        storedById[id]?.let { return it }
+        preload()
+        storedById[id]?.let { return it }
+        return penProfileDao.getPenProfileById(id)?.toStored()?.also { cache(id, it) }
+    }
+
+    /**
+     * Shared UI pen profile for an id
+     */
+    suspend fun getPenProfile(id: Long): PenProfile? {
+        penProfilesById[id]?.let { return it }
+        val stored = getStoredProfile(id) ?: return null
+        return penProfilesById.getOrPut(id) { ShapeUtils.convertToPenProfile(stored) }
+    }
+
+    private fun cache(id: Long, profile: StoredPenProfile) {
+        val shared = storedById.putIfAbsent(id, profile) ?: profile
+        idsByProfile.putIfAbsent(shared, id)
+    }
+
+    /**
+     * Get cache statistics for debugging
+     */
+    fun getStats(): Map<String, Any> {
+        return mapOf(
+            "profiles" to storedById.size,
+            "penProfiles" to penProfilesById.size
+        )
+    }
+}
@@ -0,0 +1,71 @@
+package com.wyldsoft.notes.backend.database
+
+import android.util.Log
+import com.onyx.android.sdk.pen.data.TouchPointList
+import com.wyldsoft.notes.backend.database.repository.NotesRepository
+import com.wyldsoft.notes.editorview.drawing.shape.TouchPointSource
+import kotlinx.coroutines.runBlocking
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Loads the points of header-only shapes from `shape_points` when they are first needed
+ * Reads block, so they happen on the render or input thread that touched the shape; a
+ * failed read returns null and the shape retries on its next use. Screens and tiles prefetch
+ * their shapes through the batch load so a page of strokes costs one query, not one per shape.
+ */
+class ShapePointLoader(
+    private val repository: NotesRepository
+) : TouchPointSource {
+    companion object {
+        private const val TAG = "ShapePointLoader"
+    }
+
+    private val loads = AtomicLong()
+    private val failures = AtomicLong()
+    private val batches = AtomicLong()
+
+    override fun loadTouchPoints(shapeId: String): TouchPointList? {
+        return try {
+            val points = repository.getShapePoints(shapeId)?.touchPointList
+            if (points == null) {
+                Log.w(TAG, "No stored points for shape $shapeId")
+                failures.incrementAndGet()
+            } else {
+                loads.incrementAndGet()
+            }
+            points
+        } catch (e: Exception) {
+            Log.e(TAG, "Error loading points for shape $shapeId", e)
+            failures.incrementAndGet()
+            null
+        }
+    }
+
+    override fun loadTouchPoints(shapeIds: List<String>): Map<String, TouchPointList> {
+        if (shapeIds.isEmpty()) return emptyMap()
+        return try {
+            val rows = runBlocking { repository.getShapePointsByIds(shapeIds) }
+            batches.incrementAndGet()
+            loads.addAndGet(rows.size.toLong())
+            if (rows.size < shapeIds.size) {
+                Log.w(TAG, "Batch returned ${rows.size} of ${shapeIds.size} shapes")
+            }
+            rows.associate { it.shapeId to it.touchPointList }
+        } catch (e: Exception) {
+            Log.e(TAG, "Error batch loading points for ${shapeIds.size} shapes", e)
+            failures.incrementAndGet()
+            emptyMap()
+        }
+    }
+
+    /**
+     * Get lazy load counts for debugging
+     */
+    fun getStats(): Map<String, Any> {
+        return mapOf(
+            "pointLoads" to loads.get(),
+            "pointLoadBatches" to batches.get(),
+            "pointLoadFailures" to failures.get()
+        )
+    }
+}
@@ -1,12 +1,13 @@
 package com.wyldsoft.notes.backend.database
 
 import com.wyldsoft.notes.backend.database.entities.Shape as DatabaseShape
+import com.wyldsoft.notes.backend.database.entities.ShapeHeader
 import com.wyldsoft.notes.backend.database.entities.StoredPenProfile
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import com.wyldsoft.notes.editorview.drawing.shape.TouchPointSource
 import com.wyldsoft.notes.pen.PenProfile
 import com.wyldsoft.notes.pen.PenType
 import com.wyldsoft.notes.data.ShapeFactory
-import com.aventrix.jnanoid.jnanoid.NanoIdUtils
 import androidx.compose.ui.graphics.Color
 import androidx.compose.ui.graphics.toArgb
 import com.onyx.android.sdk.data.note.TouchPoint
@@ -19,19 +20,13 @@ object ShapeUtils {
 
     /**
      * Convert a drawing shape to a database shape for storage
+     * @param penProfileId Interned id of the pen profile, from [PenProfileCache.intern]
      */
     fun convertToDatabase(
         drawingShape: DrawingShape,
         noteId: String,
-        penProfile: PenProfile
+        penProfileId: Long
     ): DatabaseShape {
-        val storedPenProfile = StoredPenProfile(
-            strokeWidth = penProfile.strokeWidth,
-            penType = penProfile.penType.name,
-            strokeColor = penProfile.strokeColor.toArgb(),
-            profileId = penProfile.profileId
-        )
-
         // Calculate bounding box with stroke padding
         drawingShape.updateShapeRect()
         val bounds = drawingShape.boundingRect
@@ -50,7 +45,7 @@ object ShapeUtils {
         }
 
         return DatabaseShape(
-            id = NanoIdUtils.randomNanoId(),
+            id = drawingShape.id,
             noteId = noteId,
             touchPointList = drawingShape.touchPointList,
             shapeType = drawingShape.shapeType,
@@ -58,11 +53,14 @@ object ShapeUtils {
             strokeColor = drawingShape.strokeColor,
             strokeWidth = drawingShape.strokeWidth,
             isTransparent = drawingShape.isTransparent,
-            penProfileData = storedPenProfile,
+            penProfileId = penProfileId,
             boundingMinX = minX,
             boundingMinY = minY,
             boundingMaxX = maxX,
-            boundingMaxY = maxY
+            boundingMaxY = maxY,
+            createdAt = drawingShape.createdAt,
+            // Only strokes captured with raw point retention carry a second point set
+            rawTouchPointList = if (drawingShape.hasRawTouchPoints()) drawingShape.rawTouchPointList else null
         )
     }
 
@@ -72,17 +70,58 @@ object ShapeUtils {
     fun convertToDrawing(databaseShape: DatabaseShape): DrawingShape {
         val drawingShape = ShapeFactory.createShape(databaseShape.shapeType)
 
-        drawingShape.setTouchPointList(databaseShape.touchPointList)
+        drawingShape.setId(databaseShape.id)
+            .setCreatedAt(databaseShape.createdAt)
+            .setTouchPointList(databaseShape.touchPointList)
             .setShapeType(databaseShape.shapeType)
             .setTexture(databaseShape.texture)
             .setStrokeColor(databaseShape.strokeColor)
             .setStrokeWidth(databaseShape.strokeWidth)
+            .setPenProfileId(databaseShape.penProfileId)
 
         drawingShape.setTransparent(databaseShape.isTransparent)
+        databaseShape.rawTouchPointList?.let { drawingShape.setRawTouchPointList(it) }
+
+        return drawingShape
+    }
+
+    /**
+     * Convert a header-only row to a drawing shape whose points load on first render or hit test
+     * @param header Shape row without points
+     * @param pointSource Loads the points when the shape first needs them
+     */
+    fun convertToDrawing(header: ShapeHeader, pointSource: TouchPointSource): DrawingShape {
+        val drawingShape = ShapeFactory.createShape(header.shapeType)
+
+        drawingShape.setId(header.id)
+            .setCreatedAt(header.createdAt)
+            .setShapeType(header.shapeType)
+            .setTexture(header.texture)
+            .setStrokeColor(header.strokeColor)
+            .setStrokeWidth(header.strokeWidth)
+            .setPenProfileId(header.penProfileId)
+            .setTouchPointSource(
+                pointSource,
+                RectF(header.boundingMinX, header.boundingMinY, header.boundingMaxX, header.boundingMaxY)
+            )
+
+        drawingShape.setTransparent(header.isTransparent)
 
         return drawingShape
     }
 
+    /**
+     * Convert a UI pen profile to the form stored in the pen_profiles table
+     */
+    fun toStoredPenProfile(penProfile: PenProfile): StoredPenProfile {
+        return StoredPenProfile(
+            strokeWidth = penProfile.strokeWidth,
+            penType = penProfile.penType.name,
+            strokeColor = penProfile.strokeColor.toArgb(),
+            profileId = penProfile.profileId
+        )
+    }
+
     /**
      * Convert stored pen profile back to PenProfile for UI
      */
@@ -111,9 +150,11 @@ object ShapeUtils {
      */
     fun filterShapesInBounds(shapes: List<DrawingShape>, bounds: RectF): List<DrawingShape> {
         return shapes.filter { shape ->
-            // Ensure shape rect is updated with fresh calculation
-            shape.updateShapeRect()
-            
+            // Bounds are kept current when points change, only compute them if missing
+            if (shape.boundingRect == null) {
+                shape.updateShapeRect()
+            }
+
             // Check if shape has valid bounding rect and intersects with bounds
             shape.boundingRect?.let { shapeBounds ->
                 if (!shapeBounds.isEmpty) {
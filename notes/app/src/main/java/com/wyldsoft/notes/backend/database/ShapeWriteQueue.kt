@@ -0,0 +1,295 @@
+package com.wyldsoft.notes.backend.database
+
+import android.os.SystemClock
+import android.util.Log
+import com.wyldsoft.notes.backend.database.entities.Shape
+import com.wyldsoft.notes.backend.database.repository.ShapeChangeStore
+import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import com.wyldsoft.notes.pen.PenProfile
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import java.io.File
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Write-behind queue that group-commits shape inserts and deletes
+ * Callers enqueue changes without waiting; a single worker thread converts shapes to rows
+ * and applies everything pending in one transaction once MAX_BATCH_OPS changes are queued
+ * or MAX_DELAY_MS after the first pending change. An insert and a later delete of the same
+ * shape cancel out before reaching the database. flush() commits immediately and is called
+ * on pause and navigation so nothing is lost when the editor goes away.
+ *
+ * With a journal, every change is also appended to it on the worker as soon as it is queued,
+ * so ink survives a crash before the batch commits; replayJournal() applies what was left.
+ */
+class ShapeWriteQueue(
+    private val repository: ShapeChangeStore,
+    private val penProfiles: PenProfileCache,
+    private val journal: StrokeJournal? = null,
+    private val maxBatchOps: Int = MAX_BATCH_OPS,
+    private val maxDelayMs: Long = MAX_DELAY_MS
+) {
+    companion object {
+        private const val TAG = "ShapeWriteQueue"
+        const val MAX_BATCH_OPS = 64
+        const val MAX_DELAY_MS = 250L
+    }
+
+    // Single worker thread; all pending state below is only touched on it
+    private val dispatcher = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, TAG).apply { isDaemon = true }
+    }.asCoroutineDispatcher()
+    private val scope = CoroutineScope(SupervisorJob() + dispatcher)
+
+    private val pendingInserts = LinkedHashMap<String, Shape>()
+    private val pendingDeletes = LinkedHashSet<String>()
+    private var pendingOpCount = 0
+    private var oldestPendingAt = 0L
+    private var commitTimer: Job? = null
+
+    // Room suspends off the worker while writing, so batches are serialized explicitly
+    private val writeLock = Mutex()
+
+    // Statistics, readable from any thread
+    private val queueDepth = AtomicInteger()
+    @Volatile
+    private var lastCommitLatencyMs = 0L
+    @Volatile
+    private var maxCommitLatencyMs = 0L
+    @Volatile
+    private var batchesCommitted = 0L
+    @Volatile
+    private var opsCommitted = 0L
+
+    /**
+     * Queue a shape to be inserted
+     * @param shape Shape to store; converted to a row on the worker thread
+     * @param noteId Note the shape belongs to
+     * @param penProfile Pen profile the shape was drawn with, interned if the shape has no
+     *   profile id yet; null for shapes that carry or inherit one, such as eraser fragments
+     */
+    fun enqueueInsert(shape: DrawingShape, noteId: String, penProfile: PenProfile?) {
+        val id = shape.id
+        queueDepth.incrementAndGet()
+        scope.launch {
+            try {
+                val row = ShapeUtils.convertToDatabase(shape, noteId, resolvePenProfileId(shape, penProfile))
+                pendingDeletes.remove(id)
+                pendingInserts[id] = row
+                journal?.appendInsert(row)
+            } catch (e: Exception) {
+                // A journal failure only loses crash safety; the row is still committed
+                Log.e(TAG, "Error queueing shape $id", e)
+            }
+            pendingOpCount++
+            onEnqueued()
+        }
+    }
+
+    /**
+     * Profile id to store with a shape, remembered on the shape so later fragments inherit it
+     * Runs on the worker, after any queued insert of the shape a fragment was cut from
+     */
+    private suspend fun resolvePenProfileId(shape: DrawingShape, penProfile: PenProfile?): Long {
+        shape.penProfileId.takeIf { it != 0L }?.let { return it }
+        if (penProfile == null) {
+            Log.w(TAG, "Shape ${shape.id} has no pen profile to store")
+            return 0L
+        }
+        return penProfiles.intern(penProfile).also { shape.setPenProfileId(it) }
+    }
+
+    /**
+     * Queue shapes to be deleted
+     * @param noteId Note the shapes belong to
+     * @param shapeIds Ids of the rows to delete
+     */
+    fun enqueueDeletes(noteId: String, shapeIds: Collection<String>) {
+        if (shapeIds.isEmpty()) return
+        val ids = shapeIds.toList()
+        queueDepth.addAndGet(ids.size)
+        scope.launch {
+            try {
+                journal?.appendDeletes(noteId, ids)
+            } catch (e: Exception) {
+                Log.e(TAG, "Error journaling ${ids.size} deletes", e)
+            }
+            ids.forEach { id ->
+                // A row that was never written only needs its pending insert dropped,
+                // but the delete is kept in case an earlier batch already stored it
+                pendingInserts.remove(id)
+                pendingDeletes.add(id)
+            }
+            pendingOpCount += ids.size
+            onEnqueued()
+        }
+    }
+
+    /**
+     * Commit everything queued so far and wait for it to reach the database
+     */
+    suspend fun flush() {
+        withContext(dispatcher) {
+            commit()
+        }
+    }
+
+    /**
+     * Apply journaled changes Room never saw, e.g. after a crash, before a note is loaded
+     * Replay is idempotent: inserts replace rows and deletes of missing rows do nothing
+     * @param noteId Note to replay
+     */
+    suspend fun replayJournal(noteId: String) {
+        val journal = journal ?: return
+        withContext(dispatcher) {
+            // Anything this session queued goes through the normal path first
+            commit()
+            journal.seal()
+            val segments = journal.segmentsFor(noteId)
+            if (segments.isEmpty()) return@withContext
+
+            val inserts = LinkedHashMap<String, Shape>()
+            val deletes = LinkedHashSet<String>()
+            journal.read(segments).forEach { record ->
+                when (record) {
+                    is StrokeJournal.Record.Insert -> {
+                        // Segments written before pen profiles were interned carry the profile itself
+                        val shape = record.legacyPenProfile?.let { profile ->
+                            record.shape.copy(penProfileId = penProfiles.intern(profile))
+                        } ?: record.shape
+                        deletes.remove(shape.id)
+                        inserts[shape.id] = shape
+                    }
+                    is StrokeJournal.Record.Delete -> record.shapeIds.forEach { id ->
+                        inserts.remove(id)
+                        deletes.add(id)
+                    }
+                }
+            }
+
+            writeLock.withLock {
+                try {
+                    repository.applyShapeChanges(inserts.values.toList(), deletes.toList())
+                    journal.delete(segments)
+                    Log.d(TAG, "Replayed ${inserts.size} inserts and ${deletes.size} deletes from the journal of note $noteId")
+                } catch (e: Exception) {
+                    // Segments are kept and replayed again on the next open
+                    Log.e(TAG, "Error replaying journal of note $noteId", e)
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop journaled changes of a note whose rows are being deleted outright
+     */
+    suspend fun discardJournal(noteId: String) {
+        val journal = journal ?: return
+        withContext(dispatcher) {
+            commit()
+            journal.seal()
+            journal.delete(journal.segmentsFor(noteId))
+        }
+    }
+
+    /**
+     * Commit everything queued so far without waiting
+     */
+    fun flushAsync() {
+        scope.launch { commit() }
+    }
+
+    /**
+     * Changes queued but not yet committed
+     */
+    fun getQueueDepth(): Int = queueDepth.get()
+
+    /**
+     * Get queue statistics for debugging
+     */
+    fun getStats(): Map<String, Any> {
+        return mapOf(
+            "queueDepth" to queueDepth.get(),
+            "batchesCommitted" to batchesCommitted,
+            "opsCommitted" to opsCommitted,
+            "lastCommitLatencyMs" to lastCommitLatencyMs,
+            "maxCommitLatencyMs" to maxCommitLatencyMs
+        )
+    }
+
+    private suspend fun onEnqueued() {
+        if (oldestPendingAt == 0L) {
+            oldestPendingAt = SystemClock.elapsedRealtime()
+        }
+        if (pendingInserts.size + pendingDeletes.size >= maxBatchOps) {
+            commit()
+        } else if (commitTimer == null) {
+            commitTimer = scope.launch {
+                delay(maxDelayMs)
+                commitTimer = null
+                commit()
+            }
+        }
+    }
+
+    /**
+     * Apply all pending changes in one transaction; runs on the worker
+     * Returns once this batch and any batch still being written have been committed
+     */
+    private suspend fun commit() {
+        commitTimer?.cancel()
+        commitTimer = null
+        if (pendingInserts.isEmpty() && pendingDeletes.isEmpty()) {
+            writeLock.withLock { }
+            return
+        }
+
+        val inserts = pendingInserts.values.toList()
+        val deletes = pendingDeletes.toList()
+        val enqueuedAt = oldestPendingAt
+        val opCount = pendingOpCount
+        pendingInserts.clear()
+        pendingDeletes.clear()
+        pendingOpCount = 0
+        oldestPendingAt = 0L
+
+        // Everything journaled so far is in this batch or an earlier one
+        val segments = journal?.seal() ?: emptyList()
+
+        writeLock.withLock { writeBatch(inserts, deletes, segments, enqueuedAt, opCount) }
+    }
+
+    private suspend fun writeBatch(
+        rows: List<Shape>,
+        deletes: List<String>,
+        segments: List<File>,
+        enqueuedAt: Long,
+        opCount: Int
+    ) {
+        try {
+            repository.applyShapeChanges(rows, deletes)
+            // Room has caught up with these segments; a failed batch keeps them for replay
+            journal?.delete(segments)
+
+            val latency = SystemClock.elapsedRealtime() - enqueuedAt
+            lastCommitLatencyMs = latency
+            maxCommitLatencyMs = maxOf(maxCommitLatencyMs, latency)
+            batchesCommitted++
+            opsCommitted += rows.size + deletes.size
+            Log.d(TAG, "Committed ${rows.size} inserts and ${deletes.size} deletes in ${latency}ms")
+        } catch (e: Exception) {
+            Log.e(TAG, "Error committing ${rows.size} inserts and ${deletes.size} deletes", e)
+        } finally {
+            // Coalesced changes count as committed too
+            queueDepth.addAndGet(-opCount)
+        }
+    }
+}
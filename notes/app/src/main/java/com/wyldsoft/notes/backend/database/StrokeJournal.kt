@@ -0,0 +1,318 @@
+package com.wyldsoft.notes.backend.database
+
+import android.util.Log
+import com.wyldsoft.notes.backend.database.converters.TouchPointCodec
+import com.wyldsoft.notes.backend.database.entities.Shape
+import com.wyldsoft.notes.backend.database.entities.StoredPenProfile
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.util.zip.CRC32
+
+/**
+ * Append-only on-disk journal of stroke changes, written before they reach Room
+ * Each note appends to its own segment file; a record is a length-prefixed, CRC-checked
+ * binary insert or delete, followed by an fsync, so ink is durable as soon as append returns.
+ * Segments are sealed when a batch is handed to Room and deleted once that batch commits.
+ * Segments still present when a note is opened hold changes Room never saw and are replayed.
+ *
+ * Segment layout: [magic int][version int] then records of
+ *   [payload length int][crc32 int][type byte][fields...]
+ * A torn record at the end of a segment (crash mid-append) fails its length or CRC check
+ * and ends the replay of that segment.
+ */
+class StrokeJournal(
+    private val directory: File,
+    private val syncEachRecord: Boolean = true
+) {
+    companion object {
+        private const val TAG = "StrokeJournal"
+        private const val MAGIC = 0x534A524E // "SJRN"
+        private const val VERSION = 3
+
+        // Version 1 embedded the full pen profile in each insert instead of its interned id
+        private const val VERSION_EMBEDDED_PROFILE = 1
+
+        // First version whose inserts end with the retained raw points, if any
+        private const val VERSION_RAW_POINTS = 3
+        private const val SUFFIX = ".journal"
+        private const val RECORD_INSERT: Byte = 1
+        private const val RECORD_DELETE: Byte = 2
+
+        // Guards against reading garbage lengths from a corrupted segment
+        private const val MAX_RECORD_BYTES = 16 * 1024 * 1024
+    }
+
+    /**
+     * One replayed change, in append order
+     */
+    sealed class Record {
+        /**
+         * @param legacyPenProfile Profile of a version 1 record, to be interned before the shape
+         *   is stored; the shape's penProfileId is meaningless when this is set
+         */
+        class Insert(val shape: Shape, val legacyPenProfile: StoredPenProfile? = null) : Record()
+        class Delete(val shapeIds: List<String>) : Record()
+    }
+
+    private class Segment(val file: File, val fileStream: FileOutputStream) {
+        val stream = DataOutputStream(fileStream.buffered())
+    }
+
+    // Open segment per note id
+    private val openSegments = HashMap<String, Segment>()
+    private var nextSequence = -1L
+    private val crc = CRC32()
+
+    /**
+     * Append a shape insert to its note's segment
+     */
+    @Synchronized
+    fun appendInsert(shape: Shape) {
+        val payload = ByteArrayOutputStream()
+        DataOutputStream(payload).use { out ->
+            out.writeByte(RECORD_INSERT.toInt())
+            writeShape(out, shape)
+        }
+        append(shape.noteId, payload.toByteArray())
+    }
+
+    /**
+     * Append shape deletes to a note's segment
+     */
+    @Synchronized
+    fun appendDeletes(noteId: String, shapeIds: Collection<String>) {
+        if (shapeIds.isEmpty()) return
+        val payload = ByteArrayOutputStream()
+        DataOutputStream(payload).use { out ->
+            out.writeByte(RECORD_DELETE.toInt())
+            out.writeInt(shapeIds.size)
+            shapeIds.forEach { out.writeUTF(it) }
+        }
+        append(noteId, payload.toByteArray())
+    }
+
+    /**
+     * Close every open segment so new records go to fresh ones
+     * @return Sealed segment files, to be deleted once their changes are in Room
+     */
+    @Synchronized
+    fun seal(): List<File> {
+        val sealed = openSegments.values.map { segment ->
+            closeQuietly(segment)
+            segment.file
+        }
+        openSegments.clear()
+        return sealed
+    }
+
+    /**
+     * Delete segment files whose changes have been committed
+     */
+    @Synchronized
+    fun delete(files: Collection<File>) {
+        files.forEach { file ->
+            if (!file.delete() && file.exists()) {
+                Log.w(TAG, "Could not delete journal segment ${file.name}")
+            }
+        }
+    }
+
+    /**
+     * Sealed segments of a note, oldest first
+     * Call seal() first so the note's open segment is included
+     */
+    @Synchronized
+    fun segmentsFor(noteId: String): List<File> {
+        val prefix = "$noteId."
+        return directory.listFiles { file -> file.name.startsWith(prefix) && file.name.endsWith(SUFFIX) }
+            ?.sortedBy { sequenceOf(it) }
+            ?: emptyList()
+    }
+
+    /**
+     * Read the records of the given segments in order, stopping each segment at the first torn record
+     */
+    fun read(files: List<File>): List<Record> {
+        val records = mutableListOf<Record>()
+        files.forEach { file ->
+            try {
+                DataInputStream(file.inputStream().buffered()).use { input ->
+                    val magic = input.readInt()
+                    val version = input.readInt()
+                    if (magic != MAGIC || version !in VERSION_EMBEDDED_PROFILE..VERSION) {
+                        Log.w(TAG, "Skipping journal segment ${file.name} with unknown header")
+                        return@use
+                    }
+                    readRecords(input, version, records, file)
+                }
+            } catch (e: EOFException) {
+                Log.w(TAG, "Journal segment ${file.name} ends inside its header")
+            }
+        }
+        return records
+    }
+
+    private fun readRecords(input: DataInputStream, version: Int, records: MutableList<Record>, file: File) {
+        val verifier = CRC32()
+        while (true) {
+            val length = try {
+                input.readInt()
+            } catch (e: EOFException) {
+                return
+            }
+            try {
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    Log.w(TAG, "Corrupt record length $length in ${file.name}, stopping replay")
+                    return
+                }
+                val checksum = input.readInt()
+                val payload = ByteArray(length)
+                input.readFully(payload)
+                verifier.reset()
+                verifier.update(payload)
+                if (verifier.value.toInt() != checksum) {
+                    Log.w(TAG, "Checksum mismatch in ${file.name}, stopping replay")
+                    return
+                }
+                records.add(decodeRecord(payload, version))
+            } catch (e: EOFException) {
+                Log.w(TAG, "Torn record at end of ${file.name}")
+                return
+            }
+        }
+    }
+
+    private fun append(noteId: String, payload: ByteArray) {
+        val segment = openSegments.getOrPut(noteId) { openSegment(noteId) }
+        crc.reset()
+        crc.update(payload)
+        segment.stream.writeInt(payload.size)
+        segment.stream.writeInt(crc.value.toInt())
+        segment.stream.write(payload)
+        segment.stream.flush()
+        if (syncEachRecord) {
+            segment.fileStream.fd.sync()
+        }
+    }
+
+    private fun openSegment(noteId: String): Segment {
+        if (!directory.exists()) {
+            directory.mkdirs()
+        }
+        if (nextSequence < 0) {
+            nextSequence = (directory.listFiles()?.maxOfOrNull { sequenceOf(it) } ?: 0L) + 1
+        }
+        val file = File(directory, "$noteId.${nextSequence++}$SUFFIX")
+        val segment = Segment(file, FileOutputStream(file, true))
+        segment.stream.writeInt(MAGIC)
+        segment.stream.writeInt(VERSION)
+        return segment
+    }
+
+    private fun closeQuietly(segment: Segment) {
+        try {
+            segment.stream.close()
+        } catch (e: Exception) {
+            Log.w(TAG, "Error closing journal segment ${segment.file.name}", e)
+        }
+    }
+
+    // Segment names are <noteId>.<sequence>.journal; note ids never contain '.'
+    private fun sequenceOf(file: File): Long {
+        val name = file.name.removeSuffix(SUFFIX)
+        return name.substringAfterLast('.', "").toLongOrNull() ?: 0L
+    }
+
+    private fun writeShape(out: DataOutputStream, shape: Shape) {
+        out.writeUTF(shape.id)
+        out.writeUTF(shape.noteId)
+        out.writeInt(shape.shapeType)
+        out.writeInt(shape.texture)
+        out.writeInt(shape.strokeColor)
+        out.writeFloat(shape.strokeWidth)
+        out.writeBoolean(shape.isTransparent)
+        out.writeLong(shape.penProfileId)
+        out.writeFloat(shape.boundingMinX)
+        out.writeFloat(shape.boundingMinY)
+        out.writeFloat(shape.boundingMaxX)
+        out.writeFloat(shape.boundingMaxY)
+        out.writeLong(shape.createdAt)
+        val points = TouchPointCodec.encode(shape.touchPointList.points)
+        out.writeInt(points.size)
+        out.write(points)
+        // Length -1 marks a shape without retained raw points
+        val rawPoints = shape.rawTouchPointList?.let { TouchPointCodec.encode(it.points) }
+        out.writeInt(rawPoints?.size ?: -1)
+        rawPoints?.let { out.write(it) }
+    }
+
+    private fun decodeRecord(payload: ByteArray, version: Int): Record {
+        DataInputStream(ByteArrayInputStream(payload)).use { input ->
+            return when (val type = input.readByte()) {
+                RECORD_INSERT -> readInsert(input, version)
+                RECORD_DELETE -> Record.Delete(List(input.readInt()) { input.readUTF() })
+                else -> throw IllegalStateException("Unknown journal record type $type")
+            }
+        }
+    }
+
+    private fun readInsert(input: DataInputStream, version: Int): Record.Insert {
+        val id = input.readUTF()
+        val noteId = input.readUTF()
+        val shapeType = input.readInt()
+        val texture = input.readInt()
+        val strokeColor = input.readInt()
+        val strokeWidth = input.readFloat()
+        val isTransparent = input.readBoolean()
+        var legacyPenProfile: StoredPenProfile? = null
+        var penProfileId = 0L
+        if (version == VERSION_EMBEDDED_PROFILE) {
+            legacyPenProfile = StoredPenProfile(
+                strokeWidth = input.readFloat(),
+                penType = input.readUTF(),
+                strokeColor = input.readInt(),
+                profileId = input.readInt()
+            )
+        } else {
+            penProfileId = input.readLong()
+        }
+        val minX = input.readFloat()
+        val minY = input.readFloat()
+        val maxX = input.readFloat()
+        val maxY = input.readFloat()
+        val createdAt = input.readLong()
+        val points = ByteArray(input.readInt())
+        input.readFully(points)
+        var rawPoints: ByteArray? = null
+        if (version >= VERSION_RAW_POINTS) {
+            val rawLength = input.readInt()
+            if (rawLength >= 0) {
+                rawPoints = ByteArray(rawLength).also { input.readFully(it) }
+            }
+        }
+
+        val shape = Shape(
+            id = id,
+            noteId = noteId,
+            touchPointList = TouchPointCodec.decode(points),
+            shapeType = shapeType,
+            texture = texture,
+            strokeColor = strokeColor,
+            strokeWidth = strokeWidth,
+            isTransparent = isTransparent,
+            penProfileId = penProfileId,
+            boundingMinX = minX,
+            boundingMinY = minY,
+            boundingMaxX = maxX,
+            boundingMaxY = maxY,
+            createdAt = createdAt,
+            rawTouchPointList = rawPoints?.let { TouchPointCodec.decode(it) }
+        )
+        return Record.Insert(shape, legacyPenProfile)
+    }
+}
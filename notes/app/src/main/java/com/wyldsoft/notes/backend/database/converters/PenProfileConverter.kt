@@ -4,6 +4,10 @@ import androidx.room.TypeConverter
 import com.google.gson.Gson
 import com.wyldsoft.notes.backend.database.entities.StoredPenProfile
 
+/**
+ * JSON encoding of pen profiles as embedded in shape rows before version 5
+ * Only used to read those rows while migrating them to the pen_profiles table.
+ */
 class PenProfileConverter {
     private val gson = Gson()
 
@@ -0,0 +1,171 @@
+package com.wyldsoft.notes.backend.database.converters
+
+import com.onyx.android.sdk.data.note.TouchPoint
+import com.onyx.android.sdk.pen.data.TouchPointList
+import kotlin.math.roundToInt
+
+/**
+ * Compact binary encoding for stroke point data stored in the shapes table
+ * Every point is quantized to a fixed precision and written as zig-zag varint deltas
+ * against the previous point, so a typical handwriting sample costs a handful of bytes
+ *
+ * Layout (version 1):
+ *   [header byte][varint point count]
+ *   per point: [dx][dy][dPressure][dSize][dTimestamp] as zig-zag varints
+ */
+object TouchPointCodec {
+    // Header byte of the packed format. Legacy Gson rows always start with '['
+    const val FORMAT_PACKED_V1: Byte = 0x01
+    private const val LEGACY_JSON_MARKER = '['.code.toByte()
+
+    // Quantization steps: 1/16 px for coordinates and size, 1/64 for pressure
+    const val COORDINATE_SCALE = 16f
+    const val PRESSURE_SCALE = 64f
+    const val SIZE_SCALE = 16f
+
+    /**
+     * Check whether the stored bytes are a legacy JSON point list
+     */
+    fun isLegacyJson(data: ByteArray): Boolean {
+        return data.isNotEmpty() && data[0] == LEGACY_JSON_MARKER
+    }
+
+    /**
+     * Encode a list of touch points into the packed binary format
+     */
+    fun encode(points: List<TouchPoint>): ByteArray {
+        val writer = VarintWriter(8 + points.size * 8)
+        writer.writeByte(FORMAT_PACKED_V1)
+        writer.writeUnsigned(points.size.toLong())
+
+        var lastX = 0
+        var lastY = 0
+        var lastPressure = 0
+        var lastSize = 0
+        var lastTimestamp = 0L
+
+        for (point in points) {
+            val x = quantize(point.x, COORDINATE_SCALE)
+            val y = quantize(point.y, COORDINATE_SCALE)
+            val pressure = quantize(point.pressure, PRESSURE_SCALE)
+            val size = quantize(point.size, SIZE_SCALE)
+
+            writer.writeSigned((x - lastX).toLong())
+            writer.writeSigned((y - lastY).toLong())
+            writer.writeSigned((pressure - lastPressure).toLong())
+            writer.writeSigned((size - lastSize).toLong())
+            writer.writeSigned(point.timestamp - lastTimestamp)
+
+            lastX = x
+            lastY = y
+            lastPressure = pressure
+            lastSize = size
+            lastTimestamp = point.timestamp
+        }
+
+        return writer.toByteArray()
+    }
+
+    /**
+     * Decode packed binary data back into a TouchPointList
+     * @throws IllegalArgumentException if the header byte is not a known format version
+     */
+    fun decode(data: ByteArray): TouchPointList {
+        require(data.isNotEmpty() && data[0] == FORMAT_PACKED_V1) {
+            "Unsupported stroke encoding header: ${if (data.isEmpty()) "empty" else data[0].toString()}"
+        }
+
+        val reader = VarintReader(data, 1)
+        val count = reader.readUnsigned().toInt()
+        val touchPointList = TouchPointList()
+
+        var quantizedX = 0
+        var quantizedY = 0
+        var quantizedPressure = 0
+        var quantizedSize = 0
+        var timestamp = 0L
+
+        repeat(count) {
+            quantizedX += reader.readSigned().toInt()
+            quantizedY += reader.readSigned().toInt()
+            quantizedPressure += reader.readSigned().toInt()
+            quantizedSize += reader.readSigned().toInt()
+            timestamp += reader.readSigned()
+
+            val touchPoint = TouchPoint()
+            touchPoint.x = quantizedX / COORDINATE_SCALE
+            touchPoint.y = quantizedY / COORDINATE_SCALE
+            touchPoint.pressure = quantizedPressure / PRESSURE_SCALE
+            touchPoint.size = quantizedSize / SIZE_SCALE
+            touchPoint.timestamp = timestamp
+            touchPointList.add(touchPoint)
+        }
+
+        return touchPointList
+    }
+
+    private fun quantize(value: Float, scale: Float): Int = (value * scale).roundToInt()
+
+    /**
+     * Growable byte buffer that writes LEB128 varints
+     */
+    private class VarintWriter(initialCapacity: Int) {
+        private var buffer = ByteArray(initialCapacity.coerceAtLeast(16))
+        private var position = 0
+
+        fun writeByte(value: Byte) {
+            ensureCapacity(1)
+            buffer[position++] = value
+        }
+
+        fun writeSigned(value: Long) {
+            // Zig-zag so small negative deltas stay small
+            writeUnsigned((value shl 1) xor (value shr 63))
+        }
+
+        fun writeUnsigned(value: Long) {
+            ensureCapacity(10)
+            var remaining = value
+            while (remaining and 0x7FL.inv() != 0L) {
+                buffer[position++] = ((remaining and 0x7F) or 0x80).toByte()
+                remaining = remaining ushr 7
+            }
+            buffer[position++] = remaining.toByte()
+        }
+
+        fun toByteArray(): ByteArray = buffer.copyOf(position)
+
+        private fun ensureCapacity(extra: Int) {
+            if (position + extra > buffer.size) {
+                buffer = buffer.copyOf(maxOf(buffer.size * 2, position + extra))
+            }
+        }
+    }
+
+    /**
+     * Sequential LEB128 varint reader over a byte array
+     */
+    private class VarintReader(private val data: ByteArray, private var position: Int) {
+
+        fun readSigned(): Long {
+            val raw = readUnsigned()
+            return (raw ushr 1) xor -(raw and 1)
+        }
+
+        fun readUnsigned(): Long {
+            var result = 0L
+            var shift = 0
+            while (true) {
+                if (position >= data.size) {
+                    throw IllegalArgumentException("Truncated stroke data at byte $position")
+                }
+                val byte = data[position++].toInt()
+                result = result or ((byte and 0x7F).toLong() shl shift)
+                if (byte and 0x80 == 0) {
+                    return result
+                }
+                shift += 7
+            }
+        }
+    }
+}
@@ -10,27 +10,25 @@ class TouchPointListConverter {
     private val gson = Gson()
 
     @TypeConverter
-    fun fromTouchPointList(touchPointList: TouchPointList?): String? {
+    fun fromTouchPointList(touchPointList: TouchPointList?): ByteArray? {
         if (touchPointList == null) return null
 
-        // Convert TouchPointList to a serializable format
-        val points = touchPointList.points.map { point ->
-            SerializableTouchPoint(
-                x = point.x,
-                y = point.y,
-                pressure = point.pressure,
-                timestamp = point.timestamp,
-                size = point.size
-            )
-        }
-
-        return gson.toJson(points)
+        return TouchPointCodec.encode(touchPointList.points)
     }
 
     @TypeConverter
-    fun toTouchPointList(data: String?): TouchPointList? {
+    fun toTouchPointList(data: ByteArray?): TouchPointList? {
         if (data == null) return null
 
+        // Rows written before the packed format are still JSON text until rewritten
+        if (TouchPointCodec.isLegacyJson(data)) {
+            return fromLegacyJson(String(data, Charsets.UTF_8))
+        }
+
+        return TouchPointCodec.decode(data)
+    }
+
+    private fun fromLegacyJson(data: String): TouchPointList {
         val type = object : TypeToken<List<SerializableTouchPoint>>() {}.type
         val points: List<SerializableTouchPoint> = gson.fromJson(data, type)
 
@@ -50,7 +48,7 @@ class TouchPointListConverter {
     }
 }
 
-// Serializable version of TouchPoint for JSON conversion
+// Serializable version of TouchPoint for legacy JSON rows
 data class SerializableTouchPoint(
     val x: Float,
     val y: Float,
@@ -0,0 +1,33 @@
+package com.wyldsoft.notes.backend.database.dao
+
+import androidx.room.*
+import com.wyldsoft.notes.backend.database.entities.PenProfileRecord
+
+@Dao
+interface PenProfileDao {
+    @Query("SELECT * FROM pen_profiles")
+    suspend fun getAllPenProfiles(): List<PenProfileRecord>
+
+    @Query("SELECT * FROM pen_profiles WHERE id = :id")
+    suspend fun getPenProfileById(id: Long): PenProfileRecord?
+
+    @Query("""
+        SELECT id FROM pen_profiles
+        WHERE strokeWidth = :strokeWidth AND penType = :penType
+        AND strokeColor = :strokeColor AND profileId = :profileId
+    """)
+    suspend fun findPenProfileId(strokeWidth: Float, penType: String, strokeColor: Int, profileId: Int): Long?
+
+    // Returns -1 when an identical profile already exists
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    suspend fun insertPenProfile(profile: PenProfileRecord): Long
+
+    // Id of the row holding this profile, inserting it if it is new
+    @Transaction
+    suspend fun internPenProfile(profile: PenProfileRecord): Long {
+        val insertedId = insertPenProfile(profile)
+        if (insertedId != -1L) return insertedId
+        return findPenProfileId(profile.strokeWidth, profile.penType, profile.strokeColor, profile.profileId)
+            ?: throw IllegalStateException("Pen profile neither inserted nor found: $profile")
+    }
+}
@@ -2,30 +2,69 @@ package com.wyldsoft.notes.backend.database.dao
 
 import androidx.room.*
 import com.wyldsoft.notes.backend.database.entities.Shape
+import com.wyldsoft.notes.backend.database.entities.ShapeHeader
+import com.wyldsoft.notes.backend.database.entities.ShapePoints
 import kotlinx.coroutines.flow.Flow
 
 @Dao
 interface ShapeDao {
-    @Query("SELECT * FROM shapes WHERE noteId = :noteId ORDER BY createdAt ASC")
+    companion object {
+        const val MAX_IDS_PER_STATEMENT = 500
+    }
+
+    // Full shapes join each header with its points; header-only queries never touch shape_points
+
+    @Query("""
+        SELECT shapes.*, shape_points.touchPointList, shape_points.rawTouchPointList FROM shapes
+        INNER JOIN shape_points ON shape_points.shapeId = shapes.id
+        WHERE shapes.noteId = :noteId ORDER BY shapes.createdAt ASC
+    """)
     fun getShapesInNote(noteId: String): Flow<List<Shape>>
 
-    @Query("SELECT * FROM shapes WHERE noteId = :noteId ORDER BY createdAt ASC")
+    @Query("""
+        SELECT shapes.*, shape_points.touchPointList, shape_points.rawTouchPointList FROM shapes
+        INNER JOIN shape_points ON shape_points.shapeId = shapes.id
+        WHERE shapes.noteId = :noteId ORDER BY shapes.createdAt ASC
+    """)
     suspend fun getShapesInNoteSync(noteId: String): List<Shape>
 
-    @Query("SELECT * FROM shapes WHERE id = :id")
+    @Query("""
+        SELECT shapes.*, shape_points.touchPointList, shape_points.rawTouchPointList FROM shapes
+        INNER JOIN shape_points ON shape_points.shapeId = shapes.id
+        WHERE shapes.id = :id
+    """)
     suspend fun getShapeById(id: String): Shape?
 
+    @Query("SELECT * FROM shapes WHERE noteId = :noteId ORDER BY createdAt ASC")
+    suspend fun getShapeHeadersInNote(noteId: String): List<ShapeHeader>
+
+    // Blocking on purpose: called from lazy point loads on the render and input threads
+    @Query("SELECT * FROM shape_points WHERE shapeId = :shapeId")
+    fun getShapePoints(shapeId: String): ShapePoints?
+
+    @Query("SELECT * FROM shape_points WHERE shapeId IN (:shapeIds)")
+    suspend fun getShapePointsByIds(shapeIds: List<String>): List<ShapePoints>
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insertShape(shape: Shape)
+    suspend fun insertShapeHeaders(headers: List<ShapeHeader>)
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    suspend fun insertShapes(shapes: List<Shape>)
+    suspend fun insertShapePoints(points: List<ShapePoints>)
 
     @Update
-    suspend fun updateShape(shape: Shape)
+    suspend fun updateShapePoints(points: List<ShapePoints>)
 
-    @Delete
-    suspend fun deleteShape(shape: Shape)
+    // Replacing a header cascades to its old points, so points are written after headers
+    @Transaction
+    suspend fun insertShapes(shapes: List<Shape>) {
+        insertShapeHeaders(shapes.map { it.toHeader() })
+        insertShapePoints(shapes.map { it.toPoints() })
+    }
+
+    @Transaction
+    suspend fun insertShape(shape: Shape) {
+        insertShapes(listOf(shape))
+    }
 
     @Query("DELETE FROM shapes WHERE id = :shapeId")
     suspend fun deleteShapeById(shapeId: String)
@@ -33,6 +72,69 @@ interface ShapeDao {
     @Query("DELETE FROM shapes WHERE noteId = :noteId")
     suspend fun deleteAllShapesInNote(noteId: String)
 
+    // Shapes whose stored bounds overlap a canvas rectangle, with their points
+    @Query("""
+        SELECT shapes.*, shape_points.touchPointList, shape_points.rawTouchPointList FROM shapes
+        INNER JOIN shape_points ON shape_points.shapeId = shapes.id
+        WHERE shapes.noteId = :noteId
+        AND shapes.boundingMaxX >= :left AND shapes.boundingMinX <= :right
+        AND shapes.boundingMaxY >= :top AND shapes.boundingMinY <= :bottom
+        ORDER BY shapes.createdAt ASC
+    """)
+    suspend fun getShapesInRect(noteId: String, left: Float, top: Float, right: Float, bottom: Float): List<Shape>
+
+    // Number of shapes whose stored bounds overlap a canvas rectangle
+    @Query("""
+        SELECT COUNT(*) FROM shapes
+        WHERE noteId = :noteId
+        AND boundingMaxX >= :left AND boundingMinX <= :right
+        AND boundingMaxY >= :top AND boundingMinY <= :bottom
+    """)
+    suspend fun countShapesInRect(noteId: String, left: Float, top: Float, right: Float, bottom: Float): Int
+
+    // Keyset page of shape headers outside a canvas rectangle, ordered by (createdAt, id)
+    @Query("""
+        SELECT * FROM shapes
+        WHERE noteId = :noteId
+        AND NOT (boundingMaxX >= :left AND boundingMinX <= :right
+            AND boundingMaxY >= :top AND boundingMinY <= :bottom)
+        AND (createdAt > :afterCreatedAt OR (createdAt = :afterCreatedAt AND id > :afterId))
+        ORDER BY createdAt ASC, id ASC
+        LIMIT :limit
+    """)
+    suspend fun getShapesOutsideBoundsPage(
+        noteId: String,
+        left: Float,
+        top: Float,
+        right: Float,
+        bottom: Float,
+        afterCreatedAt: Long,
+        afterId: String,
+        limit: Int
+    ): List<ShapeHeader>
+
+    @Query("SELECT id FROM shapes WHERE noteId = :noteId")
+    suspend fun getShapeIdsInNote(noteId: String): List<String>
+
+    @Query("DELETE FROM shapes WHERE id IN (:ids)")
+    suspend fun deleteShapesByIds(ids: List<String>)
+
+    // Apply inserts and deletes for a note in one transaction
+    @Transaction
+    suspend fun applyShapeChanges(inserted: List<Shape>, deletedIds: List<String>) {
+        // Stay under SQLite's bound-parameter limit
+        deletedIds.chunked(MAX_IDS_PER_STATEMENT).forEach { chunk ->
+            deleteShapesByIds(chunk)
+        }
+        if (inserted.isNotEmpty()) {
+            insertShapes(inserted)
+        }
+    }
+
     @Query("SELECT COUNT(*) FROM shapes WHERE noteId = :noteId")
     suspend fun getShapeCountInNote(noteId: String): Int
-}
\ No newline at end of file
+
+    // Point rows still holding the pre-version-2 JSON encoding
+    @Query("SELECT shapeId FROM shape_points WHERE typeof(touchPointList) = 'text' LIMIT :limit")
+    suspend fun getLegacyEncodedShapeIds(limit: Int): List<String>
+}
@@ -0,0 +1,39 @@
+package com.wyldsoft.notes.backend.database.entities
+
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * Interned pen profile, referenced by shapes through its integer id
+ * The unique index makes each distinct profile a single row, so a note drawn with the
+ * default profiles stores only a handful of them however many shapes it has.
+ */
+@Entity(
+    tableName = "pen_profiles",
+    indices = [Index(value = ["strokeWidth", "penType", "strokeColor", "profileId"], unique = true)]
+)
+data class PenProfileRecord(
+    @PrimaryKey(autoGenerate = true)
+    val id: Long = 0,
+    val strokeWidth: Float,
+    val penType: String,
+    val strokeColor: Int,
+    val profileId: Int
+) {
+    fun toStored(): StoredPenProfile = StoredPenProfile(
+        strokeWidth = strokeWidth,
+        penType = penType,
+        strokeColor = strokeColor,
+        profileId = profileId
+    )
+
+    companion object {
+        fun from(profile: StoredPenProfile): PenProfileRecord = PenProfileRecord(
+            strokeWidth = profile.strokeWidth,
+            penType = profile.penType,
+            strokeColor = profile.strokeColor,
+            profileId = profile.profileId
+        )
+    }
+}
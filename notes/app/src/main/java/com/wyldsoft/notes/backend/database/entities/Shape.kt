@@ -6,9 +6,13 @@ import androidx.room.ForeignKey
 import androidx.room.Index
 import androidx.room.TypeConverters
 import com.wyldsoft.notes.backend.database.converters.TouchPointListConverter
-import com.wyldsoft.notes.backend.database.converters.PenProfileConverter
 import com.onyx.android.sdk.pen.data.TouchPointList
 
+/**
+ * Shape metadata row, without point data
+ * Bounds-only queries (culling, counts, paging) read these narrow rows; points live in
+ * [ShapePoints] and are fetched only for shapes that are rendered or hit-tested.
+ */
 @Entity(
     tableName = "shapes",
     foreignKeys = [
@@ -19,14 +23,70 @@ import com.onyx.android.sdk.pen.data.TouchPointList
             onDelete = ForeignKey.CASCADE
         )
     ],
-    indices = [Index(value = ["noteId"])]
+    // Leading noteId also serves the foreign key; bounds columns narrow viewport range queries
+    indices = [Index(value = ["noteId", "boundingMinY", "boundingMaxY"])]
 )
-@TypeConverters(TouchPointListConverter::class, PenProfileConverter::class)
-data class Shape(
+data class ShapeHeader(
     @PrimaryKey
     val id: String,
     val noteId: String,
 
+    // Processed shape data
+    val shapeType: Int,
+    val texture: Int = 0,
+    val strokeColor: Int,
+    val strokeWidth: Float,
+    val isTransparent: Boolean = false,
+
+    // Interned pen profile used when creating this shape, see [PenProfileRecord]
+    val penProfileId: Long,
+
+    // Bounding box for efficient visibility calculations
+    val boundingMinX: Float,
+    val boundingMinY: Float,
+    val boundingMaxX: Float,
+    val boundingMaxY: Float,
+
+    // Timestamps
+    val createdAt: Long = System.currentTimeMillis()
+)
+
+/**
+ * Packed point payload of one shape, deleted with its header
+ */
+@Entity(
+    tableName = "shape_points",
+    foreignKeys = [
+        ForeignKey(
+            entity = ShapeHeader::class,
+            parentColumns = ["id"],
+            childColumns = ["shapeId"],
+            onDelete = ForeignKey.CASCADE
+        )
+    ]
+)
+@TypeConverters(TouchPointListConverter::class)
+data class ShapePoints(
+    @PrimaryKey
+    val shapeId: String,
+
+    // Raw touch data for HTR
+    val touchPointList: TouchPointList,
+
+    // Full-rate capture points when strokes are simplified and raw points are retained
+    val rawTouchPointList: TouchPointList? = null
+)
+
+/**
+ * Complete shape: header columns joined with its points
+ * Not a table; read through joins in [com.wyldsoft.notes.backend.database.dao.ShapeDao]
+ * and written as a header row plus a points row.
+ */
+@TypeConverters(TouchPointListConverter::class)
+data class Shape(
+    val id: String,
+    val noteId: String,
+
     // Raw touch data for HTR
     val touchPointList: TouchPointList,
 
@@ -37,8 +97,8 @@ data class Shape(
     val strokeWidth: Float,
     val isTransparent: Boolean = false,
 
-    // Pen profile data used when creating this shape
-    val penProfileData: StoredPenProfile,
+    // Interned pen profile used when creating this shape, see [PenProfileRecord]
+    val penProfileId: Long,
 
     // Bounding box for efficient visibility calculations
     val boundingMinX: Float,
@@ -47,8 +107,33 @@ data class Shape(
     val boundingMaxY: Float,
 
     // Timestamps
-    val createdAt: Long = System.currentTimeMillis()
-)
+    val createdAt: Long = System.currentTimeMillis(),
+
+    // Full-rate capture points, see [ShapePoints.rawTouchPointList]
+    val rawTouchPointList: TouchPointList? = null
+) {
+    fun toHeader(): ShapeHeader = ShapeHeader(
+        id = id,
+        noteId = noteId,
+        shapeType = shapeType,
+        texture = texture,
+        strokeColor = strokeColor,
+        strokeWidth = strokeWidth,
+        isTransparent = isTransparent,
+        penProfileId = penProfileId,
+        boundingMinX = boundingMinX,
+        boundingMinY = boundingMinY,
+        boundingMaxX = boundingMaxX,
+        boundingMaxY = boundingMaxY,
+        createdAt = createdAt
+    )
+
+    fun toPoints(): ShapePoints = ShapePoints(
+        shapeId = id,
+        touchPointList = touchPointList,
+        rawTouchPointList = rawTouchPointList
+    )
+}
 
 // Data class to store pen profile information
 data class StoredPenProfile(
@@ -1,11 +1,12 @@
 package com.wyldsoft.notes.backend.database.repository
 
 import com.wyldsoft.notes.backend.database.NotesDatabase
+import com.wyldsoft.notes.backend.database.dao.ShapeDao
 import com.wyldsoft.notes.backend.database.entities.*
 import kotlinx.coroutines.flow.Flow
 import com.aventrix.jnanoid.jnanoid.NanoIdUtils
 
-class NotesRepository(private val database: NotesDatabase) {
+class NotesRepository(private val database: NotesDatabase) : ShapeChangeStore {
 
     // Folder operations
     fun getRootFolders(): Flow<List<Folder>> = database.folderDao().getRootFolders()
@@ -126,6 +127,35 @@ class NotesRepository(private val database: NotesDatabase) {
     suspend fun getShapesInNoteSync(noteId: String): List<Shape> =
         database.shapeDao().getShapesInNoteSync(noteId)
 
+    suspend fun getShapesInRect(noteId: String, rect: android.graphics.RectF): List<Shape> =
+        database.shapeDao().getShapesInRect(noteId, rect.left, rect.top, rect.right, rect.bottom)
+
+    suspend fun countShapesInRect(noteId: String, rect: android.graphics.RectF): Int =
+        database.shapeDao().countShapesInRect(noteId, rect.left, rect.top, rect.right, rect.bottom)
+
+    suspend fun getShapesOutsideBoundsPage(
+        noteId: String,
+        bounds: android.graphics.RectF,
+        afterCreatedAt: Long,
+        afterId: String,
+        limit: Int
+    ): List<ShapeHeader> = database.shapeDao().getShapesOutsideBoundsPage(
+        noteId, bounds.left, bounds.top, bounds.right, bounds.bottom, afterCreatedAt, afterId, limit
+    )
+
+    suspend fun getShapeHeadersInNote(noteId: String): List<ShapeHeader> =
+        database.shapeDao().getShapeHeadersInNote(noteId)
+
+    // Blocking read for lazily loaded points; must not be called on the main thread
+    fun getShapePoints(shapeId: String): ShapePoints? =
+        database.shapeDao().getShapePoints(shapeId)
+
+    // Points of many shapes, read in chunks under SQLite's bound parameter limit
+    suspend fun getShapePointsByIds(shapeIds: List<String>): List<ShapePoints> =
+        shapeIds.chunked(ShapeDao.MAX_IDS_PER_STATEMENT).flatMap { chunk ->
+            database.shapeDao().getShapePointsByIds(chunk)
+        }
+
     suspend fun saveShape(shape: Shape) {
         database.shapeDao().insertShape(shape)
     }
@@ -138,6 +168,19 @@ class NotesRepository(private val database: NotesDatabase) {
         database.shapeDao().deleteShapeById(shapeId)
     }
 
+    suspend fun deleteShapes(shapeIds: List<String>) {
+        if (shapeIds.isEmpty()) return
+        database.shapeDao().applyShapeChanges(emptyList(), shapeIds)
+    }
+
+    suspend fun getShapeIdsInNote(noteId: String): List<String> =
+        database.shapeDao().getShapeIdsInNote(noteId)
+
+    override suspend fun applyShapeChanges(inserted: List<Shape>, deletedIds: List<String>) {
+        if (inserted.isEmpty() && deletedIds.isEmpty()) return
+        database.shapeDao().applyShapeChanges(inserted, deletedIds)
+    }
+
     suspend fun deleteAllShapesInNote(noteId: String) {
         database.shapeDao().deleteAllShapesInNote(noteId)
     }
@@ -0,0 +1,14 @@
+package com.wyldsoft.notes.backend.database.repository
+
+import com.wyldsoft.notes.backend.database.entities.Shape
+
+/**
+ * Destination of batched shape writes from the write queue
+ * Implemented by NotesRepository; tests substitute a recording fake
+ */
+interface ShapeChangeStore {
+    /**
+     * Insert or replace shapes and delete shapes by id in one transaction
+     */
+    suspend fun applyShapeChanges(inserted: List<Shape>, deletedIds: List<String>)
+}
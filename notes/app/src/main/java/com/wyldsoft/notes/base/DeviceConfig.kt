@@ -46,4 +46,14 @@ class DeviceConfig private constructor(context: Context) {
     var maxStrokeWidth: Float
         get() = prefs.getFloat("max_stroke_width", 60f)
         set(value) = prefs.edit().putFloat("max_stroke_width", value).apply()
+
+    // Capture-time stroke simplification, see StrokeCaptureSimplifier
+    var simplifyStrokes: Boolean
+        get() = prefs.getBoolean("simplify_strokes", true)
+        set(value) = prefs.edit().putBoolean("simplify_strokes", value).apply()
+
+    // Keep and store full-rate points of simplified strokes for handwriting recognition
+    var retainRawStrokePoints: Boolean
+        get() = prefs.getBoolean("retain_raw_stroke_points", false)
+        set(value) = prefs.edit().putBoolean("retain_raw_stroke_points", value).apply()
 }
\ No newline at end of file
@@ -7,7 +7,10 @@ import com.wyldsoft.notes.backend.database.ShapeUtils
 import com.wyldsoft.notes.backend.database.entities.Note
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
 import com.wyldsoft.notes.pen.PenProfile
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
 import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /**
  * Manages database operations for shape persistence in the Onyx drawing system
@@ -19,14 +22,27 @@ class OnyxDatabaseManager(
 ) {
     companion object {
         private const val TAG = "OnyxDatabaseManager"
+        private const val LOAD_PAGE_SIZE = 500
     }
 
     // Database manager instance
     private val databaseManager = DatabaseManager.getInstance(activity)
 
+    // Batches stroke writes into one transaction per burst of drawing or erasing
+    private val writeQueue = databaseManager.shapeWriteQueue
+
+    // Points of off-screen shapes are only read once they are rendered or hit-tested
+    private val pointLoader = databaseManager.shapePointLoader
+
     // Track loading state to avoid saving while loading
     private var isLoadingFromDatabase = false
 
+    // True while off-screen shapes are still paging in after the first render
+    private var isLoadingRemainder = false
+
+    // Current load, cancelled when another note is opened
+    private var loadJob: Job? = null
+
     // Current note being edited
     private var currentNote: Note? = null
 
@@ -48,41 +64,106 @@ class OnyxDatabaseManager(
 
     /**
      * Load shapes from database for the specified note
+     * Shapes overlapping the current viewport are loaded with their points and rendered first;
+     * the rest of the note is then paged in as headers only, whose points load on first use
      * @param noteId ID of the note to load shapes for
      * @param shapeManager Shape manager to populate with loaded shapes
      */
     fun loadShapesFromDatabase(noteId: String, shapeManager: OnyxShapeManager) {
-        activity.lifecycleScope.launch {
+        // A newer load replaces any load still paging in for a previous note
+        loadJob?.cancel()
+
+        loadJob = activity.lifecycleScope.launch {
             try {
                 isLoadingFromDatabase = true
                 Log.d(TAG, "Loading shapes from database for note: $noteId")
 
-                val databaseShapes = databaseManager.repository.getShapesInNoteSync(noteId)
+                // Strokes journaled but not committed before the app last stopped
+                writeQueue.replayJournal(noteId)
 
-                // Convert database shapes to drawing shapes
-                val drawingShapes = databaseShapes.map { dbShape ->
-                    ShapeUtils.convertToDrawing(dbShape)
+                val viewport = activity.getViewportBounds()
+                if (viewport == null) {
+                    loadAllShapes(noteId, shapeManager)
+                    return@launch
                 }
 
-                // Replace all shapes in the manager
-                shapeManager.replaceAllShapes(drawingShapes)
+                // Phase 1: what is on screen
+                val visibleRows = databaseManager.repository.getShapesInRect(noteId, viewport)
+                val visibleShapes = withContext(Dispatchers.Default) {
+                    visibleRows.map { dbShape -> ShapeUtils.convertToDrawing(dbShape) }
+                }
 
-                // Recreate the drawing from loaded shapes with surface view context
+                shapeManager.replaceAllShapes(visibleShapes)
                 shapeManager.recreateDrawingFromShapes(activity.surfaceView)
-
-                // Force a screen refresh to show the loaded shapes
                 activity.forceScreenRefresh()
+                Log.d(TAG, "Rendered ${visibleShapes.size} viewport shapes for note $noteId")
 
-                Log.d(TAG, "Successfully loaded ${drawingShapes.size} shapes from database")
+                // New strokes may be saved from here on, but full syncs must not delete unloaded rows
                 isLoadingFromDatabase = false
+                isLoadingRemainder = true
+
+                // Phase 2: headers for the rest of the note, merged page by page so they
+                // become hit-testable as they arrive
+                var loadedCount = 0
+                var afterCreatedAt = Long.MIN_VALUE
+                var afterId = ""
+                while (true) {
+                    val page = databaseManager.repository.getShapesOutsideBoundsPage(
+                        noteId, viewport, afterCreatedAt, afterId, LOAD_PAGE_SIZE
+                    )
+                    if (page.isEmpty()) break
+
+                    val pageShapes = withContext(Dispatchers.Default) {
+                        page.map { header -> ShapeUtils.convertToDrawing(header, pointLoader) }
+                    }
+                    loadedCount += shapeManager.mergeLoadedShapes(pageShapes)
+
+                    val last = page.last()
+                    afterCreatedAt = last.createdAt
+                    afterId = last.id
+                    if (page.size < LOAD_PAGE_SIZE) break
+                }
 
+                Log.d(TAG, "Successfully loaded ${visibleShapes.size + loadedCount} shapes from database")
+
+            } catch (e: kotlinx.coroutines.CancellationException) {
+                Log.d(TAG, "Shape loading cancelled for note $noteId")
+                throw e
             } catch (e: Exception) {
                 Log.e(TAG, "Error loading shapes from database for note $noteId", e)
-                isLoadingFromDatabase = false
+            } finally {
+                // A cancelled load must not clear the flags of the load that replaced it
+                if (loadJob === coroutineContext[Job]) {
+                    isLoadingFromDatabase = false
+                    isLoadingRemainder = false
+                }
             }
         }
     }
 
+    /**
+     * Load every shape of a note at once (no viewport available yet)
+     */
+    private suspend fun loadAllShapes(noteId: String, shapeManager: OnyxShapeManager) {
+        val databaseShapes = databaseManager.repository.getShapesInNoteSync(noteId)
+
+        // Convert database shapes to drawing shapes
+        val drawingShapes = withContext(Dispatchers.Default) {
+            databaseShapes.map { dbShape -> ShapeUtils.convertToDrawing(dbShape) }
+        }
+
+        // Replace all shapes in the manager
+        shapeManager.replaceAllShapes(drawingShapes)
+
+        // Recreate the drawing from loaded shapes with surface view context
+        shapeManager.recreateDrawingFromShapes(activity.surfaceView)
+
+        // Force a screen refresh to show the loaded shapes
+        activity.forceScreenRefresh()
+
+        Log.d(TAG, "Successfully loaded ${drawingShapes.size} shapes from database")
+    }
+
     /**
      * Save a single shape to the database
      * @param shape The shape to save
@@ -95,20 +176,14 @@ class OnyxDatabaseManager(
         }
 
         currentNote?.let { note ->
-            activity.lifecycleScope.launch {
-                try {
-                    val databaseShape = ShapeUtils.convertToDatabase(shape, note.id, penProfile)
-                    databaseManager.repository.saveShape(databaseShape)
-                    Log.d(TAG, "Saved shape to database for note ${note.id}")
-                } catch (e: Exception) {
-                    Log.e(TAG, "Error saving shape to database", e)
-                }
-            }
+            writeQueue.enqueueInsert(shape, note.id, penProfile)
         }
     }
 
     /**
      * Save all current shapes to the database (full state save)
+     * Only shapes missing from the database are inserted and only rows no longer
+     * present in memory are deleted, so unchanged strokes are never rewritten
      * @param allShapes List of all current shapes
      * @param penProfile Current pen profile
      */
@@ -121,17 +196,32 @@ class OnyxDatabaseManager(
         currentNote?.let { note ->
             activity.lifecycleScope.launch {
                 try {
-                    // Clear existing shapes for this note
-                    databaseManager.repository.deleteAllShapesInNote(note.id)
-
-                    // Convert and save all current shapes
-                    val databaseShapes = allShapes.map { drawingShape ->
-                        ShapeUtils.convertToDatabase(drawingShape, note.id, penProfile)
+                    // Diff against the database only after queued stroke writes have landed
+                    writeQueue.flush()
+                    val storedIds = databaseManager.repository.getShapeIdsInNote(note.id).toHashSet()
+                    val currentIds = HashSet<String>(allShapes.size)
+                    val penProfileId = databaseManager.penProfileCache.intern(penProfile)
+
+                    val insertedShapes = allShapes.mapNotNull { drawingShape ->
+                        currentIds.add(drawingShape.id)
+                        if (drawingShape.id in storedIds) {
+                            null
+                        } else {
+                            // Shapes keep the pen they were drawn with; only new ones take the current pen
+                            val shapeProfileId = drawingShape.penProfileId.takeIf { it != 0L } ?: penProfileId
+                            ShapeUtils.convertToDatabase(drawingShape, note.id, shapeProfileId)
+                        }
+                    }
+                    // Rows not loaded yet are missing from memory but still belong to the note
+                    val deletedIds = if (isLoadingRemainder) {
+                        emptyList()
+                    } else {
+                        storedIds.filter { it !in currentIds }
                     }
 
-                    databaseManager.repository.saveShapes(databaseShapes)
+                    databaseManager.repository.applyShapeChanges(insertedShapes, deletedIds)
 
-                    Log.d(TAG, "Saved ${databaseShapes.size} shapes to database for note ${note.id}")
+                    Log.d(TAG, "Synced note ${note.id}: inserted ${insertedShapes.size}, deleted ${deletedIds.size}, total ${allShapes.size}")
 
                 } catch (e: Exception) {
                     Log.e(TAG, "Error saving all shapes to database", e)
@@ -142,34 +232,28 @@ class OnyxDatabaseManager(
 
     /**
      * Update database after erasing shapes
-     * @param remainingShapes The shapes that remain after erasing
-     * @param penProfile Current pen profile
+     * Deletes only the erased rows and inserts any fragments left by precise erasing,
+     * all in a single transaction
+     * @param erasedShapes The shapes removed by the eraser
+     * @param fragments New shapes created by splitting erased strokes; each is stored with the
+     *   pen profile of the stroke it was cut from
      */
-    fun updateDatabaseAfterErasing(remainingShapes: List<DrawingShape>, penProfile: PenProfile) {
+    fun updateDatabaseAfterErasing(
+        erasedShapes: Collection<DrawingShape>,
+        fragments: Collection<DrawingShape>
+    ) {
         if (isLoadingFromDatabase) {
             Log.d(TAG, "Skipping database update while loading from database")
             return
         }
 
-        currentNote?.let { note ->
-            activity.lifecycleScope.launch {
-                try {
-                    // Clear existing shapes for this note
-                    databaseManager.repository.deleteAllShapesInNote(note.id)
-
-                    // Save remaining shapes
-                    val databaseShapes = remainingShapes.map { drawingShape ->
-                        ShapeUtils.convertToDatabase(drawingShape, note.id, penProfile)
-                    }
+        val erasedIds = erasedShapes.map { it.id }
+        if (erasedIds.isEmpty() && fragments.isEmpty()) return
 
-                    databaseManager.repository.saveShapes(databaseShapes)
-
-                    Log.d(TAG, "Updated database after erasing - ${databaseShapes.size} shapes remaining")
-
-                } catch (e: Exception) {
-                    Log.e(TAG, "Error updating database after erasing", e)
-                }
-            }
+        currentNote?.let { note ->
+            writeQueue.enqueueDeletes(note.id, erasedIds)
+            fragments.forEach { fragment -> writeQueue.enqueueInsert(fragment, note.id, null) }
+            Log.d(TAG, "Queued erase changes - deleting ${erasedIds.size}, inserting ${fragments.size} fragments in note ${note.id}")
         }
     }
 
@@ -180,6 +264,8 @@ class OnyxDatabaseManager(
     fun clearAllShapesForNote(noteId: String) {
         activity.lifecycleScope.launch {
             try {
+                // Queued or journaled inserts must not land after the delete and resurrect strokes
+                writeQueue.discardJournal(noteId)
                 databaseManager.repository.deleteAllShapesInNote(noteId)
                 Log.d(TAG, "Cleared all shapes for note $noteId from database")
             } catch (e: Exception) {
@@ -188,6 +274,23 @@ class OnyxDatabaseManager(
         }
     }
 
+    /**
+     * Commit queued stroke writes without waiting, e.g. before navigating away
+     */
+    fun flushPendingWrites() {
+        writeQueue.flushAsync()
+    }
+
+    /**
+     * Get write queue depth and commit latency for debugging
+     */
+    fun getWriteQueueStats(): Map<String, Any> = writeQueue.getStats()
+
+    /**
+     * Get lazy point load counts for debugging
+     */
+    fun getPointLoadStats(): Map<String, Any> = pointLoader.getStats()
+
     /**
      * Save the current drawing state to database
      * This is called during pause/cleanup operations
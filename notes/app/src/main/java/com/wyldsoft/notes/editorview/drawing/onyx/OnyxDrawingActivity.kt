@@ -6,16 +6,17 @@ import android.graphics.RectF
 import android.util.Log
 import android.view.SurfaceView
 import androidx.lifecycle.lifecycleScope
-import com.onyx.android.sdk.api.device.epd.EpdController
 import com.onyx.android.sdk.pen.TouchHelper
 import com.wyldsoft.notes.editorview.editor.EditorState
 import com.wyldsoft.notes.GlobalDeviceReceiver
 import com.wyldsoft.notes.TouchUtils
 import com.wyldsoft.notes.base.BaseDeviceReceiver
+import com.wyldsoft.notes.base.DeviceConfig
 import com.wyldsoft.notes.editorview.drawing.base.BaseDrawingActivity
 import com.wyldsoft.notes.editorview.drawing.base.BaseTouchHelper
 import com.wyldsoft.notes.backend.database.entities.Note
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import com.wyldsoft.notes.utils.StrokeCaptureSimplifier
 import kotlinx.coroutines.launch
 
 /**
@@ -57,16 +58,29 @@ open class OnyxDrawingActivity : BaseDrawingActivity() {
     private fun initializeManagers() {
         renderingManager = OnyxRenderingManager()
         shapeManager = OnyxShapeManager(renderingManager)
+        applyStrokeCaptureSettings()
         databaseManager = OnyxDatabaseManager(this)
         eraserManager = OnyxEraserManager(
             shapeManager, 
             renderingManager, 
-            databaseManager,
-            { currentPenProfile } // Provide current pen profile
+            databaseManager
         )
         navigationHandler = OnyxNavigationHandler(databaseManager)
     }
 
+    /**
+     * Apply the stored stroke simplification settings to the shape manager
+     */
+    private fun applyStrokeCaptureSettings() {
+        val config = DeviceConfig.getInstance(this)
+        shapeManager.setSimplificationConfig(
+            StrokeCaptureSimplifier.Config(
+                enabled = config.simplifyStrokes,
+                retainRawPoints = config.retainRawStrokePoints
+            )
+        )
+    }
+
     private fun setupEraserModeListener() {
         lifecycleScope.launch {
             EditorState.eraserModeChanged.collect { enabled ->
@@ -75,6 +89,11 @@ open class OnyxDrawingActivity : BaseDrawingActivity() {
                 Log.d(TAG, "Eraser mode changed to: $enabled")
             }
         }
+        lifecycleScope.launch {
+            EditorState.preciseEraserChanged.collect { enabled ->
+                eraserManager.setPreciseEraseEnabled(enabled)
+            }
+        }
     }
 
     override fun createTouchHelper(surfaceView: SurfaceView): BaseTouchHelper {
@@ -119,6 +138,7 @@ open class OnyxDrawingActivity : BaseDrawingActivity() {
 
     override fun onPauseDrawing() {
         onyxTouchHelper?.setRawDrawingEnabled(false)
+        databaseManager.flushPendingWrites()
         databaseManager.saveAllShapesToDatabase(shapeManager.getAllShapes(), currentPenProfile)
         enableFingerTouch()
     }
@@ -246,18 +266,31 @@ open class OnyxDrawingActivity : BaseDrawingActivity() {
         }
     }
 
+    /**
+     * Let the surface post to the e-ink panel again, through the refresh policy's controller
+     */
+    private fun enableScreenPost() {
+        val view = surfaceView ?: return
+        renderingManager.getRefreshPolicy().getUpdateModeController().enablePost(view, true)
+    }
+
     public override fun forceScreenRefresh() {
         Log.d(TAG, "forceScreenRefresh() called")
 
-        // Create/update bitmap if needed
+        // Bitmaps are sized and redrawn on the render thread
         surfaceView?.let { sv ->
-            renderingManager.createOrGetDrawingBitmap(sv)
             renderingManager.forceScreenRefresh(sv, shapeManager.getAllShapes())
         }
     }
 
+    /**
+     * Get the visible canvas area, or null before the viewport is set up
+     */
+    fun getViewportBounds(): RectF? = currentViewportController?.getViewportBounds()
+
     // Public API for external components
     fun setCurrentNote(note: Note) {
+        databaseManager.flushPendingWrites()
         navigationHandler.setCurrentNote(note)
         databaseManager.setCurrentNote(note, shapeManager)
         enableFingerTouch()
@@ -266,6 +299,7 @@ open class OnyxDrawingActivity : BaseDrawingActivity() {
     fun prepareForHomeView() {
         onyxTouchHelper?.setRawDrawingEnabled(false)
         enableFingerTouch()
+        databaseManager.flushPendingWrites()
         databaseManager.saveAllShapesToDatabase(shapeManager.getAllShapes(), currentPenProfile)
     }
 
@@ -299,9 +333,26 @@ open class OnyxDrawingActivity : BaseDrawingActivity() {
                 
                 override fun onViewportRefreshRequired() {
                     Log.d(TAG, "Viewport refresh required - forcing full screen refresh")
-                    EpdController.enablePost(surfaceView, 1)
+                    enableScreenPost()
                     forceScreenRefresh()
                 }
+
+                override fun onViewportScrolled(deltaX: Int, deltaY: Int) {
+                    enableScreenPost()
+                    if (!renderingManager.scrollContent(surfaceView, deltaX, deltaY)) {
+                        Log.d(TAG, "Scroll fast path unavailable - forcing full screen refresh")
+                        forceScreenRefresh()
+                    }
+                }
+
+                override fun onViewportPreviewRequired() {
+                    enableScreenPost()
+                    renderingManager.renderZoomPreview(surfaceView)
+                }
+
+                override fun onGestureSettled() {
+                    renderingManager.renderSettledFrame(surfaceView, shapeManager.getAllShapes())
+                }
             }
             
             viewportController.addViewportChangeListener(listener)
@@ -0,0 +1,24 @@
+package com.wyldsoft.notes.editorview.drawing.onyx
+
+import android.view.View
+import com.onyx.android.sdk.api.device.epd.EpdController
+import com.onyx.android.sdk.api.device.epd.UpdateMode
+import com.wyldsoft.notes.editorview.rendering.EpdUpdateModeController
+
+/**
+ * EpdUpdateModeController backed by the Onyx SDK's EpdController
+ */
+object OnyxEpdUpdateModeController : EpdUpdateModeController {
+
+    override fun setViewDefaultUpdateMode(view: View, mode: UpdateMode) {
+        EpdController.setViewDefaultUpdateMode(view, mode)
+    }
+
+    override fun resetViewUpdateMode(view: View) {
+        EpdController.resetViewUpdateMode(view)
+    }
+
+    override fun enablePost(view: View, enable: Boolean) {
+        EpdController.enablePost(view, if (enable) 1 else 0)
+    }
+}
@@ -1,13 +1,13 @@
 package com.wyldsoft.notes.editorview.drawing.onyx
 
 import android.util.Log
-import android.graphics.PointF
-import com.onyx.android.sdk.api.device.epd.EpdController
 import com.onyx.android.sdk.data.note.TouchPoint
 import com.onyx.android.sdk.pen.data.TouchPointList
 import com.wyldsoft.notes.editorview.editor.EditorState
 import com.wyldsoft.notes.utils.RefreshUtils
 import com.wyldsoft.notes.utils.PartialRefreshManager
+import com.wyldsoft.notes.utils.StrokeSplitter
+import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
 import com.wyldsoft.notes.render.RendererHelper
 import com.onyx.android.sdk.rx.RxManager
 
@@ -18,18 +18,25 @@ import com.onyx.android.sdk.rx.RxManager
 class OnyxEraserManager(
     private val shapeManager: OnyxShapeManager,
     private val renderingManager: OnyxRenderingManager,
-    private val databaseManager: OnyxDatabaseManager,
-    private val getPenProfile: () -> com.wyldsoft.notes.pen.PenProfile
+    private val databaseManager: OnyxDatabaseManager
 ) {
     companion object {
         private const val TAG = "OnyxEraserManager"
+        private const val ERASER_RADIUS = 20f
     }
 
     // Erasing state
     private var eraserModeEnabled = false
+    private var preciseEraseEnabled = false
     private var isErasingInProgress = false
     private var currentErasingSession = RefreshUtils.RefreshSession()
+
+    // Fragments created by precise erasing in this session, not yet persisted
+    private val sessionFragments = mutableSetOf<DrawingShape>()
     private var eraserPath = mutableListOf<TouchPoint>()
+
+    // Reused canvas-space copy of the latest eraser path
+    private val canvasEraserPath = TouchPointList()
     
     // Viewport controller for coordinate transforms
     private var viewportController: com.wyldsoft.notes.editorview.viewport.ViewportController? = null
@@ -49,6 +56,17 @@ class OnyxEraserManager(
         }
     }
 
+    /**
+     * Switch between whole-stroke erasing and precise erasing that splits strokes
+     * @param enabled True to cut strokes only where the eraser passes
+     */
+    fun setPreciseEraseEnabled(enabled: Boolean) {
+        preciseEraseEnabled = enabled
+        Log.d(TAG, "Precise erase set to: $enabled")
+    }
+
+    fun isPreciseEraseEnabled(): Boolean = preciseEraseEnabled
+
     /**
      * Check if eraser mode is currently enabled
      * @return True if eraser mode is enabled
@@ -66,7 +84,9 @@ class OnyxEraserManager(
         partialRefreshManager = PartialRefreshManager(
             getRxManager(), 
             getRendererHelper(), 
-            viewportController
+            viewportController,
+            shapeManager.getSpatialIndex(),
+            renderingManager
         )
     }
 
@@ -86,6 +106,7 @@ class OnyxEraserManager(
 
         // Initialize new erasing session
         currentErasingSession.clear()
+        sessionFragments.clear()
         eraserPath.clear()
 
         // Add initial touch point to eraser path
@@ -111,18 +132,18 @@ class OnyxEraserManager(
             eraserPath.add(point)
         }
 
-        // Update database with remaining shapes if any shapes were erased
+        // Update database if any shapes were erased
         if (currentErasingSession.hasAffectedShapes()) {
-            Log.d(TAG, "Total shapes remaining in shape manager: ${shapeManager.getAllShapes().size}")
+            Log.d(TAG, "Total shapes remaining in shape manager: ${shapeManager.getShapeCount()}")
             
-            // Update database with remaining shapes
-            updateDatabaseWithRemainingShapes()
+            // Delete only the erased shapes from the database
+            updateDatabaseWithErasedShapes()
         } else {
             Log.d(TAG, "Erasing session ended with no shapes erased")
         }
 
-        // Enable EpdController post as requested
-        EpdController.enablePost(surfaceView, 1)
+        // Let the surface post again, through the refresh policy's update mode controller
+        surfaceView?.let { renderingManager.getRefreshPolicy().getUpdateModeController().enablePost(it, true) }
 
         // Perform optimized refresh only if shapes were erased
         if (currentErasingSession.hasAffectedShapes()) {
@@ -131,6 +152,7 @@ class OnyxEraserManager(
 
         // Clear session data
         currentErasingSession.clear()
+        sessionFragments.clear()
         eraserPath.clear()
 
         EditorState.notifyErasingEnded()
@@ -164,9 +186,13 @@ class OnyxEraserManager(
                 adjustEraserPathForViewport(eraserPathList, controller)
             } ?: eraserPathList
 
-            // Find shapes to erase using the complete adjusted path
-            val availableShapes = shapeManager.getShapesSnapshot()
-            val shapesToErase = RefreshUtils.findShapesInPath(adjustedEraserPath, availableShapes)
+            if (preciseEraseEnabled) {
+                eraseSegments(adjustedEraserPath)
+                return
+            }
+
+            // Find shapes to erase using the complete adjusted path, only testing shapes near it
+            val shapesToErase = shapeManager.getShapesIntersectingWithPoints(adjustedEraserPath, ERASER_RADIUS)
 
             if (shapesToErase.isNotEmpty()) {
                 eraseShapesCompletely(shapesToErase)
@@ -187,7 +213,7 @@ class OnyxEraserManager(
      * Erase shapes completely at the end of erasing session
      * @param shapesToErase Collection of shapes to erase
      */
-    private fun eraseShapesCompletely(shapesToErase: Collection<com.wyldsoft.notes.editorview.drawing.shape.DrawingShape>) {
+    private fun eraseShapesCompletely(shapesToErase: Collection<DrawingShape>) {
         Log.d(TAG, "Erasing ${shapesToErase.size} shapes completely")
         
         // Remove shapes from shape manager
@@ -196,23 +222,53 @@ class OnyxEraserManager(
 
         // Add to erasing session
         shapesToErase.forEach { shape ->
-            currentErasingSession.addAffectedShape(shape)
+            recordErasedShape(shape)
         }
 
         // Note: Database update and refresh will happen in endErasing()
     }
 
     /**
-     * Update database with remaining shapes after erasing
+     * Cut strokes where the eraser path crosses them, keeping the untouched pieces
+     * Each candidate's segments are looked up through its segment hierarchy
+     * @param canvasEraserPath Eraser path in canvas coordinates
      */
-    private fun updateDatabaseWithRemainingShapes() {
-        val remainingShapes = shapeManager.getAllShapes()
-        
-        // Get current pen profile from the provided function
-        val currentPenProfile = getPenProfile()
-        
-        Log.d(TAG, "Updating database with ${remainingShapes.size} remaining shapes")
-        databaseManager.updateDatabaseAfterErasing(remainingShapes, currentPenProfile)
+    private fun eraseSegments(canvasEraserPath: TouchPointList) {
+        var splitCount = 0
+        var fragmentCount = 0
+
+        shapeManager.getShapesNearPath(canvasEraserPath, ERASER_RADIUS).forEach { shape ->
+            val result = StrokeSplitter.split(shape, canvasEraserPath, ERASER_RADIUS) ?: return@forEach
+
+            shapeManager.replaceShape(shape, result.fragments)
+            recordErasedShape(shape)
+            sessionFragments.addAll(result.fragments)
+
+            splitCount++
+            fragmentCount += result.fragments.size
+        }
+
+        Log.d(TAG, "Precise erase cut $splitCount shapes into $fragmentCount fragments")
+    }
+
+    /**
+     * Track an erased shape for persistence and refresh
+     * Fragments created earlier in this session were never saved, so they are just dropped
+     */
+    private fun recordErasedShape(shape: DrawingShape) {
+        if (sessionFragments.remove(shape)) return
+        currentErasingSession.addAffectedShape(shape)
+    }
+
+    /**
+     * Persist this session's changes: delete erased shapes and insert surviving fragments
+     */
+    private fun updateDatabaseWithErasedShapes() {
+        val erasedShapes = currentErasingSession.affectedShapes.toList()
+        val fragments = sessionFragments.toList()
+
+        Log.d(TAG, "Deleting ${erasedShapes.size} erased shapes and inserting ${fragments.size} fragments")
+        databaseManager.updateDatabaseAfterErasing(erasedShapes, fragments)
     }
 
     /**
@@ -225,14 +281,16 @@ class OnyxEraserManager(
             partialRefreshManager = PartialRefreshManager(
                 getRxManager(), 
                 getRendererHelper(), 
-                viewportController
+                viewportController,
+                shapeManager.getSpatialIndex(),
+                renderingManager
             )
         }
         
         val refreshBounds = partialRefreshManager.calculateRefreshBounds(
             currentErasingSession.affectedShapes,
             eraserPath,
-            20f // Default eraser radius
+            ERASER_RADIUS
         )
 
         if (!refreshBounds.isEmpty) {
@@ -307,6 +365,7 @@ class OnyxEraserManager(
      */
     fun clearErasingSession() {
         currentErasingSession.clear()
+        sessionFragments.clear()
         eraserPath.clear()
         isErasingInProgress = false
         Log.d(TAG, "Cleared erasing session")
@@ -315,6 +374,8 @@ class OnyxEraserManager(
     /**
      * Adjust eraser path to account for viewport transforms (zoom and scroll)
      * Converts screen coordinates to canvas coordinates at 100% zoom
+     * The raw points stay in screen space for refresh bounds; the converted copy is written
+     * into a reused list so repeated erasing does not allocate per point
      * @param eraserPath Original eraser path from input
      * @param viewportController Controller with current viewport state
      * @return Adjusted eraser path in canvas coordinates
@@ -328,27 +389,8 @@ class OnyxEraserManager(
             return eraserPath
         }
 
-        val adjustedPoints = originalPoints.map { touchPoint ->
-            // Convert screen coordinates to canvas coordinates
-            val screenPoint = PointF(touchPoint.x, touchPoint.y)
-            val canvasPoint = viewportController.screenToCanvas(screenPoint)
-            
-            TouchPoint().apply {
-                x = canvasPoint.x
-                y = canvasPoint.y
-                pressure = touchPoint.pressure
-                timestamp = touchPoint.timestamp
-                size = touchPoint.size
-            }
-        }
-
-        // Create new TouchPointList with adjusted points
-        val adjustedEraserPath = TouchPointList()
-        adjustedPoints.forEach { point ->
-            adjustedEraserPath.add(point)
-        }
-
-        return adjustedEraserPath
+        viewportController.screenToCanvas(originalPoints, canvasEraserPath.points)
+        return canvasEraserPath
     }
 
     /**
@@ -3,36 +3,161 @@ package com.wyldsoft.notes.editorview.drawing.onyx
 import android.graphics.Bitmap
 import android.graphics.Canvas
 import android.graphics.Color
+import android.graphics.Matrix
 import android.graphics.Paint
+import android.graphics.Rect
+import android.graphics.RectF
+import android.os.Handler
+import android.os.Looper
 import android.util.Log
 import android.view.SurfaceView
 import androidx.core.graphics.createBitmap
+import com.wyldsoft.notes.BuildConfig
 import com.wyldsoft.notes.render.RendererHelper
-import com.wyldsoft.notes.render.RendererToScreenRequest
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import com.wyldsoft.notes.editorview.rendering.BitmapPool
+import com.wyldsoft.notes.editorview.rendering.RefreshPolicy
+import com.wyldsoft.notes.editorview.rendering.RenderScheduler
+import com.wyldsoft.notes.editorview.rendering.StrokeMaskCache
+import com.wyldsoft.notes.editorview.rendering.TileCache
+import com.wyldsoft.notes.editorview.viewport.ShapeSpatialIndex
 import com.wyldsoft.notes.editorview.viewport.ViewportController
 import com.onyx.android.sdk.rx.RxManager
+import com.onyx.android.sdk.rx.RxRequest
+import kotlin.math.roundToInt
 
 /**
  * Manages bitmap creation, shape rendering, and screen refresh operations for the Onyx drawing system
  * Handles all rendering-related functionality including bitmap management and screen updates
+ *
+ * All rasterization runs on the render thread (the shared single-thread RxManager that also
+ * posts frames), so the UI and pen input callbacks never block on drawing a large page.
+ * Public methods capture the viewport state on the calling thread and queue the work.
+ * The page is double-buffered: full re-renders go into the back bitmap, which is then
+ * swapped to the front; frames are always drawn from the front bitmap.
  */
 class OnyxRenderingManager {
     companion object {
         private const val TAG = "OnyxRenderingManager"
+
+        // Pen idle time after a stroke or erase before a due full refresh may flash the panel
+        private const val PEN_IDLE_FULL_REFRESH_DELAY_MS = 1500L
+
+        // Extra pixels around a committed stroke's dirty rect to cover anti-aliasing
+        private const val DIRTY_RECT_MARGIN = 4
+
+        // Fail fast in debug builds when a rasterizing path runs on the main thread
+        private val STRICT_RENDER_THREAD = BuildConfig.DEBUG
+
+        // Largest on-screen error, in pixels, accepted from stroke simplification during gestures
+        private const val GESTURE_MAX_SCREEN_ERROR = 2.5f
+
+        /**
+         * Pick the level of detail for rendering
+         * Settled views always render at full resolution; during a gesture the coarsest
+         * simplification whose error stays under GESTURE_MAX_SCREEN_ERROR at this zoom is used
+         */
+        fun selectLodLevel(zoomLevel: Float, gestureInProgress: Boolean): Int {
+            if (!gestureInProgress) return 0
+            for (level in DrawingShape.LOD_TOLERANCES.size downTo 1) {
+                if (DrawingShape.LOD_TOLERANCES[level - 1] * zoomLevel <= GESTURE_MAX_SCREEN_ERROR) {
+                    return level
+                }
+            }
+            return 0
+        }
+    }
+
+    /**
+     * Viewport transform captured when work is requested, so queued work renders the
+     * viewport the caller saw even if it has moved since
+     */
+    private class ViewState(
+        val matrix: Matrix?,
+        val zoomLevel: Float,
+        val offsetX: Int,
+        val offsetY: Int,
+        val lodLevel: Int
+    )
+
+    /**
+     * Runs a block of rendering work on the render thread
+     */
+    private class RenderJob(private val name: String, private val block: () -> Unit) : RxRequest() {
+        override fun execute() {
+            try {
+                block()
+            } catch (e: Exception) {
+                Log.e(TAG, "Render job '$name' failed", e)
+            }
+        }
     }
 
     // Rendering components
     private var rendererHelper: RendererHelper? = null
     private var rxManager: RxManager? = null
 
-    // Current bitmap and canvas for drawing
-    private var currentBitmap: Bitmap? = null
-    private var currentCanvas: Canvas? = null
-    
+    // Double-buffered page bitmaps, owned by the render thread
+    @Volatile
+    private var frontBitmap: Bitmap? = null
+    private var frontCanvas: Canvas? = null
+    private var backBitmap: Bitmap? = null
+    private var backCanvas: Canvas? = null
+
     // Viewport controller for transformations
+    @Volatile
     private var viewportController: ViewportController? = null
 
+    // Pre-rendered tiles composited on viewport changes instead of re-rendering every shape
+    private val tileCache = TileCache()
+
+    // Reusable buffers for partial refresh requests
+    private val bitmapPool = BitmapPool()
+
+    // Rasterized masks for textured strokes that are too expensive to redraw
+    private val strokeMaskCache = StrokeMaskCache()
+
+    // Picks e-ink update modes from gesture state and triggers periodic ghost-clearing refreshes
+    private val refreshPolicy = RefreshPolicy(
+        OnyxEpdUpdateModeController,
+        gestureInProgress = { viewportController?.isGestureInProgress() == true }
+    )
+
+    // Coalesces screen frames so stale frames do not queue up during scroll and zoom
+    private val renderScheduler by lazy { RenderScheduler(getRxManager(), refreshPolicy) }
+
+    // Shape lookup for tile rendering, provided by the shape manager
+    @Volatile
+    private var spatialIndex: ShapeSpatialIndex? = null
+
+    // Scroll deltas accumulated on the UI thread until the render thread applies them
+    private val scrollLock = Any()
+    private var pendingScrollX = 0
+    private var pendingScrollY = 0
+    private var pendingScrollState: ViewState? = null
+    private var scrollJobQueued = false
+
+    // Set on the render thread when the screen shows reduced-detail or scaled content
+    private var provisionalFrame = false
+
+    // Viewport transform the front bitmap was rendered at, used to scale it for zoom previews
+    private var frontMatrix: Matrix? = null
+
+    // Set while the screen shows a scaled copy of the front bitmap instead of the current zoom
+    private var zoomPreviewActive = false
+
+    // Set on the render thread when tiles were invalidated since the front bitmap was last fully
+    // composited, so the next scroll re-composites the whole frame instead of shifting stale ink
+    private var frontStale = false
+
+    // Bilinear filtering for scaled zoom previews
+    private val previewPaint = Paint(Paint.FILTER_BITMAP_FLAG)
+
+    // Posts the ghost-clearing full refresh once the pen has been idle, on the main thread
+    private val idleHandler = Handler(Looper.getMainLooper())
+    private var idleRefreshSurface: SurfaceView? = null
+    private val idleFullRefresh = Runnable { requestIdleFullRefresh() }
+
     init {
         initializeRenderer()
     }
@@ -54,8 +179,56 @@ class OnyxRenderingManager {
         Log.d(TAG, "ViewportController set: ${controller != null}")
     }
 
+    /**
+     * Set the spatial index used to find the shapes inside each tile
+     * @param index Spatial index kept in sync with the drawn shapes
+     */
+    fun setSpatialIndex(index: ShapeSpatialIndex?) {
+        spatialIndex = index
+        invalidateAllTiles()
+    }
+
+    /**
+     * Invalidate cached tiles overlapping a changed area
+     * Tiles are removed on the render thread, which may be compositing them right now;
+     * marking the cache stale first keeps tiles rendered in the meantime out of it
+     * @param canvasBounds Changed area in canvas coordinates
+     */
+    fun invalidateTiles(canvasBounds: RectF) {
+        tileCache.markStale()
+        val bounds = RectF(canvasBounds)
+        runOnRenderThread("invalidateTiles") {
+            tileCache.invalidate(bounds)
+            frontStale = true
+        }
+    }
+
+    /**
+     * Invalidate cached tiles whose canvas area matches a predicate
+     * @param predicate Receives each tile's canvas bounds; runs on the render thread
+     */
+    fun invalidateTilesWhere(predicate: (RectF) -> Boolean) {
+        tileCache.markStale()
+        runOnRenderThread("invalidateTilesWhere") {
+            tileCache.invalidateWhere(predicate)
+            frontStale = true
+        }
+    }
+
+    /**
+     * Invalidate every cached tile
+     */
+    fun invalidateAllTiles() {
+        tileCache.markStale()
+        runOnRenderThread("invalidateAllTiles") {
+            tileCache.clear()
+            frontStale = true
+        }
+    }
+
     /**
      * Get the renderer helper instance
+     * Its shared RenderContext must only be used on the render thread
      * @return RendererHelper for rendering operations
      */
     fun getRendererHelper(): RendererHelper {
@@ -66,162 +239,249 @@ class OnyxRenderingManager {
     }
 
     /**
-     * Create or get the current drawing bitmap for the given surface
-     * @param surfaceView SurfaceView to create bitmap for
-     * @return Bitmap ready for drawing operations
+     * Queue rendering work on the render thread, after any work already queued
+     * @param name Job name for logging
+     * @param block Work to run
      */
-    fun createOrGetDrawingBitmap(surfaceView: SurfaceView?): Bitmap? {
-        return surfaceView?.let { sv ->
-            if (currentBitmap == null ||
-                currentBitmap?.width != sv.width ||
-                currentBitmap?.height != sv.height) {
-
-                // Recycle old bitmap if it exists
-                currentBitmap?.recycle()
-
-                // Create new bitmap
-                currentBitmap = createBitmap(sv.width, sv.height)
-                currentCanvas = Canvas(currentBitmap!!)
-                currentCanvas?.drawColor(Color.WHITE)
-
-                Log.d(TAG, "Created new bitmap: ${sv.width}x${sv.height}")
-            }
-            Log.d(TAG, "surfaceView created size ${currentBitmap!!.height}x${currentBitmap!!.width}")
-            currentBitmap
+    fun runOnRenderThread(name: String, block: () -> Unit) {
+        try {
+            getRxManager().enqueue(RenderJob(name, block), null)
+        } catch (e: Exception) {
+            Log.e(TAG, "Error enqueueing render job '$name'", e)
         }
     }
 
     /**
-     * Render a single shape to the current bitmap
+     * Render a single shape onto the front bitmap
      * @param shape Shape to render
      */
     fun renderShapeToBitmap(shape: DrawingShape) {
-        currentBitmap?.let { bitmap ->
-            val renderContext = getRendererHelper().getRenderContext()
+        val viewState = captureViewState()
+        runOnRenderThread("renderShape") {
+            val bitmap = frontBitmap ?: return@runOnRenderThread
+            val canvas = frontCanvas ?: return@runOnRenderThread
+            drawShapes(canvas, bitmap, listOf(shape), viewState)
+        }
+    }
 
-            setupRenderContext(renderContext, bitmap)
+    /**
+     * Recreate the entire page from a collection of shapes
+     * @param shapes Snapshot of the shapes to render
+     */
+    fun recreateBitmapFromShapes(shapes: List<DrawingShape>) {
+        val viewState = captureViewState()
+        runOnRenderThread("recreateBitmap") {
+            if (frontBitmap == null) {
+                Log.w(TAG, "No bitmap available for recreating from shapes")
+                return@runOnRenderThread
+            }
+            renderPage(shapes, viewState)
+        }
+    }
 
-            try {
-                shape.render(renderContext)
-                Log.d(TAG, "Rendered shape to bitmap")
-            } catch (e: Exception) {
-                Log.e(TAG, "Error rendering shape to bitmap", e)
+    /**
+     * Recreate the page with bitmaps sized for the surface view
+     * @param shapes Snapshot of the shapes to render
+     * @param surfaceView SurfaceView for bitmap dimensions
+     */
+    fun recreateBitmapFromShapes(shapes: List<DrawingShape>, surfaceView: SurfaceView?) {
+        surfaceView ?: return recreateBitmapFromShapes(shapes)
+
+        val viewState = captureViewState()
+        val width = surfaceView.width
+        val height = surfaceView.height
+        runOnRenderThread("recreateBitmap") {
+            if (ensureBuffers(width, height)) {
+                renderPage(shapes, viewState)
             }
         }
     }
 
     /**
-     * Recreate the entire bitmap from a collection of shapes
-     * @param shapes Collection of shapes to render
+     * Render bitmap to screen using RxManager
+     * @param surfaceView SurfaceView to render to
+     * @param bitmap Bitmap to render, or null to use the front page bitmap
      */
-    fun recreateBitmapFromShapes(shapes: List<DrawingShape>) {
-        // Ensure we have a bitmap to work with
-        if (currentBitmap == null) {
-            Log.w(TAG, "No bitmap available for recreating from shapes")
-            return
+    fun renderToScreen(surfaceView: SurfaceView?, bitmap: Bitmap?) {
+        surfaceView ?: return
+
+        runOnRenderThread("renderToScreen") {
+            val bitmapToRender = bitmap ?: frontBitmap ?: return@runOnRenderThread
+            renderScheduler.requestFrame(surfaceView, bitmapToRender)
         }
+    }
 
-        currentBitmap?.let { bitmap ->
-            // Clear the bitmap
-            currentCanvas?.drawColor(Color.WHITE)
+    /**
+     * Pen-up commit path: rasterize a new shape onto the front bitmap and push only the
+     * screen area it covers, instead of the whole surface
+     * @param surfaceView SurfaceView to render to
+     * @param shape Newly added shape
+     */
+    fun commitShapeToScreen(surfaceView: SurfaceView?, shape: DrawingShape) {
+        surfaceView ?: return
 
-            // Set up render context
-            val renderContext = getRendererHelper().getRenderContext()
-            setupRenderContext(renderContext, bitmap)
+        val viewState = captureViewState()
+        val dirtyBounds = computeCanvasDirtyBounds(shape)
+        runOnRenderThread("commitShape") {
+            val bitmap = frontBitmap ?: return@runOnRenderThread
+            val canvas = frontCanvas ?: return@runOnRenderThread
+            drawShapes(canvas, bitmap, listOf(shape), viewState)
+
+            val dirtyRect = dirtyBounds?.let { toScreenDirtyRect(it, viewState, bitmap) }
+            if (dirtyRect == null) {
+                renderScheduler.requestFrame(surfaceView, bitmap)
+            } else {
+                renderScheduler.requestFrame(surfaceView, bitmap, dirtyRect, RenderScheduler.Priority.COMMIT)
+                Log.d(TAG, "Requested stroke commit frame for $dirtyRect")
+            }
+        }
+    }
 
-            // Render all shapes
-            shapes.forEach { shape ->
-                try {
-                    shape.render(renderContext)
-                } catch (e: Exception) {
-                    Log.e(TAG, "Error rendering shape during bitmap recreation", e)
-                }
+    /**
+     * Erase refresh path: re-composite a changed area of the front bitmap from the tiles and push
+     * only the screen area it covers, so the page buffer never keeps erased ink for later scrolls
+     * Callers invalidate the tiles of their changes first; that work is queued ahead of this job.
+     * @param surfaceView SurfaceView to render to
+     * @param canvasBounds Changed area in canvas coordinates
+     * @param allShapes Snapshot of all shapes, drawn directly when the page cannot be tiled
+     */
+    fun refreshRegion(surfaceView: SurfaceView?, canvasBounds: RectF, allShapes: List<DrawingShape>) {
+        surfaceView ?: return
+
+        val viewState = captureViewState()
+        val bounds = RectF(canvasBounds)
+        runOnRenderThread("refreshRegion") {
+            val bitmap = frontBitmap ?: return@runOnRenderThread
+            val dirtyRect = toScreenDirtyRect(bounds, viewState, bitmap) ?: return@runOnRenderThread
+
+            val index = spatialIndex
+            if (index != null && viewState.matrix != null && !zoomPreviewActive) {
+                frontCanvas?.let { compositeTiles(it, dirtyRect, index, viewState) }
+            } else {
+                renderPage(allShapes, viewState)
             }
 
-            Log.d(TAG, "Recreated bitmap from ${shapes.size} shapes")
+            val front = frontBitmap ?: return@runOnRenderThread
+            renderScheduler.requestFrame(
+                surfaceView, front, dirtyRect, RenderScheduler.Priority.COMMIT, RefreshPolicy.ContentType.ERASE
+            )
+            Log.d(TAG, "Requested erase refresh frame for $dirtyRect")
         }
     }
 
     /**
-     * Recreate bitmap from shapes with surface view context
-     * This ensures bitmap is properly sized for the surface
-     * @param shapes Collection of shapes to render
-     * @param surfaceView SurfaceView for bitmap dimensions
+     * Cancel a pending idle full refresh; the pen is writing or erasing again
      */
-    fun recreateBitmapFromShapes(shapes: List<DrawingShape>, surfaceView: SurfaceView?) {
-        surfaceView?.let { sv ->
-            // Ensure bitmap is created/updated for current surface
-            createOrGetDrawingBitmap(sv)
-            // Now recreate with shapes
-            recreateBitmapFromShapes(shapes)
-        } ?: run {
-            // Fallback to existing method
-            recreateBitmapFromShapes(shapes)
-        }
+    fun onPenDown() {
+        idleHandler.removeCallbacks(idleFullRefresh)
     }
 
     /**
-     * Setup render context with current bitmap and canvas
-     * @param renderContext RenderContext to configure
-     * @param bitmap Bitmap to render to
+     * Schedule a full GC refresh for when the pen stays idle, if the refresh policy says one is due
+     * by then. Stroke and erase frames never flash the panel themselves, so without this a session
+     * of writing without scrolling would keep accumulating ghosting.
+     * @param surfaceView SurfaceView to refresh
      */
-    private fun setupRenderContext(renderContext: RendererHelper.RenderContext, bitmap: Bitmap) {
-        renderContext.bitmap = bitmap
-        val canvas = currentCanvas ?: Canvas(bitmap)
-        
-        // Apply viewport transformation matrix if available
-        viewportController?.let { controller ->
-            canvas.save()
-            canvas.setMatrix(controller.getTransformMatrix())
-            Log.d(TAG, "Applied viewport transformation matrix - zoom: ${controller.getZoomLevel()}")
-        }
-        
-        renderContext.canvas = canvas
-        renderContext.paint = createRenderPaint()
-        renderContext.viewPoint = android.graphics.Point(0, 0)
+    fun onPenUp(surfaceView: SurfaceView?) {
+        surfaceView ?: return
+        idleRefreshSurface = surfaceView
+        idleHandler.removeCallbacks(idleFullRefresh)
+        idleHandler.postDelayed(idleFullRefresh, PEN_IDLE_FULL_REFRESH_DELAY_MS)
     }
 
     /**
-     * Restore canvas state after rendering if viewport transformation was applied
-     * @param canvas Canvas to restore
+     * Fast scroll path: shift the current frame by the scroll delta and render only the exposed strips
+     * Consecutive scrolls are coalesced so at most one scroll job is queued at a time
+     * @param surfaceView SurfaceView to render to
+     * @param deltaX Horizontal content shift in screen pixels
+     * @param deltaY Vertical content shift in screen pixels
+     * @return False if the fast path is unavailable and the caller should do a full refresh
      */
-    private fun restoreCanvasState(canvas: Canvas) {
-        if (viewportController != null) {
-            canvas.restore()
-            Log.d(TAG, "Restored canvas state after viewport transformation")
+    fun scrollContent(surfaceView: SurfaceView?, deltaX: Int, deltaY: Int): Boolean {
+        surfaceView ?: return false
+        if (spatialIndex == null || viewportController == null || frontBitmap == null) return false
+
+        synchronized(scrollLock) {
+            pendingScrollX += deltaX
+            pendingScrollY += deltaY
+            // The strips must be rendered at the offset matching the accumulated delta
+            pendingScrollState = captureViewState()
+            if (scrollJobQueued) {
+                Log.d(TAG, "Scroll job queued, coalescing delta ($pendingScrollX, $pendingScrollY)")
+                return true
+            }
+            scrollJobQueued = true
         }
+        runOnRenderThread("scroll") { renderPendingScroll(surfaceView) }
+        return true
     }
 
     /**
-     * Create paint object for rendering operations
-     * @return Paint configured for shape rendering
+     * Force a complete screen refresh
+     * @param surfaceView SurfaceView to refresh
+     * @param allShapes Snapshot of all shapes to render during refresh
      */
-    private fun createRenderPaint(): Paint {
-        return Paint().apply {
-            isAntiAlias = true
-            style = Paint.Style.STROKE
-            strokeCap = Paint.Cap.ROUND
-            strokeJoin = Paint.Join.ROUND
+    fun forceScreenRefresh(surfaceView: SurfaceView?, allShapes: List<DrawingShape>) {
+        Log.d(TAG, "Forcing complete screen refresh")
+
+        surfaceView ?: return
+        val viewState = captureViewState()
+        val width = surfaceView.width
+        val height = surfaceView.height
+        runOnRenderThread("forceScreenRefresh") {
+            cleanSurfaceView(surfaceView)
+            if (!ensureBuffers(width, height)) return@runOnRenderThread
+            renderPage(allShapes, viewState)
+            frontBitmap?.let { renderScheduler.requestFrame(surfaceView, it) }
         }
     }
 
     /**
-     * Render bitmap to screen using RxManager
+     * Preview a zoom change by scaling the last rendered page instead of re-rendering every shape
+     * The front bitmap is drawn into the back bitmap with the transform from its rendered zoom to
+     * the current one and that frame is shown; the page is left untouched so repeated previews
+     * during one pinch always scale the sharp original. renderSettledFrame replaces the preview.
      * @param surfaceView SurfaceView to render to
-     * @param bitmap Bitmap to render, or null to use current bitmap
      */
-    fun renderToScreen(surfaceView: SurfaceView?, bitmap: Bitmap?) {
+    fun renderZoomPreview(surfaceView: SurfaceView?) {
         surfaceView ?: return
+        val viewState = captureViewState()
+        runOnRenderThread("renderZoomPreview") {
+            val front = frontBitmap ?: return@runOnRenderThread
+            val rendered = frontMatrix
+            val target = viewState.matrix
+            val preview = Matrix()
+            if (rendered == null || target == null || !rendered.invert(preview)) {
+                Log.d(TAG, "No rendered transform for zoom preview, skipping")
+                return@runOnRenderThread
+            }
+            // Undo the transform the page was rendered with, then apply the current one
+            preview.postConcat(target)
+
+            val canvas = obtainBackBuffer(front)
+            val bitmap = backBitmap ?: return@runOnRenderThread
+            canvas.drawColor(Color.WHITE)
+            canvas.drawBitmap(front, preview, previewPaint)
+            zoomPreviewActive = true
+            provisionalFrame = true
+            renderScheduler.requestFrame(surfaceView, bitmap)
+        }
+    }
 
-        val bitmapToRender = bitmap ?: currentBitmap
-        bitmapToRender ?: return
-
-        try {
-            val renderRequest = RendererToScreenRequest(surfaceView, bitmapToRender)
-            getRxManager().enqueue(renderRequest, null)
-            Log.d(TAG, "Enqueued render to screen request")
-        } catch (e: Exception) {
-            Log.e(TAG, "Error rendering to screen", e)
+    /**
+     * Re-render the page at full detail once a gesture has ended
+     * Does nothing if no reduced-detail or previewed content was drawn during the gesture
+     * @param surfaceView SurfaceView to render to
+     * @param allShapes Snapshot of all shapes
+     */
+    fun renderSettledFrame(surfaceView: SurfaceView?, allShapes: List<DrawingShape>) {
+        surfaceView ?: return
+        val viewState = captureViewState()
+        runOnRenderThread("renderSettledFrame") {
+            if (!provisionalFrame || frontBitmap == null) return@runOnRenderThread
+            renderPage(allShapes, viewState)
+            frontBitmap?.let { renderScheduler.requestFrame(surfaceView, it) }
+            Log.d(TAG, "Re-rendered settled frame at full detail")
         }
     }
 
@@ -252,49 +512,398 @@ class OnyxRenderingManager {
     }
 
     /**
-     * Force a complete screen refresh
-     * @param surfaceView SurfaceView to refresh
-     * @param allShapes All shapes to render during refresh
+     * Clear the surface and bitmaps
+     * @param surfaceView SurfaceView to clear
      */
-    fun forceScreenRefresh(surfaceView: SurfaceView?, allShapes: List<DrawingShape>) {
-        Log.d(TAG, "Forcing complete screen refresh")
+    fun clearSurface(surfaceView: SurfaceView?) {
+        surfaceView ?: return
+        tileCache.markStale()
+        runOnRenderThread("clearSurface") {
+            // Cached bitmaps are recycled here, where nothing can be drawing them
+            tileCache.clear()
+            strokeMaskCache.clear()
+            releaseBuffers()
+            cleanSurfaceView(surfaceView)
+            Log.d(TAG, "Cleared surface and bitmap")
+        }
+    }
 
-        surfaceView?.let { sv ->
-            // Clean the surface
-            cleanSurfaceView(sv)
+    /**
+     * Get the front page bitmap (read-only access)
+     * Its contents are only stable on the render thread
+     * @return Current bitmap or null if none exists
+     */
+    fun getCurrentBitmap(): Bitmap? = frontBitmap
 
-            // Recreate bitmap from all shapes
-            createOrGetDrawingBitmap(sv)
-            recreateBitmapFromShapes(allShapes)
+    /**
+     * Get the pool of reusable refresh bitmaps
+     */
+    fun getBitmapPool(): BitmapPool = bitmapPool
 
-            // Render to screen
-            renderToScreen(sv, currentBitmap)
+    /**
+     * Get the cache of rasterized textured stroke masks
+     */
+    fun getStrokeMaskCache(): StrokeMaskCache = strokeMaskCache
+
+    /**
+     * Get the policy choosing e-ink update modes for screen refreshes
+     */
+    fun getRefreshPolicy(): RefreshPolicy = refreshPolicy
+
+    /**
+     * Get frame scheduler statistics (queue depth, dropped frames)
+     */
+    fun getRenderStats(): Map<String, Any> = renderScheduler.getStats()
+
+    /**
+     * Cleanup rendering resources
+     */
+    fun cleanup() {
+        idleHandler.removeCallbacks(idleFullRefresh)
+        idleRefreshSurface = null
+        tileCache.markStale()
+        runOnRenderThread("cleanup") {
+            // Cached bitmaps are recycled here, where nothing can be drawing them
+            tileCache.clear()
+            bitmapPool.clear()
+            strokeMaskCache.clear()
+            releaseBuffers()
+            Log.d(TAG, "Cleaned up rendering resources")
         }
     }
 
+    // Render thread internals
+
     /**
-     * Clear the surface and bitmap
-     * @param surfaceView SurfaceView to clear
+     * Strict-mode style guard: rasterizing on the main thread blocks input and UI
      */
-    fun clearSurface(surfaceView: SurfaceView?) {
-        surfaceView?.let { sv ->
-            // Clear the bitmap
-            currentBitmap?.recycle()
-            currentBitmap = null
-            currentCanvas = null
+    private fun assertRenderThread(operation: String) {
+        if (Looper.myLooper() != Looper.getMainLooper()) return
+        val violation = IllegalStateException("$operation must not run on the main thread")
+        if (STRICT_RENDER_THREAD) {
+            throw violation
+        }
+        Log.w(TAG, "Render thread violation", violation)
+    }
 
-            // Clean the surface view
-            cleanSurfaceView(sv)
+    private fun captureViewState(): ViewState {
+        val controller = viewportController
+            ?: return ViewState(null, 1f, 0, 0, 0)
+        val offset = controller.getOffset()
+        val zoomLevel = controller.getZoomLevel()
+        return ViewState(
+            Matrix(controller.getTransformMatrix()),
+            zoomLevel,
+            offset.x.roundToInt(),
+            offset.y.roundToInt(),
+            selectLodLevel(zoomLevel, controller.isGestureInProgress())
+        )
+    }
 
-            Log.d(TAG, "Cleared surface and bitmap")
+    /**
+     * Make sure front and back bitmaps match the surface size
+     * @return False if the size is not usable yet
+     */
+    private fun ensureBuffers(width: Int, height: Int): Boolean {
+        if (width <= 0 || height <= 0) return false
+        val front = frontBitmap
+        if (front != null && !front.isRecycled && front.width == width && front.height == height) {
+            return true
         }
+
+        releaseBuffers()
+        val bitmap = createBitmap(width, height)
+        frontCanvas = Canvas(bitmap).apply { drawColor(Color.WHITE) }
+        frontBitmap = bitmap
+        Log.d(TAG, "Created new page bitmaps: ${width}x${height}")
+        return true
     }
 
     /**
-     * Get current bitmap (read-only access)
-     * @return Current bitmap or null if none exists
+     * Get the back bitmap, allocating it to match the front bitmap
      */
-    fun getCurrentBitmap(): Bitmap? = currentBitmap
+    private fun obtainBackBuffer(front: Bitmap): Canvas {
+        val back = backBitmap
+        if (back != null && !back.isRecycled && back.width == front.width && back.height == front.height) {
+            return backCanvas!!
+        }
+        back?.recycle()
+        val bitmap = createBitmap(front.width, front.height)
+        backBitmap = bitmap
+        return Canvas(bitmap).also { backCanvas = it }
+    }
+
+    private fun swapBuffers() {
+        val oldFront = frontBitmap
+        val oldFrontCanvas = frontCanvas
+        frontBitmap = backBitmap
+        frontCanvas = backCanvas
+        backBitmap = oldFront
+        backCanvas = oldFrontCanvas
+    }
+
+    private fun releaseBuffers() {
+        frontBitmap?.recycle()
+        backBitmap?.recycle()
+        frontBitmap = null
+        frontCanvas = null
+        backBitmap = null
+        backCanvas = null
+        frontMatrix = null
+    }
+
+    /**
+     * Render the whole page into the back bitmap and swap it to the front
+     */
+    private fun renderPage(shapes: List<DrawingShape>, viewState: ViewState) {
+        assertRenderThread("renderPage")
+        val front = frontBitmap ?: return
+        val canvas = obtainBackBuffer(front)
+        val bitmap = backBitmap ?: return
+        canvas.drawColor(Color.WHITE)
+
+        // Composite cached tiles when the page can be tiled
+        val index = spatialIndex
+        if (index != null && viewState.matrix != null) {
+            compositeTiles(canvas, Rect(0, 0, bitmap.width, bitmap.height), index, viewState)
+        } else {
+            drawShapes(canvas, bitmap, shapes, viewState)
+            Log.d(TAG, "Recreated bitmap from ${shapes.size} shapes")
+        }
+        swapBuffers()
+        frontMatrix = viewState.matrix
+        zoomPreviewActive = false
+        frontStale = false
+        provisionalFrame = viewState.lodLevel > 0
+    }
+
+    /**
+     * Draw shapes onto a page canvas through the viewport transform
+     */
+    private fun drawShapes(canvas: Canvas, bitmap: Bitmap, shapes: List<DrawingShape>, viewState: ViewState) {
+        assertRenderThread("drawShapes")
+        val renderContext = getRendererHelper().getRenderContext()
+        renderContext.bitmap = bitmap
+        renderContext.canvas = canvas
+        renderContext.resetPaint()
+        renderContext.setViewPoint(0, 0)
+        renderContext.lodLevel = viewState.lodLevel
+        renderContext.zoomLevel = viewState.zoomLevel
+        renderContext.strokeMaskCache = strokeMaskCache
+
+        // One query for every header-only shape on the page instead of one per shape
+        DrawingShape.prefetchTouchPoints(shapes)
+
+        canvas.save()
+        viewState.matrix?.let { canvas.setMatrix(it) }
+        try {
+            shapes.forEach { shape ->
+                try {
+                    shape.renderWithDisplayList(renderContext)
+                } catch (e: Exception) {
+                    Log.e(TAG, "Error rendering shape to bitmap", e)
+                }
+            }
+        } finally {
+            canvas.restore()
+        }
+    }
+
+    /**
+     * Draw the visible tiles for a viewport, rendering any that are not cached
+     */
+    private fun compositeTiles(
+        canvas: Canvas,
+        region: Rect,
+        index: ShapeSpatialIndex,
+        viewState: ViewState
+    ) {
+        assertRenderThread("compositeTiles")
+        val zoomBucket = TileCache.zoomBucket(viewState.zoomLevel)
+        val offsetX = viewState.offsetX
+        val offsetY = viewState.offsetY
+        val tileSize = TileCache.TILE_SIZE
+
+        val firstTileX = (region.left - offsetX).floorDiv(tileSize)
+        val lastTileX = (region.right - 1 - offsetX).floorDiv(tileSize)
+        val firstTileY = (region.top - offsetY).floorDiv(tileSize)
+        val lastTileY = (region.bottom - 1 - offsetY).floorDiv(tileSize)
+
+        canvas.save()
+        canvas.clipRect(region)
+
+        var renderedTiles = 0
+        for (tileY in firstTileY..lastTileY) {
+            for (tileX in firstTileX..lastTileX) {
+                val key = TileCache.TileKey(tileX, tileY, zoomBucket, viewState.lodLevel)
+                var tile = tileCache.get(key)
+                var uncached = false
+                if (tile == null) {
+                    // Shapes may change on the UI thread while this tile renders
+                    val generation = tileCache.getGeneration()
+                    tile = renderTile(key, index)
+                    uncached = !tileCache.putIfCurrent(key, tile, generation)
+                    renderedTiles++
+                }
+                canvas.drawBitmap(
+                    tile,
+                    (tileX * tileSize + offsetX).toFloat(),
+                    (tileY * tileSize + offsetY).toFloat(),
+                    null
+                )
+                if (uncached) {
+                    tile.recycle()
+                }
+            }
+        }
+
+        canvas.restore()
+
+        Log.d(TAG, "Composited tiles x[$firstTileX..$lastTileX] y[$firstTileY..$lastTileY], rendered $renderedTiles new")
+    }
+
+    /**
+     * Render one tile from the shapes that overlap it
+     */
+    private fun renderTile(key: TileCache.TileKey, index: ShapeSpatialIndex): Bitmap {
+        assertRenderThread("renderTile")
+        val tileSize = TileCache.TILE_SIZE
+        val tile = createBitmap(tileSize, tileSize)
+        val tileCanvas = Canvas(tile)
+        tileCanvas.drawColor(Color.WHITE)
+
+        // Map canvas coordinates into this tile: scale by zoom, then shift by the tile origin
+        tileCanvas.translate(-key.tileX * tileSize.toFloat(), -key.tileY * tileSize.toFloat())
+        tileCanvas.scale(key.zoomLevel, key.zoomLevel)
+
+        val renderContext = getRendererHelper().getRenderContext()
+        renderContext.bitmap = tile
+        renderContext.canvas = tileCanvas
+        renderContext.resetPaint()
+        renderContext.setViewPoint(0, 0)
+        renderContext.lodLevel = key.lodLevel
+        renderContext.zoomLevel = key.zoomLevel
+        renderContext.strokeMaskCache = strokeMaskCache
+
+        val shapes = index.query(key.canvasBounds())
+        DrawingShape.prefetchTouchPoints(shapes)
+        shapes.forEach { shape ->
+            try {
+                shape.renderWithDisplayList(renderContext)
+            } catch (e: Exception) {
+                Log.e(TAG, "Error rendering shape into tile $key", e)
+            }
+        }
+
+        return tile
+    }
+
+    /**
+     * Padded canvas bounds of a shape, read on the calling thread
+     */
+    private fun computeCanvasDirtyBounds(shape: DrawingShape): RectF? {
+        spatialIndex?.getBounds(shape)?.let { return it }
+        if (shape.boundingRect == null) {
+            shape.updateShapeRect()
+        }
+        val rect = shape.boundingRect ?: return null
+        val padding = shape.strokeWidth / 2f
+        return RectF(rect.left - padding, rect.top - padding, rect.right + padding, rect.bottom + padding)
+    }
+
+    /**
+     * Screen rectangle covering canvas bounds, clamped to the bitmap
+     * @return Dirty rect, or null if the bounds are off screen
+     */
+    private fun toScreenDirtyRect(canvasBounds: RectF, viewState: ViewState, bitmap: Bitmap): Rect? {
+        val bounds = RectF(canvasBounds)
+        viewState.matrix?.mapRect(bounds)
+
+        val dirtyRect = Rect()
+        bounds.roundOut(dirtyRect)
+        dirtyRect.inset(-DIRTY_RECT_MARGIN, -DIRTY_RECT_MARGIN)
+        return if (dirtyRect.intersect(0, 0, bitmap.width, bitmap.height)) dirtyRect else null
+    }
+
+    /**
+     * Post the whole page as a settled viewport frame, which the policy promotes to a full GC
+     */
+    private fun requestIdleFullRefresh() {
+        val surfaceView = idleRefreshSurface ?: return
+        idleRefreshSurface = null
+        runOnRenderThread("idleFullRefresh") {
+            if (!refreshPolicy.isFullRefreshDue()) return@runOnRenderThread
+            val front = frontBitmap ?: return@runOnRenderThread
+            renderScheduler.requestFrame(surfaceView, front)
+            Log.d(TAG, "Requested full refresh after pen idle")
+        }
+    }
+
+    /**
+     * Apply the accumulated scroll delta to the page and request one frame
+     */
+    private fun renderPendingScroll(surfaceView: SurfaceView) {
+        val deltaX: Int
+        val deltaY: Int
+        val viewState: ViewState
+        synchronized(scrollLock) {
+            deltaX = pendingScrollX
+            deltaY = pendingScrollY
+            viewState = pendingScrollState ?: captureViewState()
+            pendingScrollX = 0
+            pendingScrollY = 0
+            pendingScrollState = null
+            scrollJobQueued = false
+        }
+        if (deltaX == 0 && deltaY == 0) return
+
+        val bitmap = frontBitmap ?: return
+        val width = bitmap.width
+        val height = bitmap.height
+
+        if (zoomPreviewActive || frontStale || kotlin.math.abs(deltaX) >= width || kotlin.math.abs(deltaY) >= height) {
+            // Nothing survives the shift, the page is still at the pre-pinch zoom, or it holds
+            // content from before a tile invalidation: composite the whole frame
+            renderRegion(Rect(0, 0, width, height), viewState)
+            frontStale = false
+        } else {
+            shiftFrontBitmap(deltaX, deltaY)
+
+            // Render only the strips uncovered by the shift
+            if (deltaX > 0) renderRegion(Rect(0, 0, deltaX, height), viewState)
+            if (deltaX < 0) renderRegion(Rect(width + deltaX, 0, width, height), viewState)
+            if (deltaY > 0) renderRegion(Rect(0, 0, width, deltaY), viewState)
+            if (deltaY < 0) renderRegion(Rect(0, height + deltaY, width, height), viewState)
+        }
+        frontMatrix = viewState.matrix
+        zoomPreviewActive = false
+        if (viewState.lodLevel > 0) {
+            provisionalFrame = true
+        }
+
+        frontBitmap?.let { renderScheduler.requestFrame(surfaceView, it) }
+    }
+
+    /**
+     * Move the front bitmap contents by the given delta by drawing it into the back bitmap and swapping
+     */
+    private fun shiftFrontBitmap(deltaX: Int, deltaY: Int) {
+        assertRenderThread("shiftFrontBitmap")
+        val source = frontBitmap ?: return
+        val canvas = obtainBackBuffer(source)
+        canvas.drawColor(Color.WHITE)
+        canvas.drawBitmap(source, deltaX.toFloat(), deltaY.toFloat(), null)
+        swapBuffers()
+    }
+
+    /**
+     * Composite tiles into a screen-space region of the front bitmap
+     */
+    private fun renderRegion(region: Rect, viewState: ViewState) {
+        val canvas = frontCanvas ?: return
+        val index = spatialIndex ?: return
+        compositeTiles(canvas, region, index, viewState)
+    }
 
     /**
      * Get RxManager for rendering operations
@@ -306,15 +915,4 @@ class OnyxRenderingManager {
             rxManager!!
         }
     }
-
-    /**
-     * Cleanup rendering resources
-     */
-    fun cleanup() {
-        currentBitmap?.recycle()
-        currentBitmap = null
-        currentCanvas = null
-
-        Log.d(TAG, "Cleaned up rendering resources")
-    }
-}
\ No newline at end of file
+}
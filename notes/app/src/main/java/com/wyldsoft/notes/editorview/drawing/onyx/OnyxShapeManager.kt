@@ -1,13 +1,15 @@
 package com.wyldsoft.notes.editorview.drawing.onyx
 
 import android.util.Log
-import android.graphics.PointF
-import com.onyx.android.sdk.data.note.TouchPoint
+import android.graphics.RectF
 import com.onyx.android.sdk.pen.data.TouchPointList
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
 import com.wyldsoft.notes.pen.PenProfile
 import com.wyldsoft.notes.pen.PenType
 import com.wyldsoft.notes.data.ShapeFactory
+import com.wyldsoft.notes.editorview.viewport.ShapeSpatialIndex
+import com.wyldsoft.notes.utils.RefreshUtils
+import com.wyldsoft.notes.utils.StrokeCaptureSimplifier
 
 /**
  * Manages shape creation, storage, and manipulation for the Onyx drawing system
@@ -23,18 +25,49 @@ class OnyxShapeManager(
 
     // Store all drawn shapes for re-rendering and erasing
     private val drawnShapes = mutableListOf<DrawingShape>()
+
+    // Spatial index over drawnShapes for viewport culling, erasing and partial refresh
+    private val spatialIndex = ShapeSpatialIndex()
     
+    // Reduces captured points before shapes are stored, indexed and rendered
+    private val strokeSimplifier = StrokeCaptureSimplifier()
+
     // Viewport controller for coordinate transforms
     private var viewportController: com.wyldsoft.notes.editorview.viewport.ViewportController? = null
 
+    init {
+        renderingManager.setSpatialIndex(spatialIndex)
+    }
+
     /**
      * Set the viewport controller for coordinate transformations
      * @param controller ViewportController instance
      */
     fun setViewportController(controller: com.wyldsoft.notes.editorview.viewport.ViewportController?) {
         viewportController = controller
+        controller?.setSpatialIndex(spatialIndex)
     }
 
+    /**
+     * Get the spatial index kept in sync with the drawn shapes
+     * @return Spatial index for bounds and path queries
+     */
+    fun getSpatialIndex(): ShapeSpatialIndex = spatialIndex
+
+    /**
+     * Configure capture-time stroke simplification
+     * @param config Tolerances and raw point retention
+     */
+    fun setSimplificationConfig(config: StrokeCaptureSimplifier.Config) {
+        strokeSimplifier.config = config
+        Log.d(TAG, "Stroke simplification config: $config")
+    }
+
+    /**
+     * Get point reduction statistics per pen type
+     */
+    fun getSimplificationStats(): Map<String, Any> = strokeSimplifier.getStats()
+
     /**
      * Create a new shape from touch points and current pen profile
      * Touch points are automatically adjusted for viewport transforms if controller is set
@@ -54,7 +87,11 @@ class OnyxShapeManager(
             adjustTouchPointsForViewport(touchPointList, controller)
         } ?: touchPointList
 
-        configureShape(shape, adjustedTouchPointList, penProfile, shapeType)
+        // Simplify in canvas space so the tolerance is independent of the zoom at capture time
+        val simplified = strokeSimplifier.simplify(adjustedTouchPointList, penProfile.penType, penProfile.strokeWidth)
+
+        configureShape(shape, simplified.points, penProfile, shapeType)
+        simplified.rawPoints?.let { shape.setRawTouchPointList(it) }
 
         return shape
     }
@@ -65,6 +102,8 @@ class OnyxShapeManager(
      */
     fun addShape(shape: DrawingShape) {
         drawnShapes.add(shape)
+        spatialIndex.insert(shape)
+        spatialIndex.getBounds(shape)?.let { renderingManager.invalidateTiles(it) }
         Log.d(TAG, "Added shape, total shapes: ${drawnShapes.size}")
     }
 
@@ -75,13 +114,39 @@ class OnyxShapeManager(
      */
     fun removeShapes(shapesToRemove: Collection<DrawingShape>): Int {
         val initialSize = drawnShapes.size
-        drawnShapes.removeAll(shapesToRemove.toSet())
+        val removeSet = shapesToRemove.toSet()
+        drawnShapes.removeAll(removeSet)
+        removeSet.forEach { shape ->
+            spatialIndex.getBounds(shape)?.let { renderingManager.invalidateTiles(it) }
+            spatialIndex.remove(shape)
+            shape.releaseRenderCaches()
+        }
         val removedCount = initialSize - drawnShapes.size
 
         Log.d(TAG, "Removed $removedCount shapes, remaining: ${drawnShapes.size}")
         return removedCount
     }
 
+    /**
+     * Replace a shape with its surviving fragments, keeping its position in drawing order
+     * @param original Shape being split
+     * @param fragments Pieces that take its place; may be empty
+     * @return True if the original was found
+     */
+    fun replaceShape(original: DrawingShape, fragments: List<DrawingShape>): Boolean {
+        val position = drawnShapes.indexOf(original)
+        if (position < 0) return false
+
+        spatialIndex.getBounds(original)?.let { renderingManager.invalidateTiles(it) }
+        drawnShapes.removeAt(position)
+        drawnShapes.addAll(position, fragments)
+        spatialIndex.replace(original, fragments)
+        original.releaseRenderCaches()
+
+        Log.d(TAG, "Replaced shape with ${fragments.size} fragments, total shapes: ${drawnShapes.size}")
+        return true
+    }
+
     /**
      * Get all currently drawn shapes
      * @return Read-only list of all shapes
@@ -93,7 +158,10 @@ class OnyxShapeManager(
      */
     fun clearShapes() {
         val clearedCount = drawnShapes.size
+        drawnShapes.forEach { it.releaseRenderCaches() }
         drawnShapes.clear()
+        spatialIndex.clear()
+        renderingManager.invalidateAllTiles()
         Log.d(TAG, "Cleared $clearedCount shapes")
     }
 
@@ -102,11 +170,61 @@ class OnyxShapeManager(
      * @param newShapes The shapes to replace current collection with
      */
     fun replaceAllShapes(newShapes: List<DrawingShape>) {
+        drawnShapes.forEach { it.releaseRenderCaches() }
         drawnShapes.clear()
         drawnShapes.addAll(newShapes)
+        spatialIndex.rebuild(newShapes)
+        renderingManager.invalidateAllTiles()
         Log.d(TAG, "Replaced all shapes with ${newShapes.size} shapes")
     }
 
+    /**
+     * Merge shapes loaded in the background into the current collection
+     * The result is ordered by creation time, so strokes drawn while loading stay on top.
+     * Shapes whose id is already held, e.g. viewport shapes loaded earlier, are skipped.
+     * @param loadedShapes Shapes to add, typically one page of a note load
+     * @return Number of shapes actually added
+     */
+    fun mergeLoadedShapes(loadedShapes: List<DrawingShape>): Int {
+        if (loadedShapes.isEmpty()) return 0
+
+        val heldIds = drawnShapes.mapTo(HashSet(drawnShapes.size + loadedShapes.size)) { it.id }
+        val newShapes = loadedShapes.filter { heldIds.add(it.id) }
+        if (newShapes.isEmpty()) return 0
+
+        val merged = mergeByCreatedAt(drawnShapes, newShapes.sortedBy { it.createdAt })
+        drawnShapes.clear()
+        drawnShapes.addAll(merged)
+        spatialIndex.insertAll(newShapes, merged)
+
+        // Tiles were rendered without these shapes; only the ones they touch need redrawing
+        val loadedSet = newShapes.toHashSet()
+        renderingManager.invalidateTilesWhere { tileBounds ->
+            spatialIndex.query(tileBounds).any { it in loadedSet }
+        }
+        Log.d(TAG, "Merged ${newShapes.size} of ${loadedShapes.size} loaded shapes, total shapes: ${drawnShapes.size}")
+        return newShapes.size
+    }
+
+    /**
+     * Merge two lists that are each ordered by creation time; held shapes win ties
+     */
+    private fun mergeByCreatedAt(held: List<DrawingShape>, added: List<DrawingShape>): List<DrawingShape> {
+        val merged = ArrayList<DrawingShape>(held.size + added.size)
+        var i = 0
+        var j = 0
+        while (i < held.size && j < added.size) {
+            if (added[j].createdAt < held[i].createdAt) {
+                merged.add(added[j++])
+            } else {
+                merged.add(held[i++])
+            }
+        }
+        while (i < held.size) merged.add(held[i++])
+        while (j < added.size) merged.add(added[j++])
+        return merged
+    }
+
     /**
      * Get the number of currently drawn shapes
      * @return Count of shapes
@@ -133,10 +251,12 @@ class OnyxShapeManager(
      * @param surfaceView Optional surface view for proper bitmap sizing
      */
     fun recreateDrawingFromShapes(surfaceView: android.view.SurfaceView? = null) {
+        // Rendering happens on the render thread, so hand it a snapshot
+        val shapes = drawnShapes.toList()
         if (surfaceView != null) {
-            renderingManager.recreateBitmapFromShapes(drawnShapes, surfaceView)
+            renderingManager.recreateBitmapFromShapes(shapes, surfaceView)
         } else {
-            renderingManager.recreateBitmapFromShapes(drawnShapes)
+            renderingManager.recreateBitmapFromShapes(shapes)
         }
         Log.d(TAG, "Recreated drawing from ${drawnShapes.size} shapes")
     }
@@ -193,11 +313,25 @@ class OnyxShapeManager(
         touchPoints: TouchPointList,
         radius: Float = 20f
     ): List<DrawingShape> {
-        return drawnShapes.filter { shape ->
-            shape.hitTestPoints(touchPoints, radius)
-        }
+        return RefreshUtils.findShapesInPath(touchPoints, spatialIndex, radius)
     }
 
+    /**
+     * Get shapes whose bounds come near a path, without a precise hit test
+     * @param touchPoints Path in canvas coordinates
+     * @param radius Distance around each point
+     * @return Candidate shapes in drawing order
+     */
+    fun getShapesNearPath(touchPoints: TouchPointList, radius: Float): List<DrawingShape> =
+        spatialIndex.queryPath(touchPoints.points, radius)
+
+    /**
+     * Get shapes whose bounds intersect a canvas rectangle
+     * @param bounds Rectangle in canvas coordinates
+     * @return Intersecting shapes in drawing order
+     */
+    fun getShapesInBounds(bounds: RectF): List<DrawingShape> = spatialIndex.query(bounds)
+
     /**
      * Get a snapshot of available shapes for erasing operations
      * This creates a copy to avoid concurrent modification during erasing
@@ -207,40 +341,22 @@ class OnyxShapeManager(
 
     /**
      * Adjust touch points to account for viewport transforms (zoom and scroll)
-     * Converts screen coordinates to canvas coordinates at 100% zoom
+     * Converts screen coordinates to canvas coordinates at 100% zoom, in place:
+     * the list from the pen SDK is owned by the new shape, so no copy is made
      * @param touchPointList Original touch points from input
      * @param viewportController Controller with current viewport state
-     * @return Adjusted touch point list in canvas coordinates
+     * @return The same touch point list, now in canvas coordinates
      */
     private fun adjustTouchPointsForViewport(
         touchPointList: TouchPointList,
         viewportController: com.wyldsoft.notes.editorview.viewport.ViewportController
     ): TouchPointList {
-        val originalPoints = touchPointList.points
-        if (originalPoints.isNullOrEmpty()) {
+        val points = touchPointList.points
+        if (points.isNullOrEmpty()) {
             return touchPointList
         }
 
-        val adjustedPoints = originalPoints.map { touchPoint ->
-            // Convert screen coordinates to canvas coordinates
-            val screenPoint = PointF(touchPoint.x, touchPoint.y)
-            val canvasPoint = viewportController.screenToCanvas(screenPoint)
-            
-            TouchPoint().apply {
-                x = canvasPoint.x
-                y = canvasPoint.y
-                pressure = touchPoint.pressure
-                timestamp = touchPoint.timestamp
-                size = touchPoint.size
-            }
-        }
-
-        // Create new TouchPointList with adjusted points
-        val adjustedTouchPointList = TouchPointList()
-        adjustedPoints.forEach { point ->
-            adjustedTouchPointList.add(point)
-        }
-
-        return adjustedTouchPointList
+        viewportController.screenToCanvas(points)
+        return touchPointList
     }
 }
\ No newline at end of file
@@ -36,17 +36,17 @@ object OnyxTouchCallbackFactory {
 
             override fun onBeginRawDrawing(b: Boolean, touchPoint: TouchPoint?) {
                 if (eraserManager.isEraserModeEnabled()) {
-                    handleBeginErasing(touchPoint, eraserManager, activity)
+                    handleBeginErasing(touchPoint, eraserManager, renderingManager, activity)
                 } else {
-                    handleBeginDrawing(touchPoint, activity)
+                    handleBeginDrawing(touchPoint, renderingManager, activity)
                 }
             }
 
             override fun onEndRawDrawing(b: Boolean, touchPoint: TouchPoint?) {
                 if (eraserManager.isEraserModeEnabled()) {
-                    handleEndErasing(touchPoint, eraserManager, activity)
+                    handleEndErasing(touchPoint, eraserManager, renderingManager, activity)
                 } else {
-                    handleEndDrawing(touchPoint, shapeManager, databaseManager, navigationHandler, renderingManager, activity)
+                    handleEndDrawing(touchPoint, renderingManager, activity)
                 }
             }
 
@@ -62,18 +62,18 @@ object OnyxTouchCallbackFactory {
                 if (eraserManager.isEraserModeEnabled()) {
                     handleEraserPathReceived(touchPointList, eraserManager)
                 } else {
-                    handleDrawingPathReceived(touchPointList, shapeManager, renderingManager, activity)
+                    handleDrawingPathReceived(touchPointList, shapeManager, databaseManager, navigationHandler, renderingManager, activity)
                 }
             }
 
             override fun onBeginRawErasing(b: Boolean, touchPoint: TouchPoint?) {
                 Log.d(TAG, "onBeginRawErasing called")
-                handleBeginErasing(touchPoint, eraserManager, activity)
+                handleBeginErasing(touchPoint, eraserManager, renderingManager, activity)
             }
 
             override fun onEndRawErasing(b: Boolean, touchPoint: TouchPoint?) {
                 Log.d(TAG, "onEndRawErasing called")
-                handleEndErasing(touchPoint, eraserManager, activity)
+                handleEndErasing(touchPoint, eraserManager, renderingManager, activity)
             }
 
             override fun onRawErasingTouchPointMoveReceived(touchPoint: TouchPoint?) {
@@ -93,9 +93,14 @@ object OnyxTouchCallbackFactory {
     /**
      * Handle beginning of drawing operation
      */
-    private fun handleBeginDrawing(touchPoint: TouchPoint?, activity: OnyxDrawingActivity) {
+    private fun handleBeginDrawing(
+        touchPoint: TouchPoint?,
+        renderingManager: OnyxRenderingManager,
+        activity: OnyxDrawingActivity
+    ) {
         Log.d(TAG, "Beginning drawing operation")
         activity.disableFingerTouch()
+        renderingManager.onPenDown()
         EditorState.notifyDrawingStarted()
     }
 
@@ -104,31 +109,15 @@ object OnyxTouchCallbackFactory {
      */
     private fun handleEndDrawing(
         touchPoint: TouchPoint?,
-        shapeManager: OnyxShapeManager,
-        databaseManager: OnyxDatabaseManager,
-        navigationHandler: OnyxNavigationHandler,
         renderingManager: OnyxRenderingManager,
         activity: OnyxDrawingActivity
     ) {
         Log.d(TAG, "Ending drawing operation")
 
         activity.enableFingerTouch()
+        renderingManager.onPenUp(activity.surfaceView)
 
-        // Save the new shape to database if we have a current note and shapes exist
-        if (navigationHandler.hasCurrentNote() &&
-            shapeManager.hasShapes() &&
-            !databaseManager.isCurrentlyLoading()) {
-
-            val allShapes = shapeManager.getAllShapes()
-            if (allShapes.isNotEmpty()) {
-                // Save the most recently added shape
-                val latestShape = allShapes.last()
-                databaseManager.saveShapeImmediately(latestShape, activity.currentPenProfile)
-            }
-        }
-
-        // Force screen refresh
-        activity.forceScreenRefresh()
+        // The stroke was already committed to screen and queued for saving when its points arrived
         EditorState.notifyDrawingEnded()
     }
 
@@ -138,6 +127,8 @@ object OnyxTouchCallbackFactory {
     private fun handleDrawingPathReceived(
         touchPointList: TouchPointList?,
         shapeManager: OnyxShapeManager,
+        databaseManager: OnyxDatabaseManager,
+        navigationHandler: OnyxNavigationHandler,
         renderingManager: OnyxRenderingManager,
         activity: OnyxDrawingActivity
     ) {
@@ -150,12 +141,12 @@ object OnyxTouchCallbackFactory {
             // Add shape to manager
             shapeManager.addShape(shape)
 
-            // Render shape to bitmap
-            renderingManager.renderShapeToBitmap(shape)
+            // Rasterize the shape on the render thread and push only its dirty rect to screen
+            renderingManager.commitShapeToScreen(activity.surfaceView, shape)
 
-            // Render to screen
-            activity.surfaceView?.let { sv ->
-                renderingManager.renderToScreen(sv, renderingManager.getCurrentBitmap())
+            // Save the committed shape itself; no need to look it up in the shape list
+            if (navigationHandler.hasCurrentNote() && !databaseManager.isCurrentlyLoading()) {
+                databaseManager.saveShapeImmediately(shape, activity.currentPenProfile)
             }
         }
     }
@@ -163,9 +154,15 @@ object OnyxTouchCallbackFactory {
     /**
      * Handle beginning of erasing operation
      */
-    private fun handleBeginErasing(touchPoint: TouchPoint?, eraserManager: OnyxEraserManager, activity: OnyxDrawingActivity) {
+    private fun handleBeginErasing(
+        touchPoint: TouchPoint?,
+        eraserManager: OnyxEraserManager,
+        renderingManager: OnyxRenderingManager,
+        activity: OnyxDrawingActivity
+    ) {
         Log.d(TAG, "Beginning erasing operation")
         activity.disableFingerTouch()
+        renderingManager.onPenDown()
         eraserManager.beginErasing(touchPoint)
     }
 
@@ -175,6 +172,7 @@ object OnyxTouchCallbackFactory {
     private fun handleEndErasing(
         touchPoint: TouchPoint?,
         eraserManager: OnyxEraserManager,
+        renderingManager: OnyxRenderingManager,
         activity: OnyxDrawingActivity
     ) {
         Log.d(TAG, "Ending erasing operation")
@@ -183,6 +181,7 @@ object OnyxTouchCallbackFactory {
 
         // End erasing - this handles database updates and refresh internally
         eraserManager.endErasing(touchPoint, activity.surfaceView)
+        renderingManager.onPenUp(activity.surfaceView)
     }
 
     /**
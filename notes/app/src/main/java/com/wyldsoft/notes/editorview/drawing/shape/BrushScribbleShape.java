@@ -1,7 +1,5 @@
 package com.wyldsoft.notes.editorview.drawing.shape;
 
-import android.util.Log;
-
 import com.onyx.android.sdk.api.device.epd.EpdController;
 import com.onyx.android.sdk.data.note.TouchPoint;
 import com.onyx.android.sdk.pen.NeoFountainPen;
@@ -15,11 +13,10 @@ public class BrushScribbleShape extends DrawingShape {
 
     @Override
     public void render(RendererHelper.RenderContext renderContext) {
-        List<TouchPoint> points = touchPointList.getPoints();
+        List<TouchPoint> points = getRenderPoints(renderContext);
         applyStrokeStyle(renderContext);
         List<TouchPoint> brushPoints = NeoFountainPen.computeStrokePoints(points,
                 NumberUtils.FLOAT_ONE, strokeWidth, EpdController.getMaxTouchPressure());
         PenUtils.drawStrokeByPointSize(renderContext.canvas, renderContext.paint, brushPoints, isTransparent());
-        Log.d("Shape", "brushPoints" + brushPoints.size());
     }
 }
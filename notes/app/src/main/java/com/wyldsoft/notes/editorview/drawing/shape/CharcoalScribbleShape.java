@@ -1,8 +1,15 @@
 package com.wyldsoft.notes.editorview.drawing.shape;
 
-import android.util.Log;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
 
 import com.wyldsoft.notes.data.ShapeFactory;
+import com.wyldsoft.notes.editorview.rendering.StrokeMaskCache;
+import com.wyldsoft.notes.editorview.rendering.TileCache;
 import com.wyldsoft.notes.render.RendererHelper;
 import com.wyldsoft.notes.util.RendererUtils;
 import com.onyx.android.sdk.data.PenConstant;
@@ -14,34 +21,112 @@ import com.onyx.android.sdk.pen.PenRenderArgs;
 import java.util.List;
 
 public class CharcoalScribbleShape extends DrawingShape {
+    // Pen arguments reused across renders; shapes are only rendered on the render thread.
+    // Normal and big strokes keep separate args so each sets exactly the fields it needs.
+    private static final ShapeCreateArgs CREATE_ARGS = new ShapeCreateArgs();
+    private static final PenRenderArgs NORMAL_ARGS = new PenRenderArgs();
+    private static final PenRenderArgs BIG_ARGS = new PenRenderArgs();
+
+    // Masks are rendered at their own origin, independent of the context's view point
+    private static final Matrix MASK_MATRIX = new Matrix();
+    private static final Paint MASK_PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    @Override
+    protected boolean supportsDisplayList() {
+        // The charcoal pen renders through the context's view point matrix
+        return false;
+    }
 
     @Override
     public void render(RendererHelper.RenderContext renderContext) {
-        Log.d("Shape", "render");
-        List<TouchPoint> points = touchPointList.getPoints();
+        StrokeMaskCache maskCache = renderContext.strokeMaskCache;
+        if (maskCache != null && renderFromMask(renderContext, maskCache)) {
+            return;
+        }
+        drawStroke(renderContext, renderContext.canvas, strokeColor, isTransparent(),
+                RendererUtils.getPointMatrix(renderContext));
+    }
+
+    /**
+     * Composite the stroke's cached alpha mask, rasterizing it first on a cache miss
+     * @return False if the stroke cannot be cached and must be drawn directly
+     */
+    private boolean renderFromMask(RendererHelper.RenderContext renderContext, StrokeMaskCache maskCache) {
+        if (originRect == null) {
+            updateShapeRect();
+        }
+        if (originRect == null) {
+            return false;
+        }
+
+        int zoomBucket = TileCache.Companion.zoomBucket(renderContext.zoomLevel);
+        float zoom = zoomBucket / 100f;
+        float padding = getRenderStrokeWidth() + 1f;
+        float left = originRect.left - padding;
+        float top = originRect.top - padding;
+        int width = (int) Math.ceil((originRect.width() + 2 * padding) * zoom);
+        int height = (int) Math.ceil((originRect.height() + 2 * padding) * zoom);
+        if (width <= 0 || height <= 0 || !maskCache.accepts(width, height)) {
+            return false;
+        }
+
+        StrokeMaskCache.MaskKey key = new StrokeMaskCache.MaskKey(
+                getId(), getRenderVersion(), zoomBucket, clampLodLevel(renderContext.lodLevel));
+        Bitmap mask = maskCache.get(key);
+        if (mask == null) {
+            mask = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            Canvas maskCanvas = new Canvas(mask);
+            maskCanvas.scale(zoom, zoom);
+            maskCanvas.translate(-left, -top);
+            drawStroke(renderContext, maskCanvas, Color.BLACK, false, MASK_MATRIX);
+            maskCache.put(key, mask);
+        }
+
+        // Alpha bitmaps are drawn in the paint's color
+        MASK_PAINT.setColor(strokeColor);
+        MASK_PAINT.setXfermode(isTransparent() ? renderContext.clearXfermode : null);
+        Canvas canvas = renderContext.canvas;
+        canvas.save();
+        canvas.translate(left, top);
+        canvas.scale(1f / zoom, 1f / zoom);
+        canvas.drawBitmap(mask, 0f, 0f, MASK_PAINT);
+        canvas.restore();
+        return true;
+    }
+
+    private void drawStroke(RendererHelper.RenderContext renderContext, Canvas canvas, int color,
+                            boolean erase, Matrix matrix) {
+        List<TouchPoint> points = getRenderPoints(renderContext);
         applyStrokeStyle(renderContext);
+        Paint paint = renderContext.paint;
+        paint.setColor(color);
+        if (!erase) {
+            paint.setXfermode(null);
+        }
 
-        Log.d("Shape", "render 2");
-        PenRenderArgs renderArgs = new PenRenderArgs()
-                .setCreateArgs(new ShapeCreateArgs())
-                .setCanvas(renderContext.canvas)
-                .setPenType(ShapeFactory.getCharcoalPenType(texture))
-                .setColor(strokeColor)
-                .setErase(isTransparent())
-                .setPaint(renderContext.paint)
-                .setScreenMatrix(RendererUtils.getPointMatrix(renderContext));
-
-        Log.d("Shape", "charcoal points" + points.size());
         if (strokeWidth <= PenConstant.CHARCOAL_SHAPE_DRAW_NORMAL_SCALE_WIDTH_THRESHOLD) {
-            renderArgs.setStrokeWidth(strokeWidth)
+            NORMAL_ARGS.setCreateArgs(CREATE_ARGS)
+                    .setCanvas(canvas)
+                    .setPenType(ShapeFactory.getCharcoalPenType(texture))
+                    .setColor(color)
+                    .setErase(erase)
+                    .setPaint(paint)
+                    .setScreenMatrix(matrix)
+                    .setStrokeWidth(strokeWidth)
                     .setPoints(points);
-            NeoCharcoalPenV2.drawNormalStroke(renderArgs);
+            NeoCharcoalPenV2.drawNormalStroke(NORMAL_ARGS);
         } else {
-            renderArgs.setStrokeWidth(strokeWidth)
+            BIG_ARGS.setCreateArgs(CREATE_ARGS)
+                    .setCanvas(canvas)
+                    .setPenType(ShapeFactory.getCharcoalPenType(texture))
+                    .setColor(color)
+                    .setErase(erase)
+                    .setPaint(paint)
+                    .setScreenMatrix(matrix)
+                    .setStrokeWidth(strokeWidth)
                     .setPoints(points)
-                    .setRenderMatrix(RendererUtils.getPointMatrix(renderContext));
-            NeoCharcoalPenV2.drawBigStroke(renderArgs);
+                    .setRenderMatrix(matrix);
+            NeoCharcoalPenV2.drawBigStroke(BIG_ARGS);
         }
-
     }
 }
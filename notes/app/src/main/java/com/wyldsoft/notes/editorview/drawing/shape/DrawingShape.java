@@ -1,39 +1,150 @@
 package com.wyldsoft.notes.editorview.drawing.shape;
 
-import android.graphics.Matrix;
+import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
+import android.graphics.Path;
+import android.graphics.Picture;
 import android.graphics.RectF;
 
+import com.aventrix.jnanoid.jnanoid.NanoIdUtils;
 import com.wyldsoft.notes.render.RendererHelper;
 import com.onyx.android.sdk.data.note.TouchPoint;
 import com.onyx.android.sdk.pen.PenUtils;
 import com.onyx.android.sdk.pen.data.TouchPointList;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DrawingShape {
+    // Simplification tolerances in canvas units for LOD levels 1..n; level 0 is full resolution
+    public static final float[] LOD_TOLERANCES = {0.5f, 1.0f, 2.0f};
+    public static final int LOD_LEVEL_COUNT = LOD_TOLERANCES.length + 1;
+
+    // Stable identity shared with the persisted row, assigned on first use
+    private String id;
+
     public int shapeType;
     public int texture;
     protected int strokeColor;
     protected float strokeWidth;
     protected boolean transparent;
 
-    public TouchPointList touchPointList;
+    // Points as primitive arrays; TouchPoint objects are only built for APIs that need them
+    private StrokeData strokeData;
+
+    // Loads the points of shapes read from the database as headers only; null once loaded
+    private volatile TouchPointSource touchPointSource;
+
+    // Full-rate capture points kept for handwriting recognition when capture simplification is on
+    private StrokeData rawStrokeData;
 
     protected RectF boundingRect;
     protected RectF originRect;
 
+    // Creation time, kept across persistence so drawing order survives reloads
+    private long createdAt;
+
+    // Interned pen profile row this shape was drawn with; 0 until the profile is interned
+    private volatile long penProfileId;
+
+    // Shape whose pen profile a split fragment inherits, resolved once that shape's id is known
+    private volatile DrawingShape penProfileOrigin;
+
+    // Segment hierarchy for hit testing, built on first use
+    private StrokeSegmentBvh segmentBvh;
+
+    // Indices of the stroke points kept at each simplified LOD level, built on first render at
+    // that level. Level 0 renders every point and has no entry.
+    private int[][] lodIndices;
+
+    // Stroke paths per LOD level, built on first render at that level
+    private Path[] strokePaths;
+
+    // Recorded render output per LOD level, replayed instead of re-running render()
+    private Picture[] displayLists;
+    private RectF displayListBounds;
+
+    // Set while paths or display lists are accounted in RenderCacheBudget, which may drop them
+    private volatile boolean renderCacheTracked;
+
+    // Incremented whenever render() output changes, so externally cached renders can detect staleness
+    private int renderVersion;
+
     public DrawingShape() {
     }
 
     public DrawingShape(TouchPointList touchPointList) {
-        this.touchPointList = touchPointList;
+        this.strokeData = touchPointList != null ? StrokeData.fromTouchPointList(touchPointList) : null;
+    }
+
+    public String getId() {
+        if (id == null) {
+            id = NanoIdUtils.randomNanoId();
+        }
+        return id;
+    }
+
+    public DrawingShape setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public long getCreatedAt() {
+        if (createdAt == 0) {
+            createdAt = System.currentTimeMillis();
+        }
+        return createdAt;
+    }
+
+    public DrawingShape setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    /**
+     * Interned pen profile id, inherited from the shape this one was split from if needed
+     * @return Profile row id, or 0 if it has not been interned yet
+     */
+    public long getPenProfileId() {
+        long id = penProfileId;
+        DrawingShape origin = penProfileOrigin;
+        if (id == 0 && origin != null) {
+            id = origin.getPenProfileId();
+            if (id != 0) {
+                penProfileId = id;
+                penProfileOrigin = null;
+            }
+        }
+        return id;
+    }
+
+    public DrawingShape setPenProfileId(long penProfileId) {
+        this.penProfileId = penProfileId;
+        this.penProfileOrigin = null;
+        return this;
+    }
+
+    /**
+     * Take the pen profile of another shape, e.g. the stroke a fragment was cut from
+     * The origin's id may still be pending in the write queue, so it is resolved lazily
+     */
+    public DrawingShape inheritPenProfile(DrawingShape origin) {
+        long id = origin.getPenProfileId();
+        if (id != 0) {
+            setPenProfileId(id);
+        } else {
+            penProfileOrigin = origin;
+        }
+        return this;
     }
 
     public void setTransparent(boolean transparent) {
         this.transparent = transparent;
+        invalidateDisplayLists();
     }
 
     public boolean isTransparent() {
@@ -42,26 +153,187 @@ public class DrawingShape {
 
     public DrawingShape setShapeType(int shapeType) {
         this.shapeType = shapeType;
+        invalidateDisplayLists();
         return this;
     }
 
     public DrawingShape setTexture(int texture) {
         this.texture = texture;
+        invalidateDisplayLists();
         return this;
     }
 
     public DrawingShape setStrokeColor(int strokeColor) {
         this.strokeColor = strokeColor;
+        invalidateDisplayLists();
         return this;
     }
 
     public DrawingShape setStrokeWidth(float strokeWidth) {
         this.strokeWidth = strokeWidth;
+        invalidateDisplayLists();
         return this;
     }
 
+    /**
+     * Get the stroke points, loading them first if the shape was read without them
+     * @return Points, or empty stroke data if a pending load failed; the load is retried next call
+     */
+    public StrokeData getStrokeData() {
+        StrokeData data = strokeData;
+        if (data != null) {
+            return data;
+        }
+        if (touchPointSource == null) {
+            // Re-read after the volatile read so a load on another thread is visible
+            return strokeData;
+        }
+        return loadTouchPoints() ? strokeData : StrokeData.empty();
+    }
+
+    /**
+     * Get the stroke points as a TouchPointList for Onyx SDK and persistence APIs
+     * Builds new TouchPoint objects on every call; prefer getStrokeData() where possible
+     */
+    public TouchPointList getTouchPointList() {
+        StrokeData data = getStrokeData();
+        return data != null ? data.toTouchPointList() : null;
+    }
+
+    /**
+     * Whether the points are in memory, i.e. using them will not hit the database
+     */
+    public boolean hasTouchPoints() {
+        return strokeData != null;
+    }
+
+    /**
+     * Defer loading the points until the shape is first rendered or hit-tested
+     * @param source Loads the points on demand
+     * @param storedBounds Persisted bounds, used for culling until the points are loaded
+     */
+    public DrawingShape setTouchPointSource(TouchPointSource source, RectF storedBounds) {
+        setTouchPointList(null);
+        this.touchPointSource = source;
+        this.boundingRect = storedBounds;
+        return this;
+    }
+
+    /**
+     * Whether the points still have to be read from the shape's source
+     */
+    public boolean isTouchPointLoadPending() {
+        return touchPointSource != null;
+    }
+
+    /**
+     * Load the points of every pending shape in a collection with one batch read per source
+     * Call before rendering or hit-testing a set of shapes so they do not load one row each.
+     * Shapes the batch did not return stay pending and fall back to their own load.
+     * @return Number of shapes whose points were loaded
+     */
+    public static int prefetchTouchPoints(Collection<? extends DrawingShape> shapes) {
+        Map<TouchPointSource, List<DrawingShape>> pending = new IdentityHashMap<>();
+        for (DrawingShape shape : shapes) {
+            TouchPointSource source = shape.touchPointSource;
+            if (source == null) {
+                continue;
+            }
+            List<DrawingShape> group = pending.get(source);
+            if (group == null) {
+                group = new ArrayList<>();
+                pending.put(source, group);
+            }
+            group.add(shape);
+        }
+
+        int loaded = 0;
+        for (Map.Entry<TouchPointSource, List<DrawingShape>> entry : pending.entrySet()) {
+            List<DrawingShape> group = entry.getValue();
+            List<String> ids = new ArrayList<>(group.size());
+            for (DrawingShape shape : group) {
+                ids.add(shape.getId());
+            }
+            Map<String, TouchPointList> points = entry.getKey().loadTouchPoints(ids);
+            for (DrawingShape shape : group) {
+                TouchPointList shapePoints = points.get(shape.getId());
+                if (shapePoints != null && shape.applyLoadedTouchPoints(entry.getKey(), shapePoints)) {
+                    loaded++;
+                }
+            }
+        }
+        return loaded;
+    }
+
+    private synchronized boolean loadTouchPoints() {
+        TouchPointSource source = touchPointSource;
+        if (source == null) {
+            return strokeData != null;
+        }
+        TouchPointList points = source.loadTouchPoints(getId());
+        if (points == null) {
+            return false;
+        }
+        return applyLoadedTouchPoints(source, points);
+    }
+
+    /**
+     * Install points read from the given source, unless the shape was loaded or changed meanwhile
+     */
+    private synchronized boolean applyLoadedTouchPoints(TouchPointSource source, TouchPointList points) {
+        if (touchPointSource != source) {
+            return false;
+        }
+        // Keep the stored bounds until updateShapeRect() replaces them from the points
+        strokeData = StrokeData.fromTouchPointList(points);
+        touchPointSource = null;
+        // Drop anything derived while the points were missing
+        originRect = null;
+        segmentBvh = null;
+        lodIndices = null;
+        invalidateDisplayLists();
+        return true;
+    }
+
+    /**
+     * Make sure the points are in memory before building a cache from them
+     * @return False if there are no points to build from; nothing derived may be cached then
+     */
+    private boolean ensureTouchPoints() {
+        return strokeData != null || loadTouchPoints();
+    }
+
     public DrawingShape setTouchPointList(TouchPointList touchPointList) {
-        this.touchPointList = touchPointList;
+        this.strokeData = touchPointList != null ? StrokeData.fromTouchPointList(touchPointList) : null;
+        this.touchPointSource = null;
+        // Bounds and segment hierarchy are recomputed lazily from the new points
+        this.originRect = null;
+        this.boundingRect = null;
+        this.segmentBvh = null;
+        this.lodIndices = null;
+        invalidateDisplayLists();
+        // Raw points describe the previous geometry
+        this.rawStrokeData = null;
+        return this;
+    }
+
+    /**
+     * Get the unsimplified capture points, if they were retained
+     * @return Raw points, or the stored points when no raw copy was kept
+     */
+    public TouchPointList getRawTouchPointList() {
+        return rawStrokeData != null ? rawStrokeData.toTouchPointList() : getTouchPointList();
+    }
+
+    /**
+     * @return True if unsimplified capture points were retained for this shape
+     */
+    public boolean hasRawTouchPoints() {
+        return rawStrokeData != null;
+    }
+
+    public DrawingShape setRawTouchPointList(TouchPointList rawTouchPointList) {
+        this.rawStrokeData = rawTouchPointList != null ? StrokeData.fromTouchPointList(rawTouchPointList) : null;
         return this;
     }
 
@@ -90,20 +362,14 @@ public class DrawingShape {
     }
 
     public void updateShapeRect() {
-        // Reset originRect to ensure fresh calculation
-        originRect = null;
-        
-        List<TouchPoint> list = touchPointList.getPoints();
-        for(TouchPoint touchPoint: list) {
-            if (touchPoint == null) {
-                continue;
-            }
-            if (originRect == null) {
-                originRect = new RectF(touchPoint.x, touchPoint.y, touchPoint.x, touchPoint.y);
-            } else {
-                originRect.union(touchPoint.x, touchPoint.y);
-            }
+        // Stored bounds stay in place while the points cannot be loaded
+        if (strokeData == null && !loadTouchPoints()) {
+            return;
         }
+
+        // Recompute originRect from the points
+        RectF bounds = new RectF();
+        originRect = strokeData.computeBounds(bounds) ? bounds : null;
         
         // Only create boundingRect if originRect was successfully created
         if (originRect != null) {
@@ -116,6 +382,144 @@ public class DrawingShape {
     public void render(final RendererHelper.RenderContext renderContext) {
     }
 
+    /**
+     * Render by replaying the recorded display list for the context's level of detail
+     * The first call at each level records render() into a Picture in canvas coordinates, so
+     * later redraws at any zoom skip the path building and pen algorithms. Falls back to
+     * render() when display lists are disabled on the context or unsupported by the shape.
+     */
+    public void renderWithDisplayList(RendererHelper.RenderContext renderContext) {
+        if (!renderContext.displayListsEnabled || !supportsDisplayList()) {
+            render(renderContext);
+            return;
+        }
+        if (!ensureTouchPoints()) {
+            // Nothing to draw until the points load; record nothing so the next render retries
+            return;
+        }
+        int level = clampLodLevel(renderContext.lodLevel);
+        Picture[] lists = displayLists;
+        if (lists == null) {
+            lists = new Picture[LOD_LEVEL_COUNT];
+            displayLists = lists;
+        }
+        Picture picture = lists[level];
+        if (picture == null) {
+            picture = recordDisplayList(renderContext);
+            if (picture == null) {
+                render(renderContext);
+                return;
+            }
+            lists[level] = picture;
+            trackRenderCache(estimateRenderCacheBytes());
+        } else {
+            touchRenderCache();
+        }
+        // Read locals: the budget may drop this shape's caches while another one records
+        RectF bounds = displayListBounds;
+        if (bounds == null) {
+            render(renderContext);
+            return;
+        }
+        Canvas canvas = renderContext.canvas;
+        canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.drawPicture(picture);
+        canvas.restore();
+    }
+
+    /**
+     * Whether render() output depends only on the shape, so it can be recorded once and replayed
+     * Shapes whose output depends on the target canvas or view transform must return false
+     */
+    protected boolean supportsDisplayList() {
+        return true;
+    }
+
+    /**
+     * Drop recorded display lists after anything affecting render() output changes
+     */
+    public void invalidateDisplayLists() {
+        releaseRenderCaches();
+        renderVersion++;
+    }
+
+    /**
+     * Drop cached paths and display lists, e.g. when the shape is removed from the page
+     * They are rebuilt on the next render
+     */
+    public void releaseRenderCaches() {
+        dropRenderCaches();
+        if (renderCacheTracked) {
+            renderCacheTracked = false;
+            RenderCacheBudget.getInstance().remove(this);
+        }
+    }
+
+    /**
+     * Called by RenderCacheBudget on eviction, after it stopped accounting for this shape
+     */
+    void dropRenderCaches() {
+        displayLists = null;
+        displayListBounds = null;
+        strokePaths = null;
+        lodIndices = null;
+        renderCacheTracked = false;
+    }
+
+    private void trackRenderCache(long bytes) {
+        renderCacheTracked = true;
+        RenderCacheBudget.getInstance().add(this, bytes);
+    }
+
+    private void touchRenderCache() {
+        if (renderCacheTracked) {
+            RenderCacheBudget.getInstance().touch(this);
+        }
+    }
+
+    /**
+     * Rough native size of one cached path or display list level: a few floats per point
+     */
+    private long estimateRenderCacheBytes() {
+        StrokeData data = strokeData;
+        return 64L + 32L * (data != null ? data.size() : 0);
+    }
+
+    public int getRenderVersion() {
+        return renderVersion;
+    }
+
+    private Picture recordDisplayList(RendererHelper.RenderContext renderContext) {
+        if (displayListBounds == null) {
+            if (originRect == null) {
+                updateShapeRect();
+            }
+            if (originRect == null) {
+                return null;
+            }
+            // Pen algorithms can draw up to a full stroke width beyond the points
+            float padding = getRenderStrokeWidth() + 1f;
+            displayListBounds = new RectF(originRect);
+            displayListBounds.inset(-padding, -padding);
+        }
+
+        // Record relative to the bounds origin so the picture's cull rect covers the stroke
+        Picture picture = new Picture();
+        Canvas recordingCanvas = picture.beginRecording(
+                (int) Math.ceil(displayListBounds.width()), (int) Math.ceil(displayListBounds.height()));
+        recordingCanvas.translate(-displayListBounds.left, -displayListBounds.top);
+        Canvas targetCanvas = renderContext.canvas;
+        renderContext.canvas = recordingCanvas;
+        try {
+            render(renderContext);
+        } finally {
+            renderContext.canvas = targetCanvas;
+            picture.endRecording();
+        }
+        return picture;
+    }
+
     public void applyStrokeStyle(RendererHelper.RenderContext renderContext) {
         Paint paint = renderContext.paint;
         paint.setStrokeWidth(getRenderStrokeWidth());
@@ -128,86 +532,147 @@ public class DrawingShape {
         paint.setStrokeMiter(4.0f);
         paint.setPathEffect(null);
         if (isTransparent()) {
-            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+            paint.setXfermode(renderContext.clearXfermode);
         } else {
             paint.setXfermode(null);
         }
     }
 
-    public float getRenderStrokeWidth() {
-        float strokeWidth = getStrokeWidth();
-        return isTransparent() ? (strokeWidth + PenUtils.ERASE_EXTRA_STROKE_WIDTH) : strokeWidth;
+    /**
+     * Points to render at the context's level of detail, for the SDK pens that need TouchPoint objects
+     * Built fresh on every call; callers record the result into a display list rather than keeping it
+     */
+    protected List<TouchPoint> getRenderPoints(RendererHelper.RenderContext renderContext) {
+        if (!ensureTouchPoints()) {
+            return Collections.emptyList();
+        }
+        StrokeData data = strokeData;
+        return data.toTouchPoints(getRenderIndices(data, renderContext));
     }
 
-    public boolean hitTestPoints(TouchPointList pointList, float radius) {
-        for (TouchPoint touchPoint : pointList.getPoints()) {
-            if (hitTest(touchPoint.getX(), touchPoint.getY(), radius)) {
-                return true;
-            }
+    /**
+     * Stroke point indices at the context's level of detail, cached until the points change
+     * Higher levels are Ramer-Douglas-Peucker simplifications of the stroke data
+     * @return Ascending indices, or null at level 0 where every point is rendered
+     */
+    private int[] getRenderIndices(StrokeData data, RendererHelper.RenderContext renderContext) {
+        int level = clampLodLevel(renderContext.lodLevel);
+        if (level == 0) {
+            return null;
         }
-        return false;
+        int[][] levels = lodIndices;
+        if (levels == null) {
+            levels = new int[LOD_LEVEL_COUNT][];
+            lodIndices = levels;
+        }
+        int[] indices = levels[level];
+        if (indices == null) {
+            indices = StrokeSimplifier.keptIndices(data.getXs(), data.getYs(), null, data.size(),
+                    LOD_TOLERANCES[level - 1], Float.POSITIVE_INFINITY);
+            levels[level] = indices;
+        }
+        return indices;
     }
 
-    private boolean hitTest(float x, float y, float radius) {
-        final float limit = radius;
-        boolean hit = false;
-        int first, second;
-        float[] point = new float[]{x, y};
-        Matrix invertMatrix = new Matrix();
-        invertMatrix.mapPoints(point);
-        final List<TouchPoint> points = touchPointList.getPoints();
-        for (int i = 0; i < points.size() - 1; ++i) {
-            first = i;
-            second = i + 1;
-
-            boolean isIntersect = hitTest(points.get(first).getX(),
-                    points.get(first).getY(),
-                    points.get(second).getX(),
-                    points.get(second).getY(),
-                    point[0], point[1], limit);
-            if (isIntersect) {
-                hit = true;
-                break;
-            }
+    /**
+     * Smoothed path through the stroke points at the context's level of detail
+     */
+    protected Path getStrokePath(RendererHelper.RenderContext renderContext) {
+        if (!ensureTouchPoints()) {
+            return new Path();
+        }
+        int level = clampLodLevel(renderContext.lodLevel);
+        Path[] paths = strokePaths;
+        if (paths == null) {
+            paths = new Path[LOD_LEVEL_COUNT];
+            strokePaths = paths;
+        }
+        Path path = paths[level];
+        if (path == null) {
+            StrokeData data = strokeData;
+            path = buildStrokePath(data, getRenderIndices(data, renderContext));
+            paths[level] = path;
+            trackRenderCache(estimateRenderCacheBytes());
+        } else {
+            touchRenderCache();
         }
-        return hit;
+        return path;
     }
 
-    private boolean hitTest(final float x1, final float y1, final float x2,
-                                  final float y2, final float x, final float y, float limit) {
-        float value = distance(x1, y1, x2, y2, x, y);
-        return value <= limit;
+    protected static int clampLodLevel(int level) {
+        return Math.max(0, Math.min(level, LOD_LEVEL_COUNT - 1));
     }
 
-    private float distance(float x1, float y1, float x2, float y2, float x, float y) {
-        float A = x - x1;
-        float B = y - y1;
-        float C = x2 - x1;
-        float D = y2 - y1;
-
-        float dot = A * C + B * D;
-        float lenSq = C * C + D * D;
-        float param = -1.0f;
-        if (lenSq!= 0) {
-            param = dot / lenSq;
+    /**
+     * Quadratic path through the coordinate arrays, reading only the given indices
+     * @param indices Ascending point indices, or null for every point
+     */
+    private static Path buildStrokePath(StrokeData data, int[] indices) {
+        Path path = new Path();
+        int count = indices != null ? indices.length : data.size();
+        if (count == 0) {
+            return path;
+        }
+        float[] xs = data.getXs();
+        float[] ys = data.getYs();
+        int first = indices != null ? indices[0] : 0;
+        float preX = xs[first];
+        float preY = ys[first];
+        path.moveTo(preX, preY);
+        for (int i = 0; i < count; i++) {
+            int index = indices != null ? indices[i] : i;
+            float x = xs[index];
+            float y = ys[index];
+            path.quadTo(preX, preY, x, y);
+            preX = x;
+            preY = y;
         }
+        return path;
+    }
 
-        float xx, yy;
+    public float getRenderStrokeWidth() {
+        float strokeWidth = getStrokeWidth();
+        return isTransparent() ? (strokeWidth + PenUtils.ERASE_EXTRA_STROKE_WIDTH) : strokeWidth;
+    }
 
-        if (param < 0) {
-            xx = x1;
-            yy = y1;
-        } else if (param > 1) {
-            xx = x2;
-            yy = y2;
-        } else {
-            xx = x1 + param * C;
-            yy = y1 + param * D;
+    public StrokeSegmentBvh getSegmentBvh() {
+        if (!ensureTouchPoints()) {
+            // Empty and uncached, so hit tests see the points once they load
+            StrokeData empty = StrokeData.empty();
+            return new StrokeSegmentBvh(empty.getXs(), empty.getYs());
         }
+        StrokeSegmentBvh bvh = segmentBvh;
+        if (bvh == null) {
+            // Shares the stroke's coordinate arrays
+            bvh = new StrokeSegmentBvh(strokeData.getXs(), strokeData.getYs());
+            segmentBvh = bvh;
+        }
+        return bvh;
+    }
 
-        float dx = x - xx;
-        float dy = y - yy;
-        return (float) Math.sqrt(dx * dx + dy * dy);
+    public boolean hitTestPoints(TouchPointList pointList, float radius) {
+        StrokeSegmentBvh bvh = getSegmentBvh();
+        for (TouchPoint touchPoint : pointList.getPoints()) {
+            if (bvh.anyWithin(touchPoint.getX(), touchPoint.getY(), radius)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the segments of this stroke touched by an eraser path.
+     * Segment i joins point i and point i + 1.
+     * @return Hit flags per segment, or null if nothing was hit
+     */
+    public boolean[] findErasedSegments(TouchPointList eraserPath, float radius) {
+        StrokeSegmentBvh bvh = getSegmentBvh();
+        boolean[] hitSegments = new boolean[bvh.getSegmentCount()];
+        int hits = 0;
+        for (TouchPoint touchPoint : eraserPath.getPoints()) {
+            hits += bvh.markWithin(touchPoint.getX(), touchPoint.getY(), radius, hitSegments);
+        }
+        return hits > 0 ? hitSegments : null;
     }
 
 }
@@ -4,7 +4,6 @@ import com.onyx.android.sdk.api.device.epd.EpdController;
 import com.onyx.android.sdk.data.note.TouchPoint;
 import com.onyx.android.sdk.pen.NeoMarkerPen;
 import com.wyldsoft.notes.render.RendererHelper;
-import android.util.Log;
 import java.util.List;
 
 public class MarkerScribbleShape extends DrawingShape {
@@ -12,11 +11,10 @@ public class MarkerScribbleShape extends DrawingShape {
     @Override
     public void render(RendererHelper.RenderContext renderContext) {
 
-        List<TouchPoint> points = touchPointList.getPoints();
+        List<TouchPoint> points = getRenderPoints(renderContext);
         applyStrokeStyle(renderContext);
         List<TouchPoint> markerPoints = NeoMarkerPen.computeStrokePoints(points, strokeWidth,
                 EpdController.getMaxTouchPressure());
         NeoMarkerPen.drawStroke(renderContext.canvas, renderContext.paint, markerPoints, strokeWidth, isTransparent());
-        Log.d("Shape", "markerPoints" + markerPoints);
     }
 }
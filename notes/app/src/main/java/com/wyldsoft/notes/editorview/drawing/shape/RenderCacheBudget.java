@@ -0,0 +1,83 @@
+package com.wyldsoft.notes.editorview.drawing.shape;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide LRU budget for the per-shape render caches (display lists and stroke paths).
+ * Shapes report an estimated size whenever they cache a level; once the total exceeds the
+ * budget, the least recently rendered shapes drop their caches and re-record on next render.
+ * Pictures and paths live in native memory the GC does not see, so a byte budget is used
+ * instead of soft references.
+ */
+final class RenderCacheBudget {
+    // Enough for the display lists of a few screens of dense handwriting
+    static final long DEFAULT_BUDGET_BYTES = 24L * 1024 * 1024;
+
+    private static final RenderCacheBudget INSTANCE = new RenderCacheBudget(DEFAULT_BUDGET_BYTES);
+
+    private final long budgetBytes;
+
+    // Access-ordered: iteration starts at the least recently rendered shape
+    private final LinkedHashMap<DrawingShape, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+    private long evictions;
+
+    RenderCacheBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    static RenderCacheBudget getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Mark a shape's caches as just used
+     */
+    synchronized void touch(DrawingShape shape) {
+        entries.get(shape);
+    }
+
+    /**
+     * Account for a newly cached level of a shape and evict older shapes if over budget
+     */
+    synchronized void add(DrawingShape shape, long bytes) {
+        Long previous = entries.get(shape);
+        entries.put(shape, (previous != null ? previous : 0L) + bytes);
+        usedBytes += bytes;
+        trim(shape);
+    }
+
+    /**
+     * Stop accounting for a shape whose caches were dropped
+     */
+    synchronized void remove(DrawingShape shape) {
+        Long bytes = entries.remove(shape);
+        if (bytes != null) {
+            usedBytes -= bytes;
+        }
+    }
+
+    synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    private void trim(DrawingShape keep) {
+        Iterator<Map.Entry<DrawingShape, Long>> iterator = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<DrawingShape, Long> eldest = iterator.next();
+            if (eldest.getKey() == keep) {
+                continue;
+            }
+            iterator.remove();
+            usedBytes -= eldest.getValue();
+            evictions++;
+            eldest.getKey().dropRenderCaches();
+        }
+    }
+}
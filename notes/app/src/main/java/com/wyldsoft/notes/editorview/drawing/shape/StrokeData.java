@@ -0,0 +1,218 @@
+package com.wyldsoft.notes.editorview.drawing.shape;
+
+import android.graphics.RectF;
+
+import com.onyx.android.sdk.data.note.TouchPoint;
+import com.onyx.android.sdk.pen.data.TouchPointList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable stroke points stored as parallel primitive arrays.
+ * A TouchPoint costs an object header, boxed-list slot and several fields per point; here a
+ * point is four floats plus a 4-byte timestamp offset from the first point. Timestamps fall
+ * back to a long array when a stroke spans more than an int of milliseconds.
+ * Onyx renderers still take TouchPoint lists, built on demand with toTouchPoints().
+ */
+public final class StrokeData {
+    private static final StrokeData EMPTY = new StrokeData(
+            new float[0], new float[0], new float[0], new float[0], 0L, new int[0], null);
+
+    private final float[] xs;
+    private final float[] ys;
+    private final float[] pressures;
+    private final float[] sizes;
+    private final long baseTimestamp;
+    private final int[] timestampOffsets;
+    private final long[] timestamps;
+
+    private StrokeData(float[] xs, float[] ys, float[] pressures, float[] sizes,
+                       long baseTimestamp, int[] timestampOffsets, long[] timestamps) {
+        this.xs = xs;
+        this.ys = ys;
+        this.pressures = pressures;
+        this.sizes = sizes;
+        this.baseTimestamp = baseTimestamp;
+        this.timestampOffsets = timestampOffsets;
+        this.timestamps = timestamps;
+    }
+
+    public static StrokeData empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Copy touch points into primitive arrays; null entries are skipped
+     */
+    public static StrokeData fromTouchPoints(List<TouchPoint> points) {
+        if (points == null || points.isEmpty()) {
+            return EMPTY;
+        }
+        int count = 0;
+        for (TouchPoint point : points) {
+            if (point != null) {
+                count++;
+            }
+        }
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        float[] pressures = new float[count];
+        float[] sizes = new float[count];
+        long[] times = new long[count];
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int i = 0;
+        for (TouchPoint point : points) {
+            if (point == null) {
+                continue;
+            }
+            xs[i] = point.x;
+            ys[i] = point.y;
+            pressures[i] = point.pressure;
+            sizes[i] = point.size;
+            times[i] = point.timestamp;
+            minTime = Math.min(minTime, point.timestamp);
+            maxTime = Math.max(maxTime, point.timestamp);
+            i++;
+        }
+        if (count == 0) {
+            return EMPTY;
+        }
+
+        long base = times[0];
+        if (minTime - base < Integer.MIN_VALUE || maxTime - base > Integer.MAX_VALUE) {
+            return new StrokeData(xs, ys, pressures, sizes, base, null, times);
+        }
+        int[] offsets = new int[count];
+        for (int j = 0; j < count; j++) {
+            offsets[j] = (int) (times[j] - base);
+        }
+        return new StrokeData(xs, ys, pressures, sizes, base, offsets, null);
+    }
+
+    public static StrokeData fromTouchPointList(TouchPointList touchPointList) {
+        return fromTouchPoints(touchPointList != null ? touchPointList.getPoints() : null);
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public boolean isEmpty() {
+        return xs.length == 0;
+    }
+
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    public float getPressure(int index) {
+        return pressures[index];
+    }
+
+    public float getSize(int index) {
+        return sizes[index];
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps != null ? timestamps[index] : baseTimestamp + timestampOffsets[index];
+    }
+
+    // Shared, not copied; callers must not modify them
+    float[] getXs() {
+        return xs;
+    }
+
+    float[] getYs() {
+        return ys;
+    }
+
+    /**
+     * Bounds of the point coordinates, without stroke width
+     * @return False if there are no points, leaving out untouched
+     */
+    public boolean computeBounds(RectF out) {
+        int count = xs.length;
+        if (count == 0) {
+            return false;
+        }
+        float minX = xs[0];
+        float minY = ys[0];
+        float maxX = minX;
+        float maxY = minY;
+        for (int i = 1; i < count; i++) {
+            float x = xs[i];
+            float y = ys[i];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        out.set(minX, minY, maxX, maxY);
+        return true;
+    }
+
+    /**
+     * Build TouchPoint objects for APIs that need them; allocates on every call
+     */
+    public List<TouchPoint> toTouchPoints() {
+        int count = xs.length;
+        List<TouchPoint> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(toTouchPoint(i));
+        }
+        return points;
+    }
+
+    /**
+     * Build TouchPoint objects for a subset of the points; allocates on every call
+     * @param indices Ascending point indices, or null for every point
+     */
+    public List<TouchPoint> toTouchPoints(int[] indices) {
+        if (indices == null) {
+            return toTouchPoints();
+        }
+        List<TouchPoint> points = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            points.add(toTouchPoint(index));
+        }
+        return points;
+    }
+
+    private TouchPoint toTouchPoint(int index) {
+        TouchPoint point = new TouchPoint();
+        point.x = xs[index];
+        point.y = ys[index];
+        point.pressure = pressures[index];
+        point.size = sizes[index];
+        point.timestamp = getTimestamp(index);
+        return point;
+    }
+
+    /**
+     * Build a TouchPointList for Onyx SDK calls; allocates on every call
+     */
+    public TouchPointList toTouchPointList() {
+        TouchPointList touchPointList = new TouchPointList();
+        int count = xs.length;
+        for (int i = 0; i < count; i++) {
+            touchPointList.add(toTouchPoint(i));
+        }
+        return touchPointList;
+    }
+
+    /**
+     * Approximate heap size of the arrays, for memory statistics
+     */
+    public long estimateBytes() {
+        long arrays = 4L * (xs.length + ys.length + pressures.length + sizes.length);
+        long time = timestamps != null ? 8L * timestamps.length : 4L * timestampOffsets.length;
+        // Object header plus five array headers
+        return 16 + 5 * 16 + arrays + time;
+    }
+}
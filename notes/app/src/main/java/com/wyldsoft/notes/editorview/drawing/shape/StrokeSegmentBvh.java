@@ -0,0 +1,190 @@
+package com.wyldsoft.notes.editorview.drawing.shape;
+
+import com.onyx.android.sdk.data.note.TouchPoint;
+
+import java.util.List;
+
+/**
+ * Bounding volume hierarchy over the segments of one stroke.
+ * Segment i joins point i and point i + 1. Nodes split the segment index range in half,
+ * which works well because consecutive points of a stroke are spatially close.
+ * A radius query visits only the nodes whose boxes come within the radius.
+ */
+public class StrokeSegmentBvh {
+    private static final int LEAF_SEGMENTS = 8;
+
+    private final float[] xs;
+    private final float[] ys;
+    private final int segmentCount;
+
+    // Node storage: boxes plus either children (internal) or a segment range (leaf)
+    private final float[] minX;
+    private final float[] minY;
+    private final float[] maxX;
+    private final float[] maxY;
+    private final int[] left;
+    private final int[] right;
+    private final int[] firstSegment;
+    private final int[] lastSegment;
+    private int nodeCount;
+
+    public StrokeSegmentBvh(List<TouchPoint> points) {
+        this(toXs(points), toYs(points));
+    }
+
+    /**
+     * Build over coordinate arrays, which are shared rather than copied
+     */
+    public StrokeSegmentBvh(float[] xs, float[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        int count = xs.length;
+        segmentCount = Math.max(count - 1, 0);
+
+        // Splitting halves ranges larger than LEAF_SEGMENTS, so every leaf holds at least 4 segments
+        int maxNodes = 2 * (segmentCount / 4 + 1);
+        minX = new float[maxNodes];
+        minY = new float[maxNodes];
+        maxX = new float[maxNodes];
+        maxY = new float[maxNodes];
+        left = new int[maxNodes];
+        right = new int[maxNodes];
+        firstSegment = new int[maxNodes];
+        lastSegment = new int[maxNodes];
+
+        if (segmentCount > 0) {
+            build(0, segmentCount - 1);
+        }
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Check whether any segment lies within radius of the point
+     */
+    public boolean anyWithin(float x, float y, float radius) {
+        if (segmentCount == 0) {
+            return xs.length == 1 && distanceSq(xs[0], ys[0], x, y) <= radius * radius;
+        }
+        return anyWithin(0, x, y, radius, radius * radius);
+    }
+
+    /**
+     * Mark every segment that lies within radius of the point
+     * @param hitSegments Array of size getSegmentCount() receiving the marks
+     * @return Number of newly marked segments
+     */
+    public int markWithin(float x, float y, float radius, boolean[] hitSegments) {
+        if (segmentCount == 0) {
+            return 0;
+        }
+        return markWithin(0, x, y, radius, radius * radius, hitSegments);
+    }
+
+    private int build(int first, int last) {
+        int node = nodeCount++;
+        float nodeMinX = Float.MAX_VALUE;
+        float nodeMinY = Float.MAX_VALUE;
+        float nodeMaxX = -Float.MAX_VALUE;
+        float nodeMaxY = -Float.MAX_VALUE;
+        for (int i = first; i <= last + 1; i++) {
+            nodeMinX = Math.min(nodeMinX, xs[i]);
+            nodeMinY = Math.min(nodeMinY, ys[i]);
+            nodeMaxX = Math.max(nodeMaxX, xs[i]);
+            nodeMaxY = Math.max(nodeMaxY, ys[i]);
+        }
+        minX[node] = nodeMinX;
+        minY[node] = nodeMinY;
+        maxX[node] = nodeMaxX;
+        maxY[node] = nodeMaxY;
+        firstSegment[node] = first;
+        lastSegment[node] = last;
+
+        if (last - first + 1 <= LEAF_SEGMENTS) {
+            left[node] = -1;
+            right[node] = -1;
+        } else {
+            int middle = (first + last) >>> 1;
+            left[node] = build(first, middle);
+            right[node] = build(middle + 1, last);
+        }
+        return node;
+    }
+
+    private boolean anyWithin(int node, float x, float y, float radius, float radiusSq) {
+        if (!boxWithin(node, x, y, radius)) {
+            return false;
+        }
+        if (left[node] < 0) {
+            for (int i = firstSegment[node]; i <= lastSegment[node]; i++) {
+                if (segmentDistanceSq(i, x, y) <= radiusSq) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return anyWithin(left[node], x, y, radius, radiusSq)
+                || anyWithin(right[node], x, y, radius, radiusSq);
+    }
+
+    private int markWithin(int node, float x, float y, float radius, float radiusSq, boolean[] hitSegments) {
+        if (!boxWithin(node, x, y, radius)) {
+            return 0;
+        }
+        if (left[node] < 0) {
+            int marked = 0;
+            for (int i = firstSegment[node]; i <= lastSegment[node]; i++) {
+                if (!hitSegments[i] && segmentDistanceSq(i, x, y) <= radiusSq) {
+                    hitSegments[i] = true;
+                    marked++;
+                }
+            }
+            return marked;
+        }
+        return markWithin(left[node], x, y, radius, radiusSq, hitSegments)
+                + markWithin(right[node], x, y, radius, radiusSq, hitSegments);
+    }
+
+    private boolean boxWithin(int node, float x, float y, float radius) {
+        return x >= minX[node] - radius && x <= maxX[node] + radius
+                && y >= minY[node] - radius && y <= maxY[node] + radius;
+    }
+
+    private float segmentDistanceSq(int segment, float x, float y) {
+        float x1 = xs[segment];
+        float y1 = ys[segment];
+        float x2 = xs[segment + 1];
+        float y2 = ys[segment + 1];
+
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        float lenSq = dx * dx + dy * dy;
+        float t = lenSq == 0 ? 0f : ((x - x1) * dx + (y - y1) * dy) / lenSq;
+        t = Math.max(0f, Math.min(1f, t));
+        return distanceSq(x1 + t * dx, y1 + t * dy, x, y);
+    }
+
+    private static float distanceSq(float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        return dx * dx + dy * dy;
+    }
+
+    private static float[] toXs(List<TouchPoint> points) {
+        float[] xs = new float[points.size()];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = points.get(i).x;
+        }
+        return xs;
+    }
+
+    private static float[] toYs(List<TouchPoint> points) {
+        float[] ys = new float[points.size()];
+        for (int i = 0; i < ys.length; i++) {
+            ys[i] = points.get(i).y;
+        }
+        return ys;
+    }
+}
@@ -0,0 +1,211 @@
+package com.wyldsoft.notes.editorview.drawing.shape;
+
+import com.onyx.android.sdk.data.note.TouchPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ramer-Douglas-Peucker simplification of stroke points.
+ * Keeps the subset of points needed so that no dropped point lies further than the
+ * tolerance from the simplified polyline. Kept points are the original objects, so
+ * pressure and size survive for the pen algorithms.
+ */
+public final class StrokeSimplifier {
+
+    private StrokeSimplifier() {
+    }
+
+    /**
+     * Simplify a stroke
+     * @param points Stroke points
+     * @param tolerance Maximum distance, in the points' coordinate space, a dropped point may be from the result
+     * @return Simplified points in order, always including the first and last point
+     */
+    public static List<TouchPoint> simplify(List<TouchPoint> points, float tolerance) {
+        return simplify(points, tolerance, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Simplify a stroke, also keeping points where pressure departs from a straight ramp
+     * @param points Stroke points
+     * @param tolerance Maximum distance, in the points' coordinate space, a dropped point may be from the result
+     * @param pressureTolerance Maximum difference between a dropped point's pressure and the pressure
+     *                          interpolated between the kept points around it
+     * @return Simplified points in order, always including the first and last point
+     */
+    public static List<TouchPoint> simplify(List<TouchPoint> points, float tolerance, float pressureTolerance) {
+        int count = points.size();
+        if (count <= 2 || tolerance <= 0f) {
+            return new ArrayList<>(points);
+        }
+
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        float[] pressures = new float[count];
+        for (int i = 0; i < count; i++) {
+            TouchPoint point = points.get(i);
+            xs[i] = point.x;
+            ys[i] = point.y;
+            pressures[i] = point.pressure;
+        }
+
+        int[] kept = keptIndices(xs, ys, pressures, count, tolerance, pressureTolerance);
+        List<TouchPoint> result = new ArrayList<>(kept.length);
+        for (int index : kept) {
+            result.add(points.get(index));
+        }
+        return result;
+    }
+
+    /**
+     * Simplify a stroke held as coordinate arrays, without building point objects
+     * @param xs X coordinates
+     * @param ys Y coordinates
+     * @param pressures Pressures, or null to simplify on geometry only
+     * @param count Number of points to read from the arrays
+     * @param tolerance Maximum distance a dropped point may be from the result
+     * @param pressureTolerance Maximum pressure error a dropped point may have; ignored without pressures
+     * @return Ascending indices of the kept points, always including the first and last point
+     */
+    static int[] keptIndices(float[] xs, float[] ys, float[] pressures, int count,
+                             float tolerance, float pressureTolerance) {
+        if (count <= 2 || tolerance <= 0f) {
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        int keptCount = 2;
+        float toleranceSq = tolerance * tolerance;
+        boolean checkPressure = pressures != null && pressureTolerance != Float.POSITIVE_INFINITY;
+
+        // Explicit stack of [first, last] ranges instead of recursion, so long strokes cannot overflow
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            float maxDistanceSq = -1f;
+            int farthest = -1;
+            float maxPressureError = 0f;
+            int pressureOutlier = -1;
+            for (int i = first + 1; i < last; i++) {
+                float distanceSq = segmentDistanceSq(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distanceSq > maxDistanceSq) {
+                    maxDistanceSq = distanceSq;
+                    farthest = i;
+                }
+                if (checkPressure) {
+                    float t = (float) (i - first) / (last - first);
+                    float expected = pressures[first] + t * (pressures[last] - pressures[first]);
+                    float pressureError = Math.abs(pressures[i] - expected);
+                    if (pressureError > maxPressureError) {
+                        maxPressureError = pressureError;
+                        pressureOutlier = i;
+                    }
+                }
+            }
+
+            // Split on the geometric outlier first, otherwise on a pressure outlier
+            if (maxDistanceSq <= toleranceSq) {
+                farthest = maxPressureError > pressureTolerance ? pressureOutlier : -1;
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                keptCount++;
+                if (top + 4 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, top);
+                    stack = grown;
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        int[] kept = new int[keptCount];
+        int next = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                kept[next++] = i;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Drop points that add no visible detail before running RDP
+     * A point is dropped when it is closer than minDistance to the last kept point, unless the
+     * stroke turns sharply there or its pressure changed noticeably since the last kept point.
+     * @param points Stroke points
+     * @param minDistance Minimum spacing, in the points' coordinate space, between kept points
+     * @param maxTurnDegrees Direction change above which a close point is still kept
+     * @param pressureTolerance Pressure change above which a close point is still kept
+     * @return Filtered points in order, always including the first and last point
+     */
+    public static List<TouchPoint> filterByDistance(List<TouchPoint> points, float minDistance,
+                                                    float maxTurnDegrees, float pressureTolerance) {
+        int count = points.size();
+        if (count <= 2 || minDistance <= 0f) {
+            return new ArrayList<>(points);
+        }
+
+        float minDistanceSq = minDistance * minDistance;
+        double minTurnCos = Math.cos(Math.toRadians(maxTurnDegrees));
+        List<TouchPoint> result = new ArrayList<>();
+        TouchPoint previousKept = null;
+        TouchPoint lastKept = points.get(0);
+        result.add(lastKept);
+
+        for (int i = 1; i < count - 1; i++) {
+            TouchPoint point = points.get(i);
+            float dx = point.x - lastKept.x;
+            float dy = point.y - lastKept.y;
+            float distanceSq = dx * dx + dy * dy;
+
+            boolean keep = distanceSq >= minDistanceSq
+                    || Math.abs(point.pressure - lastKept.pressure) > pressureTolerance;
+            if (!keep && previousKept != null && distanceSq > 0f) {
+                float hx = lastKept.x - previousKept.x;
+                float hy = lastKept.y - previousKept.y;
+                float headingSq = hx * hx + hy * hy;
+                if (headingSq > 0f) {
+                    double cos = (hx * dx + hy * dy) / Math.sqrt((double) headingSq * distanceSq);
+                    keep = cos < minTurnCos;
+                }
+            }
+
+            if (keep) {
+                result.add(point);
+                previousKept = lastKept;
+                lastKept = point;
+            }
+        }
+
+        result.add(points.get(count - 1));
+        return result;
+    }
+
+    private static float segmentDistanceSq(float x, float y, float startX, float startY, float endX, float endY) {
+        float dx = endX - startX;
+        float dy = endY - startY;
+        float lenSq = dx * dx + dy * dy;
+        float t = lenSq == 0 ? 0f : ((x - startX) * dx + (y - startY) * dy) / lenSq;
+        t = Math.max(0f, Math.min(1f, t));
+        float px = startX + t * dx - x;
+        float py = startY + t * dy - y;
+        return px * px + py * py;
+    }
+}
@@ -0,0 +1,24 @@
+package com.wyldsoft.notes.editorview.drawing.shape;
+
+import com.onyx.android.sdk.pen.data.TouchPointList;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Supplies the points of a shape that was loaded without them.
+ * Called at most once per successful load, from whichever thread first renders or
+ * hit-tests the shape, so implementations may block but must not require the main thread.
+ */
+public interface TouchPointSource {
+    /**
+     * @return The shape's points, or null if they could not be loaded right now
+     */
+    TouchPointList loadTouchPoints(String shapeId);
+
+    /**
+     * Load the points of several shapes in one read, for prefetching a screen or tile
+     * @return Points by shape id; shapes that could not be loaded are left out
+     */
+    Map<String, TouchPointList> loadTouchPoints(List<String> shapeIds);
+}
@@ -37,6 +37,7 @@ class EditorState {
         val forceScreenRefresh = MutableSharedFlow<Unit>()
         val penProfileChanged = MutableSharedFlow<PenProfile>()
         val eraserModeChanged = MutableSharedFlow<Boolean>()
+        val preciseEraserChanged = MutableSharedFlow<Boolean>()
 
         private var mainActivity: BaseDrawingActivity? = null
 
@@ -130,6 +131,16 @@ class EditorState {
             Log.d(TAG, "Eraser mode set to: $enabled")
         }
 
+        /**
+         * Switch the eraser between removing whole strokes and cutting strokes where it passes
+         */
+        fun setPreciseEraser(enabled: Boolean) {
+            kotlinx.coroutines.GlobalScope.launch {
+                preciseEraserChanged.emit(enabled)
+            }
+            Log.d(TAG, "Precise eraser set to: $enabled")
+        }
+
         fun forceRefresh() {
             Log.d(TAG, "forceRefresh() called")
 
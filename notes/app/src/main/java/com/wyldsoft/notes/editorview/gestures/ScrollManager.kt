@@ -35,6 +35,7 @@ class ScrollManager(
      */
     fun startScrolling() {
         isScrolling = true
+        viewportController?.beginGesture()
     }
     
     /**
@@ -51,12 +52,8 @@ class ScrollManager(
         val adjustedDeltaY = deltaY * scrollSensitivity
         
         // Use direct pixel scrolling for smooth, proportional movement
-        val scrolled = controller.scrollByPixels(adjustedDeltaX, adjustedDeltaY)
-        
-        // Force a screen refresh to ensure visual update
-        if (scrolled) {
-            onForceRefresh?.invoke()
-        }
+        // The viewport listener shifts the existing frame, so no full refresh is forced here
+        controller.scrollByPixels(adjustedDeltaX, adjustedDeltaY)
         
         // Notify about scroll event
         val gesture = "Scrolled proportionally by (${adjustedDeltaX.toInt()}, ${adjustedDeltaY.toInt()})"
@@ -67,7 +64,10 @@ class ScrollManager(
      * Stop the current scrolling session
      */
     fun stopScrolling() {
-        isScrolling = false
+        if (isScrolling) {
+            isScrolling = false
+            viewportController?.endGesture()
+        }
     }
     
     /**
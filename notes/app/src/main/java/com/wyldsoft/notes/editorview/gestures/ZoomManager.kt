@@ -66,6 +66,7 @@ class ZoomManager(
         if (event.pointerCount != 2) return false
 
         isZooming = true
+        viewportController?.beginGesture()
         activePointerId1 = event.getPointerId(0)
         activePointerId2 = event.getPointerId(1)
 
@@ -121,6 +122,7 @@ class ZoomManager(
             isZooming = false
             activePointerId1 = -1
             activePointerId2 = -1
+            viewportController?.endGesture()
         }
     }
     
@@ -138,23 +140,18 @@ class ZoomManager(
         val controller = viewportController ?: return
         
         // Apply zoom based on scale factor, centered on the focus point
-        var zoomed = false
+        // The controller notifies listeners, which preview the new zoom until the pinch ends
         if (scaleFactor > 1.05f && controller.canZoomIn()) {
-            zoomed = controller.zoomInAtFocus(focusX, focusY)
+            controller.zoomInAtFocus(focusX, focusY)
             
             val gesture = "Zooming in: scale factor ${String.format("%.2f", scaleFactor)} (center: ${focusX.toInt()}, ${focusY.toInt()})"
             onZoomEvent(gesture)
         } else if (scaleFactor < 0.95f && controller.canZoomOut()) {
-            zoomed = controller.zoomOutAtFocus(focusX, focusY)
+            controller.zoomOutAtFocus(focusX, focusY)
             
             val gesture = "Zooming out: scale factor ${String.format("%.2f", scaleFactor)} (center: ${focusX.toInt()}, ${focusY.toInt()})"
             onZoomEvent(gesture)
         }
-        
-        // Force a screen refresh to ensure visual update
-        if (zoomed) {
-            onForceRefresh?.invoke()
-        }
     }
     
     /**
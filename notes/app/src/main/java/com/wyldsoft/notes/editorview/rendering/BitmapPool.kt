@@ -0,0 +1,90 @@
+package com.wyldsoft.notes.editorview.rendering
+
+import android.graphics.Bitmap
+import android.util.Log
+import androidx.core.graphics.createBitmap
+
+/**
+ * Size-bucketed pool of ARGB bitmaps for short-lived refresh buffers
+ * Requested sizes are rounded up to BUCKET_STEP pixels so nearby sizes share bitmaps;
+ * callers draw into the top-left width x height area. Bitmaps are returned with release()
+ * once the screen request using them has executed, and recycled when the pool is full.
+ */
+class BitmapPool(
+    private val maxPooledBytes: Int = DEFAULT_MAX_POOLED_BYTES
+) {
+    companion object {
+        private const val TAG = "BitmapPool"
+        const val BUCKET_STEP = 64
+        const val DEFAULT_MAX_POOLED_BYTES = 16 * 1024 * 1024
+        private const val MAX_PER_BUCKET = 2
+
+        fun bucketSize(size: Int): Int = ((size + BUCKET_STEP - 1) / BUCKET_STEP) * BUCKET_STEP
+    }
+
+    private val buckets = HashMap<Long, ArrayDeque<Bitmap>>()
+    private var pooledBytes = 0
+    private var hits = 0L
+    private var misses = 0L
+
+    /**
+     * Get a bitmap at least width x height, reusing a pooled one when possible
+     * The returned bitmap is not cleared
+     */
+    @Synchronized
+    fun acquire(width: Int, height: Int): Bitmap {
+        val bucketWidth = bucketSize(width)
+        val bucketHeight = bucketSize(height)
+        val bitmap = buckets[bucketKey(bucketWidth, bucketHeight)]?.removeLastOrNull()
+        if (bitmap != null) {
+            pooledBytes -= bitmap.byteCount
+            hits++
+            return bitmap
+        }
+        misses++
+        return createBitmap(bucketWidth, bucketHeight)
+    }
+
+    /**
+     * Return a bitmap to the pool, recycling it if its bucket or the pool is full
+     */
+    @Synchronized
+    fun release(bitmap: Bitmap) {
+        if (bitmap.isRecycled) return
+
+        val bucket = buckets.getOrPut(bucketKey(bitmap.width, bitmap.height)) { ArrayDeque() }
+        if (bucket.size >= MAX_PER_BUCKET || pooledBytes + bitmap.byteCount > maxPooledBytes) {
+            bitmap.recycle()
+            return
+        }
+        bucket.addLast(bitmap)
+        pooledBytes += bitmap.byteCount
+    }
+
+    /**
+     * Recycle every pooled bitmap
+     */
+    @Synchronized
+    fun clear() {
+        buckets.values.forEach { bucket -> bucket.forEach { it.recycle() } }
+        buckets.clear()
+        pooledBytes = 0
+        Log.d(TAG, "Cleared bitmap pool")
+    }
+
+    /**
+     * Get pool statistics for debugging
+     */
+    @Synchronized
+    fun getStats(): Map<String, Any> {
+        return mapOf(
+            "hits" to hits,
+            "misses" to misses,
+            "pooledBitmaps" to buckets.values.sumOf { it.size },
+            "pooledBytes" to pooledBytes,
+            "maxPooledBytes" to maxPooledBytes
+        )
+    }
+
+    private fun bucketKey(width: Int, height: Int): Long = (width.toLong() shl 32) or height.toLong()
+}
@@ -0,0 +1,26 @@
+package com.wyldsoft.notes.editorview.rendering
+
+import android.view.View
+import com.onyx.android.sdk.api.device.epd.UpdateMode
+
+/**
+ * E-ink update mode operations used when posting frames
+ * Screen refresh code goes through this interface instead of calling EpdController directly,
+ * so the refresh policy can be exercised with a fake controller off-device.
+ */
+interface EpdUpdateModeController {
+    /**
+     * Use an update mode for the view's following screen updates
+     */
+    fun setViewDefaultUpdateMode(view: View, mode: UpdateMode)
+
+    /**
+     * Return the view to the system's default update mode
+     */
+    fun resetViewUpdateMode(view: View)
+
+    /**
+     * Allow or block posting the view's surface to the e-ink panel
+     */
+    fun enablePost(view: View, enable: Boolean)
+}
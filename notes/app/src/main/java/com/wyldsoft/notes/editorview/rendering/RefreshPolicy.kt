@@ -0,0 +1,116 @@
+package com.wyldsoft.notes.editorview.rendering
+
+import android.graphics.Rect
+import android.util.Log
+import com.onyx.android.sdk.api.device.epd.UpdateMode
+
+/**
+ * Picks the e-ink update mode for each screen refresh
+ * Gestures and erasing use the fast DU waveform so the panel keeps up with the input. Stroke
+ * commits keep the handwriting repaint mode. Settled viewport frames use GU when they cover a
+ * large part of the screen. Fast modes leave ghosting behind, so after fullRefreshInterval
+ * partial updates of any kind the next settled viewport frame is promoted to a full-screen GC
+ * refresh. Stroke and erase refreshes are never promoted, so pen-up does not flash the panel;
+ * instead the rendering manager asks isFullRefreshDue() once the pen has been idle for a while
+ * and posts a viewport frame, so writing sessions without scrolling are cleaned as well.
+ */
+class RefreshPolicy(
+    private val updateModeController: EpdUpdateModeController,
+    private val gestureInProgress: () -> Boolean = { false },
+    fullRefreshInterval: Int = DEFAULT_FULL_REFRESH_INTERVAL
+) {
+    companion object {
+        private const val TAG = "RefreshPolicy"
+        const val DEFAULT_FULL_REFRESH_INTERVAL = 40
+
+        // Settled frames covering more of the screen than this use the high-quality waveform
+        private const val LARGE_AREA_FRACTION = 0.5f
+    }
+
+    enum class ContentType {
+        // Pen-up stroke commits
+        STROKE,
+        // Erased area refreshes
+        ERASE,
+        // Scroll, zoom and full page frames
+        VIEWPORT
+    }
+
+    /**
+     * Update decision for one refresh
+     * @param updateMode Waveform to post the frame with
+     * @param fullRefresh True if the whole screen should be redrawn to clear ghosting
+     */
+    data class Decision(val updateMode: UpdateMode, val fullRefresh: Boolean)
+
+    @Volatile
+    var fullRefreshInterval: Int = fullRefreshInterval
+        set(value) {
+            field = value.coerceAtLeast(1)
+        }
+
+    private var partialUpdates = 0
+    private var fullRefreshes = 0L
+
+    /**
+     * Decide how to post a refresh and count it towards the next full refresh
+     * @param contentType What changed on screen
+     * @param dirtyRect Screen area being updated, or null for the whole screen
+     * @param screenWidth Surface width in pixels
+     * @param screenHeight Surface height in pixels
+     * @return Update mode and whether to promote the refresh to a full-screen GC
+     */
+    @Synchronized
+    fun decide(contentType: ContentType, dirtyRect: Rect?, screenWidth: Int, screenHeight: Int): Decision {
+        val gesture = gestureInProgress()
+
+        if (!gesture && contentType == ContentType.VIEWPORT && partialUpdates >= fullRefreshInterval) {
+            partialUpdates = 0
+            fullRefreshes++
+            Log.d(TAG, "Full GC refresh after $fullRefreshInterval partial updates")
+            return Decision(UpdateMode.GC, true)
+        }
+
+        partialUpdates++
+        val updateMode = when {
+            gesture || contentType == ContentType.ERASE -> UpdateMode.DU
+            contentType == ContentType.STROKE -> UpdateMode.HAND_WRITING_REPAINT_MODE
+            isLargeArea(dirtyRect, screenWidth, screenHeight) -> UpdateMode.GU
+            else -> UpdateMode.HAND_WRITING_REPAINT_MODE
+        }
+        return Decision(updateMode, false)
+    }
+
+    /**
+     * Whether enough partial updates have piled up that the next settled viewport frame is a full GC
+     */
+    @Synchronized
+    fun isFullRefreshDue(): Boolean {
+        return partialUpdates >= fullRefreshInterval && !gestureInProgress()
+    }
+
+    /**
+     * Controller the chosen update modes are applied through
+     */
+    fun getUpdateModeController(): EpdUpdateModeController = updateModeController
+
+    /**
+     * Get policy statistics for debugging
+     */
+    @Synchronized
+    fun getStats(): Map<String, Any> {
+        return mapOf(
+            "partialUpdatesSinceFullRefresh" to partialUpdates,
+            "fullRefreshes" to fullRefreshes,
+            "fullRefreshInterval" to fullRefreshInterval
+        )
+    }
+
+    private fun isLargeArea(dirtyRect: Rect?, screenWidth: Int, screenHeight: Int): Boolean {
+        dirtyRect ?: return true
+        val screenArea = screenWidth.toLong() * screenHeight
+        if (screenArea <= 0) return true
+        val dirtyArea = (dirtyRect.right - dirtyRect.left).toLong() * (dirtyRect.bottom - dirtyRect.top)
+        return dirtyArea > screenArea * LARGE_AREA_FRACTION
+    }
+}
@@ -0,0 +1,234 @@
+package com.wyldsoft.notes.editorview.rendering
+
+import android.graphics.Bitmap
+import android.graphics.Rect
+import android.graphics.RectF
+import android.util.Log
+import android.view.SurfaceView
+import com.onyx.android.sdk.rx.RxManager
+import com.onyx.android.sdk.rx.RxRequest
+import com.wyldsoft.notes.PartialRefreshRequest
+import com.wyldsoft.notes.editorview.drawing.onyx.OnyxEpdUpdateModeController
+import com.wyldsoft.notes.render.RendererToScreenRequest
+
+/**
+ * Coalescing frame scheduler in front of the render RxManager
+ * Keeps at most one pending frame per priority: a new request merges into the pending frame
+ * (newest bitmap wins, dirty rects are unioned, any full-frame request makes it full) instead of
+ * queueing another one. Only one frame is enqueued on the RxManager at a time, and pen-up
+ * commits are drawn before viewport frames. A full viewport frame absorbs any pending commit:
+ * its bitmap may have been swapped to the back buffer by a scroll since the commit was requested. The refresh policy picks each frame's
+ * e-ink update mode and may promote a partial frame to a full-screen refresh.
+ */
+class RenderScheduler(
+    private val rxManager: RxManager,
+    private val refreshPolicy: RefreshPolicy = RefreshPolicy(OnyxEpdUpdateModeController)
+) {
+    companion object {
+        private const val TAG = "RenderScheduler"
+    }
+
+    enum class Priority {
+        // Pen-up stroke commits and erase refreshes, drawn first
+        COMMIT,
+        // Scroll, zoom and refresh frames
+        VIEWPORT
+    }
+
+    /**
+     * A frame waiting to be drawn, accumulating merged requests
+     */
+    private class PendingFrame(
+        val priority: Priority,
+        var surfaceView: SurfaceView,
+        var bitmap: Bitmap,
+        var fullFrame: Boolean,
+        var contentType: RefreshPolicy.ContentType
+    ) {
+        val dirtyRect = Rect()
+        val onRendered = mutableListOf<Runnable>()
+    }
+
+    private val lock = Any()
+    private var pendingCommit: PendingFrame? = null
+    private var pendingViewport: PendingFrame? = null
+    private var frameInFlight = false
+
+    // Statistics
+    private var framesRequested = 0L
+    private var framesRendered = 0L
+    private var framesDropped = 0L
+
+    /**
+     * Request a frame of the bitmap on screen
+     * @param surfaceView SurfaceView to draw to
+     * @param bitmap Screen-sized bitmap holding the frame
+     * @param dirtyRect Screen area to update, or null for the whole surface
+     * @param priority Frame priority
+     * @param contentType What changed, for the refresh policy; commit frames may be strokes or erases
+     * @param onRendered Optional callback run on the render thread once a frame including this request is posted
+     */
+    fun requestFrame(
+        surfaceView: SurfaceView,
+        bitmap: Bitmap,
+        dirtyRect: Rect? = null,
+        priority: Priority = Priority.VIEWPORT,
+        contentType: RefreshPolicy.ContentType = defaultContentType(priority),
+        onRendered: Runnable? = null
+    ) {
+        val dispatch: Boolean
+        synchronized(lock) {
+            framesRequested++
+            val existing = if (priority == Priority.COMMIT) pendingCommit else pendingViewport
+            val frame = if (existing != null) {
+                // The queued frame has not been drawn yet; this request supersedes it
+                framesDropped++
+                existing.surfaceView = surfaceView
+                existing.bitmap = bitmap
+                existing.fullFrame = existing.fullFrame || dirtyRect == null
+                // A merged frame that clears erased ink keeps the fast erase waveform
+                if (contentType == RefreshPolicy.ContentType.ERASE) {
+                    existing.contentType = contentType
+                }
+                existing
+            } else {
+                PendingFrame(priority, surfaceView, bitmap, dirtyRect == null, contentType).also {
+                    if (priority == Priority.COMMIT) pendingCommit = it else pendingViewport = it
+                }
+            }
+            dirtyRect?.let { frame.dirtyRect.union(it) }
+            onRendered?.let { frame.onRendered.add(it) }
+
+            // The full frame shows the committed content at its current position
+            val commit = pendingCommit
+            if (priority == Priority.VIEWPORT && frame.fullFrame && commit != null) {
+                framesDropped++
+                frame.onRendered.addAll(commit.onRendered)
+                pendingCommit = null
+            }
+
+            dispatch = !frameInFlight
+            frameInFlight = true
+        }
+        if (dispatch) {
+            enqueueNextFrame()
+        }
+    }
+
+    /**
+     * Get scheduler statistics for debugging
+     */
+    fun getStats(): Map<String, Any> {
+        synchronized(lock) {
+            return mapOf(
+                "queueDepth" to getQueueDepth(),
+                "framesRequested" to framesRequested,
+                "framesRendered" to framesRendered,
+                "framesDropped" to framesDropped
+            )
+        }
+    }
+
+    /**
+     * Frames pending or currently being drawn
+     */
+    fun getQueueDepth(): Int {
+        synchronized(lock) {
+            val pending = (if (pendingCommit != null) 1 else 0) + (if (pendingViewport != null) 1 else 0)
+            return if (frameInFlight && pending == 0) 1 else pending
+        }
+    }
+
+    private fun defaultContentType(priority: Priority): RefreshPolicy.ContentType {
+        return if (priority == Priority.COMMIT) {
+            RefreshPolicy.ContentType.STROKE
+        } else {
+            RefreshPolicy.ContentType.VIEWPORT
+        }
+    }
+
+    private fun enqueueNextFrame() {
+        try {
+            rxManager.enqueue(FrameRequest(), null)
+        } catch (e: Exception) {
+            Log.e(TAG, "Error enqueueing frame", e)
+            synchronized(lock) {
+                frameInFlight = false
+            }
+        }
+    }
+
+    /**
+     * Take the highest-priority pending frame
+     */
+    private fun takeNextFrame(): PendingFrame? {
+        synchronized(lock) {
+            pendingCommit?.let {
+                pendingCommit = null
+                return it
+            }
+            pendingViewport?.let {
+                pendingViewport = null
+                return it
+            }
+            return null
+        }
+    }
+
+    private fun drawFrame(frame: PendingFrame) {
+        if (frame.bitmap.isRecycled) {
+            Log.w(TAG, "Skipping frame with recycled bitmap")
+            return
+        }
+        val dirtyRect = Rect(frame.dirtyRect)
+        if (!frame.fullFrame && !dirtyRect.intersect(0, 0, frame.bitmap.width, frame.bitmap.height)) return
+
+        val decision = refreshPolicy.decide(
+            frame.contentType,
+            if (frame.fullFrame) null else dirtyRect,
+            frame.bitmap.width,
+            frame.bitmap.height
+        )
+
+        // Frame bitmaps cover the whole screen, so a partial frame can be promoted to a full one
+        val updateModeController = refreshPolicy.getUpdateModeController()
+        if (frame.fullFrame || decision.fullRefresh) {
+            RendererToScreenRequest(frame.surfaceView, frame.bitmap)
+                .setUpdateMode(decision.updateMode, updateModeController)
+                .execute()
+        } else {
+            PartialRefreshRequest(frame.surfaceView.context, frame.surfaceView, RectF(dirtyRect))
+                .setBitmap(frame.bitmap)
+                .setSourceRect(dirtyRect)
+                .setUpdateMode(decision.updateMode, updateModeController)
+                .execute()
+        }
+    }
+
+    /**
+     * Draws the next pending frame on the render thread, then schedules the one after it
+     */
+    private inner class FrameRequest : RxRequest() {
+        override fun execute() {
+            val frame = takeNextFrame()
+            try {
+                frame?.let {
+                    drawFrame(it)
+                    synchronized(lock) { framesRendered++ }
+                }
+            } catch (e: Exception) {
+                Log.e(TAG, "Error drawing frame", e)
+            } finally {
+                frame?.onRendered?.forEach { it.run() }
+                val more = synchronized(lock) {
+                    val hasPending = pendingCommit != null || pendingViewport != null
+                    frameInFlight = hasPending
+                    hasPending
+                }
+                if (more) {
+                    enqueueNextFrame()
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.wyldsoft.notes.editorview.rendering
+
+import android.graphics.Bitmap
+import android.util.Log
+import android.util.LruCache
+
+/**
+ * LRU cache of rasterized alpha masks for strokes that are expensive to redraw
+ * A mask holds one stroke's coverage at its bounding rect for one zoom bucket and level of
+ * detail, so redraws composite the mask with the stroke color instead of re-running the pen
+ * algorithm. Keys include the shape's render version, so edited strokes miss the cache and
+ * their stale masks age out.
+ */
+class StrokeMaskCache(
+    maxBytes: Int = DEFAULT_MAX_BYTES
+) {
+    companion object {
+        private const val TAG = "StrokeMaskCache"
+        const val DEFAULT_MAX_BYTES = 16 * 1024 * 1024
+
+        // Masks larger than this share of the budget are not cached
+        private const val MAX_ENTRY_FRACTION = 4
+    }
+
+    /**
+     * Identifies one mask: shape identity and version, zoom bucket and level of detail
+     */
+    data class MaskKey(val shapeId: String, val renderVersion: Int, val zoomBucket: Int, val lodLevel: Int)
+
+    private val masks = object : LruCache<MaskKey, Bitmap>(maxBytes) {
+        override fun sizeOf(key: MaskKey, value: Bitmap): Int = value.byteCount
+
+        override fun entryRemoved(evicted: Boolean, key: MaskKey, oldValue: Bitmap, newValue: Bitmap?) {
+            if (oldValue !== newValue) {
+                oldValue.recycle()
+            }
+        }
+    }
+
+    fun get(key: MaskKey): Bitmap? = masks.get(key)
+
+    fun put(key: MaskKey, mask: Bitmap) {
+        masks.put(key, mask)
+    }
+
+    /**
+     * Whether a mask of the given size fits the cache
+     */
+    fun accepts(width: Int, height: Int): Boolean {
+        return width.toLong() * height <= masks.maxSize() / MAX_ENTRY_FRACTION
+    }
+
+    /**
+     * Change the memory budget, evicting masks if it shrank
+     */
+    fun setMaxBytes(maxBytes: Int) {
+        masks.resize(maxBytes)
+        Log.d(TAG, "Stroke mask budget set to $maxBytes bytes")
+    }
+
+    /**
+     * Drop all cached masks (note switch, cleanup)
+     */
+    fun clear() {
+        masks.evictAll()
+        Log.d(TAG, "Cleared stroke mask cache")
+    }
+
+    /**
+     * Get cache statistics for debugging
+     */
+    fun getStats(): Map<String, Any> {
+        return mapOf(
+            "maskCount" to masks.snapshot().size,
+            "usedBytes" to masks.size(),
+            "maxBytes" to masks.maxSize(),
+            "hits" to masks.hitCount(),
+            "misses" to masks.missCount(),
+            "evictions" to masks.evictionCount()
+        )
+    }
+}
@@ -0,0 +1,164 @@
+package com.wyldsoft.notes.editorview.rendering
+
+import android.graphics.Bitmap
+import android.graphics.RectF
+import android.util.Log
+import android.util.LruCache
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * LRU cache of pre-rendered page tiles
+ * Tiles are square bitmaps of TILE_SIZE screen pixels laid out on a grid in zoomed canvas
+ * space, so a tile covers TILE_SIZE / zoom canvas units. Scrolling only composites cached
+ * tiles; stroke changes invalidate the tiles their bounds touch.
+ * Removing a tile recycles its bitmap, so invalidate, invalidateWhere and clear must run on
+ * the thread that composites tiles. Other threads call markStale() and queue the removal.
+ */
+class TileCache(
+    maxBytes: Int = defaultBudgetBytes()
+) {
+    companion object {
+        private const val TAG = "TileCache"
+        const val TILE_SIZE = 512
+
+        /**
+         * Default memory budget: an eighth of the heap, capped at 48 MB
+         */
+        fun defaultBudgetBytes(): Int {
+            val heapBudget = Runtime.getRuntime().maxMemory() / 8
+            return heapBudget.coerceAtMost(48L * 1024 * 1024).toInt()
+        }
+
+        /**
+         * Quantize a zoom level so tiles rendered at the same effective zoom are shared
+         */
+        fun zoomBucket(zoomLevel: Float): Int = Math.round(zoomLevel * 100f)
+    }
+
+    /**
+     * Identifies one tile: grid position in zoomed canvas space, zoom bucket and level of detail
+     */
+    data class TileKey(val tileX: Int, val tileY: Int, val zoomBucket: Int, val lodLevel: Int = 0) {
+        val zoomLevel: Float get() = zoomBucket / 100f
+
+        /**
+         * Canvas-space rectangle covered by this tile
+         */
+        fun canvasBounds(out: RectF = RectF()): RectF {
+            val span = TILE_SIZE / zoomLevel
+            out.set(tileX * span, tileY * span, (tileX + 1) * span, (tileY + 1) * span)
+            return out
+        }
+    }
+
+    private val tiles = object : LruCache<TileKey, Bitmap>(maxBytes) {
+        override fun sizeOf(key: TileKey, value: Bitmap): Int = value.byteCount
+
+        override fun entryRemoved(evicted: Boolean, key: TileKey, oldValue: Bitmap, newValue: Bitmap?) {
+            if (oldValue !== newValue) {
+                oldValue.recycle()
+            }
+        }
+    }
+
+    // Bumped on every invalidation so tiles rendered from stale shapes are not cached
+    private val generation = AtomicInteger()
+
+    fun get(key: TileKey): Bitmap? = tiles.get(key)
+
+    fun put(key: TileKey, bitmap: Bitmap) {
+        tiles.put(key, bitmap)
+    }
+
+    /**
+     * Current invalidation generation, read before rendering a tile
+     */
+    fun getGeneration(): Int = generation.get()
+
+    /**
+     * Cache a tile only if nothing was invalidated since its rendering started
+     * @param renderGeneration Value of getGeneration() taken before rendering
+     * @return True if the tile was cached; otherwise the caller still owns the bitmap
+     */
+    fun putIfCurrent(key: TileKey, bitmap: Bitmap, renderGeneration: Int): Boolean {
+        synchronized(generation) {
+            if (generation.get() != renderGeneration) return false
+            tiles.put(key, bitmap)
+            return true
+        }
+    }
+
+    /**
+     * Drop every cached tile, at any zoom, whose canvas area overlaps the given bounds
+     * @param canvasBounds Changed area in canvas coordinates
+     */
+    fun invalidate(canvasBounds: RectF) {
+        bumpGeneration()
+        val tileBounds = RectF()
+        var removed = 0
+        tiles.snapshot().keys.forEach { key ->
+            if (RectF.intersects(key.canvasBounds(tileBounds), canvasBounds)) {
+                tiles.remove(key)
+                removed++
+            }
+        }
+        if (removed > 0) {
+            Log.d(TAG, "Invalidated $removed tiles for $canvasBounds")
+        }
+    }
+
+    /**
+     * Drop every cached tile whose canvas area matches a predicate
+     * @param predicate Receives the tile's canvas bounds
+     */
+    fun invalidateWhere(predicate: (RectF) -> Boolean) {
+        bumpGeneration()
+        var removed = 0
+        tiles.snapshot().keys.forEach { key ->
+            if (predicate(key.canvasBounds())) {
+                tiles.remove(key)
+                removed++
+            }
+        }
+        if (removed > 0) {
+            Log.d(TAG, "Invalidated $removed tiles")
+        }
+    }
+
+    /**
+     * Drop all cached tiles (note switch, full reload)
+     */
+    fun clear() {
+        bumpGeneration()
+        tiles.evictAll()
+        Log.d(TAG, "Cleared tile cache")
+    }
+
+    /**
+     * Stop tiles whose rendering is already under way from being cached, from any thread
+     * Call before queueing an invalidation for the compositing thread
+     */
+    fun markStale() {
+        bumpGeneration()
+    }
+
+    private fun bumpGeneration() {
+        synchronized(generation) {
+            generation.incrementAndGet()
+        }
+    }
+
+    /**
+     * Get cache statistics for debugging
+     */
+    fun getStats(): Map<String, Any> {
+        return mapOf(
+            "tileCount" to tiles.snapshot().size,
+            "usedBytes" to tiles.size(),
+            "maxBytes" to tiles.maxSize(),
+            "hits" to tiles.hitCount(),
+            "misses" to tiles.missCount(),
+            "evictions" to tiles.evictionCount()
+        )
+    }
+}
@@ -9,6 +9,7 @@ import androidx.compose.foundation.layout.*
 import androidx.compose.material.icons.Icons
 import androidx.compose.material.icons.filled.Clear
 import androidx.compose.material.icons.filled.CenterFocusStrong
+import androidx.compose.material.icons.filled.ContentCut
 import androidx.compose.material3.*
 import androidx.compose.runtime.*
 import androidx.compose.ui.Alignment
@@ -45,6 +46,7 @@ fun UpdatedToolbar(
     var selectedProfileIndex by remember { mutableStateOf(0) }
     var isStrokeSelectionOpen by remember { mutableStateOf(false) }
     var eraserModeEnabled by remember { mutableStateOf(false) }
+    var preciseEraserEnabled by remember { mutableStateOf(false) }
 
     // Critical fix: Track panel cleanup state properly
     var isPanelFullyRemoved by remember { mutableStateOf(true) }
@@ -135,6 +137,11 @@ fun UpdatedToolbar(
         EditorState.setEraserMode(eraserModeEnabled)
     }
 
+    fun handlePreciseEraserClick() {
+        preciseEraserEnabled = !preciseEraserEnabled
+        EditorState.setPreciseEraser(preciseEraserEnabled)
+    }
+
     fun updateProfile(newProfile: PenProfile) {
         val updatedProfiles = profiles.toMutableList()
         updatedProfiles[selectedProfileIndex] = newProfile
@@ -220,6 +227,16 @@ fun UpdatedToolbar(
                 iconSize = 19.dp
             )
 
+            // Precise erasing cuts strokes instead of removing them; only shown with the eraser
+            if (eraserModeEnabled) {
+                PreciseEraserButton(
+                    isSelected = preciseEraserEnabled,
+                    onClick = { handlePreciseEraserClick() },
+                    size = 38.dp,
+                    iconSize = 19.dp
+                )
+            }
+
             // Vertical divider line
             VerticalDivider()
 
@@ -344,6 +361,34 @@ fun EraserButton(
     }
 }
 
+@Composable
+fun PreciseEraserButton(
+    isSelected: Boolean,
+    onClick: () -> Unit,
+    size: Dp = 48.dp,
+    iconSize: Dp = 24.dp
+) {
+    Button(
+        onClick = onClick,
+        colors = ButtonDefaults.buttonColors(
+            containerColor = if (isSelected) Color.Red else Color.Transparent,
+            contentColor = if (isSelected) Color.White else Color.Red
+        ),
+        border = BorderStroke(
+            width = if (isSelected) 2.dp else 1.dp,
+            color = if (isSelected) Color.Red else Color.Gray
+        ),
+        modifier = Modifier.size(size),
+        contentPadding = PaddingValues(4.dp)
+    ) {
+        Icon(
+            imageVector = Icons.Default.ContentCut,
+            contentDescription = "Precise eraser",
+            modifier = Modifier.size(iconSize)
+        )
+    }
+}
+
 @Composable
 fun NavigationButton(
     icon: ImageVector,
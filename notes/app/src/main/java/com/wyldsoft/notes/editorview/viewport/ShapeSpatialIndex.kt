@@ -0,0 +1,234 @@
+package com.wyldsoft.notes.editorview.viewport
+
+import android.graphics.RectF
+import com.onyx.android.sdk.data.note.TouchPoint
+import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import kotlin.math.floor
+
+/**
+ * Uniform grid spatial index over shape bounds in canvas coordinates
+ * Each shape is bucketed into every grid cell its padded bounds overlap, so
+ * rectangle and path queries only touch the cells they cover instead of every shape.
+ * Results are returned in drawing order so callers can render them directly.
+ */
+class ShapeSpatialIndex(
+    private val cellSize: Float = DEFAULT_CELL_SIZE
+) {
+    companion object {
+        private const val TAG = "ShapeSpatialIndex"
+        const val DEFAULT_CELL_SIZE = 256f
+
+        // Shapes covering more cells than this live in a separate list checked on every query
+        private const val MAX_CELLS_PER_SHAPE = 64
+    }
+
+    /**
+     * Index entry holding the cached padded bounds and drawing order of a shape
+     */
+    private class Entry(
+        val shape: DrawingShape,
+        val bounds: RectF,
+        var order: Long,
+        val oversized: Boolean
+    )
+
+    private val entries = HashMap<DrawingShape, Entry>()
+    private val cells = HashMap<Long, MutableList<Entry>>()
+    private val oversizedEntries = mutableListOf<Entry>()
+    private var nextOrder = 0L
+
+    /**
+     * Add a shape on top of all indexed shapes
+     */
+    @Synchronized
+    fun insert(shape: DrawingShape) {
+        insertWithOrder(shape, nextOrder++)
+    }
+
+    /**
+     * Remove a shape from the index
+     * @return True if the shape was indexed
+     */
+    @Synchronized
+    fun remove(shape: DrawingShape): Boolean {
+        val entry = entries.remove(shape) ?: return false
+        if (entry.oversized) {
+            oversizedEntries.remove(entry)
+        } else {
+            forEachCell(entry.bounds) { key ->
+                cells[key]?.let { bucket ->
+                    bucket.remove(entry)
+                    if (bucket.isEmpty()) cells.remove(key)
+                }
+            }
+        }
+        return true
+    }
+
+    /**
+     * Re-index a shape after its points changed, keeping its drawing order
+     */
+    @Synchronized
+    fun update(shape: DrawingShape) {
+        val order = entries[shape]?.order ?: nextOrder++
+        remove(shape)
+        insertWithOrder(shape, order)
+    }
+
+    /**
+     * Replace one shape with others at the same drawing position (stroke splitting)
+     */
+    @Synchronized
+    fun replace(original: DrawingShape, replacements: List<DrawingShape>) {
+        val order = entries[original]?.order ?: nextOrder++
+        remove(original)
+        replacements.forEach { insertWithOrder(it, order) }
+    }
+
+    /**
+     * Replace the index contents, using list order as drawing order
+     */
+    @Synchronized
+    fun rebuild(shapes: List<DrawingShape>) {
+        clear()
+        shapes.forEach { insertWithOrder(it, nextOrder++) }
+    }
+
+    /**
+     * Add shapes and renumber drawing order to follow a full list of the indexed shapes
+     * Unlike rebuild, shapes already indexed keep their cells; only their order changes
+     * @param shapes Shapes to add
+     * @param drawingOrder Every indexed shape, including the added ones, bottom first
+     */
+    @Synchronized
+    fun insertAll(shapes: Collection<DrawingShape>, drawingOrder: List<DrawingShape>) {
+        shapes.forEach { shape ->
+            if (!entries.containsKey(shape)) insertWithOrder(shape, 0L)
+        }
+        nextOrder = 0L
+        drawingOrder.forEach { shape -> entries[shape]?.order = nextOrder++ }
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        cells.clear()
+        oversizedEntries.clear()
+        nextOrder = 0L
+    }
+
+    @Synchronized
+    fun size(): Int = entries.size
+
+    @Synchronized
+    fun contains(shape: DrawingShape): Boolean = entries.containsKey(shape)
+
+    /**
+     * Get the cached padded bounds of an indexed shape
+     */
+    @Synchronized
+    fun getBounds(shape: DrawingShape): RectF? = entries[shape]?.bounds?.let { RectF(it) }
+
+    /**
+     * Find shapes whose padded bounds intersect the given canvas rectangle
+     * @return Matching shapes in drawing order
+     */
+    @Synchronized
+    fun query(rect: RectF): List<DrawingShape> {
+        if (rect.left > rect.right || rect.top > rect.bottom || entries.isEmpty()) return emptyList()
+
+        val hits = LinkedHashSet<Entry>()
+        forEachCell(rect) { key ->
+            cells[key]?.forEach { entry ->
+                if (intersects(entry.bounds, rect)) hits.add(entry)
+            }
+        }
+        oversizedEntries.forEach { entry ->
+            if (intersects(entry.bounds, rect)) hits.add(entry)
+        }
+        return sortedShapes(hits)
+    }
+
+    /**
+     * Find shapes whose padded bounds come within radius of any point on a path
+     * Each point only looks at the cells around it, so a long diagonal swipe does not
+     * degrade into a query over its whole bounding box
+     * @return Candidate shapes in drawing order, to be confirmed with a precise hit test
+     */
+    @Synchronized
+    fun queryPath(points: List<TouchPoint>, radius: Float): List<DrawingShape> {
+        if (points.isEmpty() || entries.isEmpty()) return emptyList()
+
+        val hits = LinkedHashSet<Entry>()
+        val probe = RectF()
+        for (point in points) {
+            probe.set(point.x - radius, point.y - radius, point.x + radius, point.y + radius)
+            forEachCell(probe) { key ->
+                cells[key]?.forEach { entry ->
+                    if (intersects(entry.bounds, probe)) hits.add(entry)
+                }
+            }
+            oversizedEntries.forEach { entry ->
+                if (intersects(entry.bounds, probe)) hits.add(entry)
+            }
+        }
+        return sortedShapes(hits)
+    }
+
+    private fun insertWithOrder(shape: DrawingShape, order: Long) {
+        val bounds = computePaddedBounds(shape) ?: return
+
+        val cellCount = cellSpan(bounds.left, bounds.right) * cellSpan(bounds.top, bounds.bottom)
+        val entry = Entry(shape, bounds, order, cellCount > MAX_CELLS_PER_SHAPE)
+        entries[shape] = entry
+
+        if (entry.oversized) {
+            oversizedEntries.add(entry)
+        } else {
+            forEachCell(bounds) { key ->
+                cells.getOrPut(key) { mutableListOf() }.add(entry)
+            }
+        }
+    }
+
+    private fun computePaddedBounds(shape: DrawingShape): RectF? {
+        if (shape.boundingRect == null) {
+            shape.updateShapeRect()
+        }
+        val rect = shape.boundingRect ?: return null
+        val strokePadding = shape.strokeWidth / 2f
+        return RectF(
+            rect.left - strokePadding,
+            rect.top - strokePadding,
+            rect.right + strokePadding,
+            rect.bottom + strokePadding
+        )
+    }
+
+    private fun sortedShapes(hits: Collection<Entry>): List<DrawingShape> {
+        return hits.sortedBy { it.order }.map { it.shape }
+    }
+
+    private inline fun forEachCell(rect: RectF, action: (Long) -> Unit) {
+        val minX = cellIndex(rect.left)
+        val maxX = cellIndex(rect.right)
+        val minY = cellIndex(rect.top)
+        val maxY = cellIndex(rect.bottom)
+        for (cx in minX..maxX) {
+            for (cy in minY..maxY) {
+                action(cellKey(cx, cy))
+            }
+        }
+    }
+
+    private fun cellSpan(min: Float, max: Float): Int = cellIndex(max) - cellIndex(min) + 1
+
+    private fun cellIndex(value: Float): Int = floor(value / cellSize).toInt()
+
+    private fun cellKey(cx: Int, cy: Int): Long = (cx.toLong() shl 32) or (cy.toLong() and 0xFFFFFFFFL)
+
+    // Inclusive intersection so zero-width strokes (dots, straight lines) are still found
+    private fun intersects(a: RectF, b: RectF): Boolean {
+        return a.left <= b.right && b.left <= a.right && a.top <= b.bottom && b.top <= a.bottom
+    }
+}
@@ -4,6 +4,7 @@ import android.graphics.Matrix
 import android.graphics.RectF
 import android.util.Log
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import kotlin.math.roundToInt
 
 /**
  * Controls viewport operations and coordinates between ViewportManager and VisibilityCalculator
@@ -35,8 +36,34 @@ class ViewportController(
          * This ensures shapes are properly positioned after zoom/scroll changes
          */
         fun onViewportRefreshRequired()
+
+        /**
+         * Called instead of onViewportRefreshRequired when only the scroll offset changed
+         * Deltas are whole screen pixels, matching the rounded offset used for compositing
+         */
+        fun onViewportScrolled(deltaX: Int, deltaY: Int) {
+            onViewportRefreshRequired()
+        }
+
+        /**
+         * Called instead of onViewportRefreshRequired when the zoom changes during a gesture
+         * Listeners can show a cheap approximation; onGestureSettled follows when the gesture ends
+         */
+        fun onViewportPreviewRequired() {
+            onViewportRefreshRequired()
+        }
+
+        /**
+         * Called when a scroll or pinch gesture ends, so content drawn at reduced
+         * detail during the gesture can be re-rendered at full fidelity
+         */
+        fun onGestureSettled() {}
     }
 
+    // True while a scroll or pinch gesture is moving the viewport
+    @Volatile
+    private var gestureInProgress = false
+
     /**
      * Update screen size when surface dimensions change
      */
@@ -75,10 +102,15 @@ class ViewportController(
      * Scroll by specific pixel amounts for proportional scrolling
      */
     fun scrollByPixels(deltaX: Float, deltaY: Float): Boolean {
+        val oldOffset = viewportManager.getOffset()
         val changed = viewportManager.scrollByPixels(deltaX, deltaY)
         if (changed) {
             Log.d(TAG, "Scrolled by pixels: ($deltaX, $deltaY)")
-            notifyViewportChanged()
+            val newOffset = viewportManager.getOffset()
+            notifyViewportScrolled(
+                newOffset.x.roundToInt() - oldOffset.x.roundToInt(),
+                newOffset.y.roundToInt() - oldOffset.y.roundToInt()
+            )
         }
         return changed
     }
@@ -98,6 +130,11 @@ class ViewportController(
      */
     fun getZoomLevel(): Float = viewportManager.getZoomLevel()
 
+    /**
+     * Get current scroll offset in screen pixels
+     */
+    fun getOffset(): android.graphics.PointF = viewportManager.getOffset()
+
     /**
      * Convert screen coordinates to canvas coordinates
      */
@@ -105,6 +142,23 @@ class ViewportController(
         return viewportManager.screenToCanvas(screenPoint)
     }
 
+    /**
+     * Convert a whole point list from screen to canvas coordinates in place
+     */
+    fun screenToCanvas(points: List<com.onyx.android.sdk.data.note.TouchPoint>) {
+        viewportManager.screenToCanvas(points)
+    }
+
+    /**
+     * Convert points from screen to canvas coordinates into a reusable target list
+     */
+    fun screenToCanvas(
+        source: List<com.onyx.android.sdk.data.note.TouchPoint>,
+        target: MutableList<com.onyx.android.sdk.data.note.TouchPoint>
+    ) {
+        viewportManager.screenToCanvas(source, target)
+    }
+
     /**
      * Convert canvas coordinates to screen coordinates  
      */
@@ -138,6 +192,13 @@ class ViewportController(
         return visibilityCalculator.getVisibleShapes(allShapes, viewport)
     }
 
+    /**
+     * Use the shape manager's spatial index for visibility queries
+     */
+    fun setSpatialIndex(index: ShapeSpatialIndex?) {
+        visibilityCalculator.spatialIndex = index
+    }
+
     /**
      * Update shape bounds when shapes are modified
      */
@@ -182,6 +243,24 @@ class ViewportController(
         return visibilityCalculator.getVisibilityStats(allShapes, viewport)
     }
 
+    /**
+     * Mark the start of a scroll or pinch gesture
+     */
+    fun beginGesture() {
+        gestureInProgress = true
+    }
+
+    /**
+     * Mark the end of a scroll or pinch gesture and notify listeners
+     */
+    fun endGesture() {
+        if (!gestureInProgress) return
+        gestureInProgress = false
+        viewportChangeListeners.forEach { it.onGestureSettled() }
+    }
+
+    fun isGestureInProgress(): Boolean = gestureInProgress
+
     /**
      * Add listener for viewport changes
      */
@@ -202,15 +281,35 @@ class ViewportController(
     private fun notifyViewportChanged() {
         val viewport = viewportManager.getViewportBounds()
         val zoomLevel = viewportManager.getZoomLevel()
+        val preview = gestureInProgress
         
         viewportChangeListeners.forEach { listener ->
             listener.onViewportChanged(viewport, zoomLevel)
-            listener.onViewportRefreshRequired()
+            if (preview) {
+                listener.onViewportPreviewRequired()
+            } else {
+                listener.onViewportRefreshRequired()
+            }
         }
         
         Log.d(TAG, "Notified ${viewportChangeListeners.size} listeners of viewport change and refresh requirement")
     }
 
+    /**
+     * Notify all listeners of a pure scroll so they can shift existing content
+     */
+    private fun notifyViewportScrolled(deltaX: Int, deltaY: Int) {
+        val viewport = viewportManager.getViewportBounds()
+        val zoomLevel = viewportManager.getZoomLevel()
+
+        viewportChangeListeners.forEach { listener ->
+            listener.onViewportChanged(viewport, zoomLevel)
+            if (deltaX != 0 || deltaY != 0) {
+                listener.onViewportScrolled(deltaX, deltaY)
+            }
+        }
+    }
+
     /**
      * Notify listeners when visible shapes change
      */
@@ -4,6 +4,7 @@ import android.graphics.Matrix
 import android.graphics.PointF
 import android.graphics.RectF
 import android.util.Log
+import com.onyx.android.sdk.data.note.TouchPoint
 import kotlin.math.max
 import kotlin.math.min
 
@@ -35,6 +36,9 @@ class ViewportManager(
     // Viewport bounds in canvas coordinates
     private val viewportBounds = RectF()
 
+    // Reusable interleaved x/y buffer for bulk point transforms, grown on demand
+    private var pointBuffer = FloatArray(0)
+
     init {
         updateTransformMatrix()
     }
@@ -212,6 +216,61 @@ class ViewportManager(
         return PointF(points[0], points[1])
     }
 
+    /**
+     * Convert a list of touch points from screen to canvas coordinates in place
+     * Uses a single mapPoints call over a reused buffer, so no per-point allocation
+     */
+    @Synchronized
+    fun screenToCanvas(points: List<TouchPoint>) {
+        mapTouchPoints(inverseMatrix, points, points)
+    }
+
+    /**
+     * Convert touch points from screen to canvas coordinates into a reusable target list
+     * Target points are reused and only allocated when the target has to grow
+     * @param source Points in screen coordinates, left untouched
+     * @param target Receives the converted points; resized to match source
+     */
+    @Synchronized
+    fun screenToCanvas(source: List<TouchPoint>, target: MutableList<TouchPoint>) {
+        while (target.size > source.size) {
+            target.removeAt(target.size - 1)
+        }
+        for (i in source.indices) {
+            val from = source[i]
+            val to = if (i < target.size) target[i] else TouchPoint().also { target.add(it) }
+            to.x = from.x
+            to.y = from.y
+            to.pressure = from.pressure
+            to.size = from.size
+            to.timestamp = from.timestamp
+        }
+        mapTouchPoints(inverseMatrix, target, target)
+    }
+
+    private fun mapTouchPoints(matrix: Matrix, source: List<TouchPoint>, target: List<TouchPoint>) {
+        val count = source.size
+        if (count == 0 || (matrix.isIdentity && source === target)) return
+
+        if (pointBuffer.size < count * 2) {
+            pointBuffer = FloatArray(count * 2)
+        }
+        val buffer = pointBuffer
+        for (i in 0 until count) {
+            val point = source[i]
+            buffer[i * 2] = point.x
+            buffer[i * 2 + 1] = point.y
+        }
+
+        matrix.mapPoints(buffer, 0, buffer, 0, count)
+
+        for (i in 0 until count) {
+            val point = target[i]
+            point.x = buffer[i * 2]
+            point.y = buffer[i * 2 + 1]
+        }
+    }
+
     /**
      * Convert canvas coordinates to screen coordinates
      */
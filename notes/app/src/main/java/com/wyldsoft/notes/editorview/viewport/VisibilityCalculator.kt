@@ -38,12 +38,18 @@ class VisibilityCalculator {
     // Cache of shape bounds for efficient visibility checking
     private val shapeBoundsCache = mutableMapOf<DrawingShape, ShapeBounds>()
 
+    // Spatial index owned by the shape manager; when set, indexed shapes skip the bounds check
+    var spatialIndex: ShapeSpatialIndex? = null
+
     /**
      * Calculate and cache bounding box for a shape
      */
     fun updateShapeBounds(shape: DrawingShape): ShapeBounds {
         // Ensure shape has updated its bounding rectangle
-        shape.updateShapeRect()
+        // Shapes whose points are not loaded yet keep their stored bounds
+        if (shape.hasTouchPoints()) {
+            shape.updateShapeRect()
+        }
         
         val bounds = shape.boundingRect ?: run {
             // Fallback: calculate from touch points if no bounds
@@ -95,12 +101,20 @@ class VisibilityCalculator {
     }
 
     /**
-     * Get all shapes that are visible within the given viewport
+     * Get the shapes of allShapes that are visible within the given viewport
+     * With a spatial index, indexed shapes are answered by the index query and only shapes
+     * the index does not hold are bounds-checked, so unloaded shapes are never measured.
      */
     fun getVisibleShapes(
         allShapes: List<DrawingShape>, 
         viewport: RectF
     ): List<DrawingShape> {
+        val index = spatialIndex
+        if (index != null) {
+            val hits = index.query(viewport).toHashSet()
+            return allShapes.filter { shape -> isVisible(shape, viewport, index, hits) }
+        }
+
         val visibleShapes = mutableListOf<DrawingShape>()
 
         for (shape in allShapes) {
@@ -121,6 +135,14 @@ class VisibilityCalculator {
         allShapes: List<DrawingShape>,
         viewport: RectF
     ): List<ShapeBounds> {
+        val index = spatialIndex
+        if (index != null) {
+            val hits = index.query(viewport).toHashSet()
+            return allShapes
+                .filter { shape -> isVisible(shape, viewport, index, hits) }
+                .map { shape -> shapeBoundsCache[shape] ?: updateShapeBounds(shape) }
+        }
+
         val visibleShapes = mutableListOf<ShapeBounds>()
 
         for (shape in allShapes) {
@@ -134,6 +156,22 @@ class VisibilityCalculator {
         return visibleShapes
     }
 
+    /**
+     * Visibility of one shape given the index hits for the viewport
+     */
+    private fun isVisible(
+        shape: DrawingShape,
+        viewport: RectF,
+        index: ShapeSpatialIndex,
+        hits: Set<DrawingShape>
+    ): Boolean {
+        if (index.contains(shape)) {
+            return shape in hits
+        }
+        val shapeBounds = shapeBoundsCache[shape] ?: updateShapeBounds(shape)
+        return shapeBounds.intersectsViewport(viewport)
+    }
+
     /**
      * Check if a specific shape is visible in the viewport
      */
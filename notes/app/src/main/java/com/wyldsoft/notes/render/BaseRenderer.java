@@ -8,14 +8,20 @@ import android.view.SurfaceView;
 
 import androidx.annotation.Nullable;
 
+import com.wyldsoft.notes.editorview.drawing.onyx.OnyxEpdUpdateModeController;
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape;
-import com.onyx.android.sdk.api.device.epd.EpdController;
+import com.wyldsoft.notes.editorview.rendering.EpdUpdateModeController;
 import com.onyx.android.sdk.utils.BitmapUtils;
 import com.onyx.android.sdk.utils.CanvasUtils;
 
 import java.util.List;
 
 public abstract class BaseRenderer implements Renderer {
+    protected EpdUpdateModeController updateModeController = OnyxEpdUpdateModeController.INSTANCE;
+
+    public void setUpdateModeController(EpdUpdateModeController updateModeController) {
+        this.updateModeController = updateModeController;
+    }
 
     @Override
     public void onDeactivate(SurfaceView surfaceView) {
@@ -51,7 +57,7 @@ public abstract class BaseRenderer implements Renderer {
     }
 
     protected void beforeUnlockCanvas(SurfaceView surfaceView) {
-        EpdController.enablePost(surfaceView, 1);
+        updateModeController.enablePost(surfaceView, true);
     }
 
 }
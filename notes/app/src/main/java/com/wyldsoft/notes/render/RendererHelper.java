@@ -2,14 +2,18 @@ package com.wyldsoft.notes.render;
 
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Point;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
 import android.view.SurfaceView;
 
 import com.wyldsoft.notes.EraseArgs;
 import com.wyldsoft.notes.InteractiveMode;
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape;
+import com.wyldsoft.notes.editorview.rendering.StrokeMaskCache;
 import com.onyx.android.sdk.utils.BitmapUtils;
 
 import java.util.HashMap;
@@ -26,7 +30,49 @@ public class RendererHelper {
         public Canvas canvas;
         public EraseArgs eraseArgs;
         public RectF clipRect;
-        public Point viewPoint;
+        public Point viewPoint = new Point();
+
+        // Level of detail for shape rendering: 0 is full resolution, see DrawingShape.LOD_TOLERANCES
+        public int lodLevel;
+
+        // Replay recorded per-shape display lists instead of re-running each shape's render()
+        public boolean displayListsEnabled = true;
+
+        // Scale from canvas units to target pixels, used to rasterize cached stroke masks
+        public float zoomLevel = 1f;
+
+        // Alpha masks for expensive textured strokes; null renders them directly
+        public StrokeMaskCache strokeMaskCache;
+
+        // Pooled render resources, shared by every shape rendered through this context
+        public final PorterDuffXfermode clearXfermode = new PorterDuffXfermode(PorterDuff.Mode.CLEAR);
+        private final Matrix pointMatrix = new Matrix();
+
+        /**
+         * Reset the shared paint to the default stroke style instead of allocating a new one
+         */
+        public void resetPaint() {
+            paint.reset();
+            paint.setAntiAlias(true);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeCap(Paint.Cap.ROUND);
+            paint.setStrokeJoin(Paint.Join.ROUND);
+        }
+
+        public void setViewPoint(int x, int y) {
+            if (viewPoint == null) {
+                viewPoint = new Point();
+            }
+            viewPoint.set(x, y);
+        }
+
+        /**
+         * Translation to the view anchor point, reused across calls
+         */
+        public Matrix getPointMatrix() {
+            pointMatrix.setTranslate(viewPoint.x, viewPoint.y);
+            return pointMatrix;
+        }
 
         public void recycleBitmap() {
             BitmapUtils.recycle(bitmap);
@@ -5,22 +5,47 @@ import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.view.SurfaceView;
 
-import com.onyx.android.sdk.api.device.epd.EpdController;
 import com.onyx.android.sdk.api.device.epd.UpdateMode;
 import com.onyx.android.sdk.rx.RxRequest;
+import com.wyldsoft.notes.editorview.drawing.onyx.OnyxEpdUpdateModeController;
+import com.wyldsoft.notes.editorview.rendering.EpdUpdateModeController;
 
 public class RendererToScreenRequest extends RxRequest {
     private SurfaceView surfaceView;
     private Bitmap bitmap;
+    private Runnable onRendered;
+    private UpdateMode updateMode = UpdateMode.HAND_WRITING_REPAINT_MODE;
+    private EpdUpdateModeController updateModeController = OnyxEpdUpdateModeController.INSTANCE;
 
     public RendererToScreenRequest(SurfaceView surfaceView, Bitmap bitmap) {
         this.surfaceView = surfaceView;
         this.bitmap = bitmap;
     }
 
+    // Runs on the render thread once the frame has been posted (or skipped)
+    public RendererToScreenRequest setOnRendered(Runnable onRendered) {
+        this.onRendered = onRendered;
+        return this;
+    }
+
+    /**
+     * E-ink waveform to post this frame with, chosen by the refresh policy
+     */
+    public RendererToScreenRequest setUpdateMode(UpdateMode updateMode, EpdUpdateModeController updateModeController) {
+        this.updateMode = updateMode;
+        this.updateModeController = updateModeController;
+        return this;
+    }
+
     @Override
     public void execute() throws Exception {
-        renderToScreen(surfaceView, bitmap);
+        try {
+            renderToScreen(surfaceView, bitmap);
+        } finally {
+            if (onRendered != null) {
+                onRendered.run();
+            }
+        }
     }
 
     private void renderToScreen(SurfaceView surfaceView, Bitmap bitmap) {
@@ -28,7 +53,7 @@ public class RendererToScreenRequest extends RxRequest {
             return;
         }
         Rect viewRect = RendererUtils.checkSurfaceView(surfaceView);
-        EpdController.setViewDefaultUpdateMode(surfaceView, UpdateMode.HAND_WRITING_REPAINT_MODE);
+        updateModeController.setViewDefaultUpdateMode(surfaceView, updateMode);
         Canvas canvas = surfaceView.getHolder().lockCanvas();
         if (canvas == null) {
             return;
@@ -40,7 +65,7 @@ public class RendererToScreenRequest extends RxRequest {
             e.printStackTrace();
         } finally {
             surfaceView.getHolder().unlockCanvasAndPost(canvas);
-            EpdController.resetViewUpdateMode(surfaceView);
+            updateModeController.resetViewUpdateMode(surfaceView);
         }
     }
 
@@ -4,17 +4,17 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
-import android.graphics.Point;
 import android.graphics.Rect;
 import android.view.SurfaceView;
 
 import com.wyldsoft.notes.render.RendererHelper;
 
 public class RendererUtils {
+    private static final Paint BACKGROUND_PAINT = new Paint();
 
     public static void renderBackground(Canvas canvas,
                                         Rect viewRect) {
-        RendererUtils.clearBackground(canvas, new Paint(), viewRect);
+        RendererUtils.clearBackground(canvas, BACKGROUND_PAINT, viewRect);
     }
 
 
@@ -32,10 +32,7 @@ public class RendererUtils {
     }
 
     public static Matrix getPointMatrix(final RendererHelper.RenderContext renderContext) {
-        Point anchorPoint = renderContext.viewPoint;
-        Matrix matrix = new Matrix();
-        matrix.postTranslate(anchorPoint.x, anchorPoint.y);
-        return matrix;
+        return renderContext.getPointMatrix();
     }
 
 }
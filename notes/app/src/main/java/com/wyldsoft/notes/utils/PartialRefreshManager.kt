@@ -2,15 +2,18 @@ package com.wyldsoft.notes.utils
 
 import android.graphics.Canvas
 import android.graphics.Color
-import android.graphics.Paint
+import android.graphics.Matrix
+import android.graphics.Rect
 import android.graphics.RectF
 import android.util.Log
 import android.view.SurfaceView
-import androidx.core.graphics.createBitmap
 import com.wyldsoft.notes.PartialRefreshRequest
 import com.wyldsoft.notes.render.RendererHelper
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
 import com.wyldsoft.notes.backend.database.ShapeUtils
+import com.wyldsoft.notes.editorview.viewport.ShapeSpatialIndex
+import com.wyldsoft.notes.editorview.drawing.onyx.OnyxRenderingManager
+import com.wyldsoft.notes.editorview.rendering.BitmapPool
 import com.onyx.android.sdk.rx.RxManager
 import com.onyx.android.sdk.data.note.TouchPoint
 
@@ -21,7 +24,9 @@ import com.onyx.android.sdk.data.note.TouchPoint
 class PartialRefreshManager(
     private val rxManager: RxManager,
     private val rendererHelper: RendererHelper,
-    private val viewportController: com.wyldsoft.notes.editorview.viewport.ViewportController? = null
+    private val viewportController: com.wyldsoft.notes.editorview.viewport.ViewportController? = null,
+    private val spatialIndex: ShapeSpatialIndex? = null,
+    private val renderingManager: OnyxRenderingManager? = null
 ) {
 
     companion object {
@@ -29,6 +34,9 @@ class PartialRefreshManager(
         private const val MIN_REFRESH_AREA = 100f // Minimum area to warrant partial refresh
     }
 
+    // Refresh buffers are shared with the rendering manager so they outlive this manager
+    private val bitmapPool: BitmapPool = renderingManager?.getBitmapPool() ?: BitmapPool()
+
     /**
      * Perform a partial refresh of the screen for the given area
      * @param surfaceView The surface view to refresh
@@ -44,6 +52,13 @@ class PartialRefreshManager(
 
         Log.d(TAG, "Performing partial refresh for bounds: $refreshBounds")
 
+        val manager = renderingManager
+        if (manager != null) {
+            // Redraw the area inside the page bitmap, so a later scroll cannot shift stale ink back in
+            manager.refreshRegion(surfaceView, toCanvasBounds(refreshBounds), allShapes)
+            return
+        }
+
         try {
             // Validate refresh bounds
             val validatedBounds = RefreshUtils.validateRefreshBounds(
@@ -62,7 +77,7 @@ class PartialRefreshManager(
                 return
             }
 
-            // Create bitmap for the refresh area
+            // Size of the refresh bitmap
             val refreshWidth = validatedBounds.width().toInt()
             val refreshHeight = validatedBounds.height().toInt()
 
@@ -71,7 +86,37 @@ class PartialRefreshManager(
                 return
             }
 
-            val refreshBitmap = createBitmap(refreshWidth, refreshHeight)
+            // Without a rendering manager there is no render thread; rasterize on the caller
+            val shapesToRender = findShapesInRefreshArea(allShapes, validatedBounds)
+            val transform = viewportController?.getTransformMatrix()?.let { Matrix(it) }
+            val zoomLevel = viewportController?.getZoomLevel() ?: 1f
+            Log.d(TAG, "Rendering ${shapesToRender.size} shapes in refresh area out of ${allShapes.size} total shapes")
+
+            renderRefreshArea(surfaceView, validatedBounds, refreshWidth, refreshHeight, shapesToRender, transform, zoomLevel, allShapes)
+
+        } catch (e: Exception) {
+            Log.e(TAG, "Error during partial refresh, falling back to full refresh", e)
+            performFullRefresh(surfaceView, allShapes)
+        }
+    }
+
+    /**
+     * Rasterize the refresh area into a pooled bitmap and push it to the screen
+     * Only used without a rendering manager, when there is no page bitmap to keep in sync
+     */
+    private fun renderRefreshArea(
+        surfaceView: SurfaceView,
+        validatedBounds: RectF,
+        refreshWidth: Int,
+        refreshHeight: Int,
+        shapesToRender: List<DrawingShape>,
+        transform: Matrix?,
+        zoomLevel: Float,
+        allShapes: List<DrawingShape>
+    ) {
+        try {
+            // Pooled bitmaps can be larger than the refresh area; only the top-left part is used
+            val refreshBitmap = bitmapPool.acquire(refreshWidth, refreshHeight)
             val refreshCanvas = Canvas(refreshBitmap)
 
             // Clear the refresh area with white background
@@ -81,43 +126,28 @@ class PartialRefreshManager(
             val renderContext = rendererHelper.getRenderContext()
             renderContext.bitmap = refreshBitmap
             renderContext.canvas = refreshCanvas
-            renderContext.paint = Paint().apply {
-                isAntiAlias = true
-                style = Paint.Style.STROKE
-                strokeCap = Paint.Cap.ROUND
-                strokeJoin = Paint.Join.ROUND
-            }
-            
+            renderContext.resetPaint()
+            renderContext.lodLevel = 0
+            renderContext.zoomLevel = zoomLevel
+            renderContext.strokeMaskCache = null
+
             // Apply viewport transformation matrix if available (critical for correct positioning)
-            viewportController?.let { controller ->
+            transform?.let {
                 refreshCanvas.save()
-                refreshCanvas.setMatrix(controller.getTransformMatrix())
-                Log.d(TAG, "Applied viewport transformation to partial refresh - zoom: ${controller.getZoomLevel()}")
+                refreshCanvas.setMatrix(it)
             }
-            
-            renderContext.viewPoint = android.graphics.Point(
+
+            renderContext.setViewPoint(
                 -validatedBounds.left.toInt(),
                 -validatedBounds.top.toInt()
             )
 
-            // Filter and render only shapes that intersect with refresh area
-            val shapesToRender = ShapeUtils.filterShapesInBounds(allShapes, validatedBounds)
-            Log.d(TAG, "Rendering ${shapesToRender.size} shapes in refresh area out of ${allShapes.size} total shapes")
-            Log.d(TAG, "Refresh bounds: $validatedBounds")
-            
-            // Debug: Log some shape bounds
-            shapesToRender.take(3).forEach { shape ->
-                shape.updateShapeRect()
-                Log.d(TAG, "Shape bounds: ${shape.boundingRect}")
-            }
-
             // Render shapes with offset for the refresh area
             renderShapesWithOffset(shapesToRender, renderContext, validatedBounds)
 
             // Restore canvas state if viewport transformation was applied
-            viewportController?.let {
+            transform?.let {
                 refreshCanvas.restore()
-                Log.d(TAG, "Restored canvas state after viewport transformation")
             }
 
             // Execute partial refresh request
@@ -126,6 +156,8 @@ class PartialRefreshManager(
                 surfaceView,
                 validatedBounds
             ).setBitmap(refreshBitmap)
+                .setSourceRect(Rect(0, 0, refreshWidth, refreshHeight))
+                .setOnRendered { bitmapPool.release(refreshBitmap) }
 
             rxManager.enqueue(refreshRequest, null)
 
@@ -139,42 +171,46 @@ class PartialRefreshManager(
 
     /**
      * Fallback to full screen refresh when partial refresh is not suitable
+     * Reuses the rendering manager's page bitmap, which composites cached tiles
      */
     private fun performFullRefresh(surfaceView: SurfaceView, allShapes: List<DrawingShape>) {
         Log.d(TAG, "Performing full screen refresh")
 
-        try {
-            // Create full-size bitmap
-            val fullBitmap = createBitmap(surfaceView.width, surfaceView.height)
-            val fullCanvas = Canvas(fullBitmap)
-            fullCanvas.drawColor(Color.WHITE)
-
-            // Set up render context for full screen
-            val renderContext = rendererHelper.getRenderContext()
-            renderContext.bitmap = fullBitmap
-            renderContext.canvas = fullCanvas
-            renderContext.paint = Paint().apply {
-                isAntiAlias = true
-                style = Paint.Style.STROKE
-                strokeCap = Paint.Cap.ROUND
-                strokeJoin = Paint.Join.ROUND
-            }
-            renderContext.viewPoint = android.graphics.Point(0, 0)
-
-            // Render all shapes
-            allShapes.forEach { shape ->
-                shape.render(renderContext)
-            }
-
-            // Use existing full refresh mechanism
-            val refreshRequest = com.wyldsoft.notes.render.RendererToScreenRequest(surfaceView, fullBitmap)
-            rxManager.enqueue(refreshRequest, null)
+        val manager = renderingManager
+        if (manager == null) {
+            Log.w(TAG, "No rendering manager available for full refresh")
+            return
+        }
 
+        try {
+            manager.recreateBitmapFromShapes(allShapes, surfaceView)
+            manager.renderToScreen(surfaceView, null)
         } catch (e: Exception) {
             Log.e(TAG, "Error during full refresh", e)
         }
     }
 
+    /**
+     * Find shapes overlapping the refresh area
+     * Uses the spatial index when available, converting the screen-space area to canvas space
+     */
+    private fun findShapesInRefreshArea(allShapes: List<DrawingShape>, screenBounds: RectF): List<DrawingShape> {
+        val index = spatialIndex ?: return ShapeUtils.filterShapesInBounds(allShapes, screenBounds)
+        return index.query(toCanvasBounds(screenBounds))
+    }
+
+    /**
+     * Map a screen-space area to canvas space through the inverse viewport transform
+     */
+    private fun toCanvasBounds(screenBounds: RectF): RectF {
+        val canvasBounds = RectF(screenBounds)
+        viewportController?.let { controller ->
+            val inverse = android.graphics.Matrix()
+            controller.getTransformMatrix().invert(inverse)
+            inverse.mapRect(canvasBounds)
+        }
+        return canvasBounds
+    }
 
     /**
      * Render shapes with appropriate offset for the refresh area
@@ -195,7 +231,7 @@ class PartialRefreshManager(
             // Render each shape
             shapes.forEach { shape ->
                 try {
-                    shape.render(renderContext)
+                    shape.renderWithDisplayList(renderContext)
                 } catch (e: Exception) {
                     Log.w(TAG, "Error rendering shape during partial refresh", e)
                 }
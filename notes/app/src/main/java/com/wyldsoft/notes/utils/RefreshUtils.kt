@@ -4,6 +4,7 @@ import android.graphics.RectF
 import com.onyx.android.sdk.data.note.TouchPoint
 import com.onyx.android.sdk.pen.data.TouchPointList
 import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+import com.wyldsoft.notes.editorview.viewport.ShapeSpatialIndex
 
 /**
  * Utility class for refresh functionality including partial refresh optimization
@@ -76,6 +77,7 @@ object RefreshUtils {
         toolRadius: Float = DEFAULT_TOOL_RADIUS
     ): List<DrawingShape> {
         val pointList = TouchPointList().apply { add(point) }
+        DrawingShape.prefetchTouchPoints(availableShapes)
         return availableShapes.filter { shape ->
             shape.hitTestPoints(pointList, toolRadius)
         }
@@ -93,11 +95,30 @@ object RefreshUtils {
         availableShapes: List<DrawingShape>,
         toolRadius: Float = DEFAULT_TOOL_RADIUS
     ): List<DrawingShape> {
+        // Header-only candidates load their points in one query rather than one each
+        DrawingShape.prefetchTouchPoints(availableShapes)
         return availableShapes.filter { shape ->
             shape.hitTestPoints(touchPath, toolRadius)
         }
     }
 
+    /**
+     * Find shapes that intersect with a path of touch points using a spatial index
+     * Only shapes near the path are hit-tested
+     * @param touchPath TouchPointList representing the tool movement
+     * @param spatialIndex Index over the shapes to test against
+     * @param toolRadius Radius of the tool
+     * @return List of shapes that intersect with the path, in drawing order
+     */
+    fun findShapesInPath(
+        touchPath: TouchPointList,
+        spatialIndex: ShapeSpatialIndex,
+        toolRadius: Float = DEFAULT_TOOL_RADIUS
+    ): List<DrawingShape> {
+        val candidates = spatialIndex.queryPath(touchPath.points, toolRadius)
+        return findShapesInPath(touchPath, candidates, toolRadius)
+    }
+
     /**
      * Calculate the bounding rectangle for a collection of shapes
      * @param shapes Collection of shapes to calculate bounds for
@@ -19,7 +19,10 @@ object ShapeBoundsUtils {
      */
     fun calculateShapeBoundsWithStroke(shape: DrawingShape): RectF {
         // Ensure the shape has updated its bounding rectangle
-        shape.updateShapeRect()
+        // Shapes whose points are not loaded yet keep their stored bounds
+        if (shape.hasTouchPoints()) {
+            shape.updateShapeRect()
+        }
 
         val bounds = shape.boundingRect ?: run {
             // Fallback: calculate bounds from touch points if shape bounds are null
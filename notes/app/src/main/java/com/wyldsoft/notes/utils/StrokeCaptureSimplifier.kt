@@ -0,0 +1,159 @@
+package com.wyldsoft.notes.utils
+
+import android.util.Log
+import com.onyx.android.sdk.data.note.TouchPoint
+import com.onyx.android.sdk.pen.data.TouchPointList
+import com.wyldsoft.notes.editorview.drawing.shape.StrokeSimplifier
+import com.wyldsoft.notes.editorview.viewport.ViewportManager
+import com.wyldsoft.notes.pen.PenType
+
+/**
+ * Simplifies strokes as they are captured, before they are stored, indexed and rendered
+ * Points closer together than the digitizer needs are dropped first, then Ramer-Douglas-Peucker
+ * removes points that lie within a tolerance of the simplified polyline. The tolerance scales
+ * with stroke width and is capped so the error stays under MAX_SCREEN_ERROR pixels even at
+ * maximum zoom. Pressure-sensitive pens also keep points where pressure changes.
+ */
+class StrokeCaptureSimplifier(
+    @Volatile var config: Config = Config()
+) {
+    companion object {
+        private const val TAG = "StrokeCaptureSimplifier"
+
+        // Largest on-screen deviation, in pixels, allowed at maximum zoom
+        private const val MAX_SCREEN_ERROR = 1f
+
+        // Pens whose rendering varies width with pressure
+        private val PRESSURE_SENSITIVE_PENS = setOf(
+            PenType.FOUNTAIN,
+            PenType.NEO_BRUSH,
+            PenType.CHARCOAL,
+            PenType.CHARCOAL_V2
+        )
+    }
+
+    /**
+     * Simplification settings
+     * @param enabled Store strokes exactly as captured when false
+     * @param toleranceWidthFraction RDP tolerance as a fraction of the stroke width
+     * @param minTolerance Lower bound for the RDP tolerance in canvas units
+     * @param maxTolerance Upper bound for the RDP tolerance in canvas units
+     * @param minPointSpacingFraction Minimum spacing between kept points as a fraction of the RDP tolerance
+     * @param maxTurnDegrees Direction change above which closely spaced points are kept
+     * @param pressureToleranceFraction Pressure error allowed, as a fraction of the stroke's peak pressure
+     * @param retainRawPoints Keep the full-rate points on the shape for handwriting recognition
+     */
+    data class Config(
+        val enabled: Boolean = true,
+        val toleranceWidthFraction: Float = 0.1f,
+        val minTolerance: Float = 0.1f,
+        val maxTolerance: Float = MAX_SCREEN_ERROR / ViewportManager.MAX_ZOOM,
+        val minPointSpacingFraction: Float = 1f,
+        val maxTurnDegrees: Float = 30f,
+        val pressureToleranceFraction: Float = 0.05f,
+        val retainRawPoints: Boolean = false
+    )
+
+    /**
+     * Result of simplifying one stroke
+     * @param points Simplified points to store on the shape
+     * @param rawPoints Copy of the captured points, or null when not retained
+     */
+    data class Result(
+        val points: TouchPointList,
+        val rawPoints: TouchPointList?
+    )
+
+    private class PenStats {
+        var strokes = 0L
+        var inputPoints = 0L
+        var outputPoints = 0L
+    }
+
+    private val stats = HashMap<PenType, PenStats>()
+
+    /**
+     * Simplify captured points, which must already be in canvas coordinates
+     * @param touchPointList Captured points; not modified
+     * @param penType Pen the stroke was drawn with
+     * @param strokeWidth Stroke width in canvas units
+     * @return Simplified points and, if configured, the retained raw points
+     */
+    fun simplify(touchPointList: TouchPointList, penType: PenType, strokeWidth: Float): Result {
+        val config = config
+        val points = touchPointList.points
+        if (!config.enabled || points == null || points.size <= 2) {
+            record(penType, points?.size ?: 0, points?.size ?: 0)
+            return Result(touchPointList, null)
+        }
+
+        val tolerance = (strokeWidth * config.toleranceWidthFraction)
+            .coerceIn(config.minTolerance, config.maxTolerance)
+        val pressureTolerance = if (penType in PRESSURE_SENSITIVE_PENS) {
+            points.maxOf { it.pressure } * config.pressureToleranceFraction
+        } else {
+            Float.POSITIVE_INFINITY
+        }
+
+        val filtered = StrokeSimplifier.filterByDistance(
+            points,
+            tolerance * config.minPointSpacingFraction,
+            config.maxTurnDegrees,
+            pressureTolerance
+        )
+        val simplified = StrokeSimplifier.simplify(filtered, tolerance, pressureTolerance)
+
+        val result = TouchPointList()
+        simplified.forEach { result.add(it) }
+        val raw = if (config.retainRawPoints) copyPoints(touchPointList) else null
+
+        record(penType, points.size, simplified.size)
+        return Result(result, raw)
+    }
+
+    /**
+     * Get point reduction statistics per pen type for debugging
+     * Ratio is output points / input points, so lower means more reduction
+     */
+    @Synchronized
+    fun getStats(): Map<String, Any> {
+        return stats.entries.associate { (penType, penStats) ->
+            penType.name to mapOf(
+                "strokes" to penStats.strokes,
+                "inputPoints" to penStats.inputPoints,
+                "outputPoints" to penStats.outputPoints,
+                "ratio" to if (penStats.inputPoints > 0) {
+                    penStats.outputPoints.toFloat() / penStats.inputPoints
+                } else {
+                    1f
+                }
+            )
+        }
+    }
+
+    @Synchronized
+    private fun record(penType: PenType, inputPoints: Int, outputPoints: Int) {
+        val penStats = stats.getOrPut(penType) { PenStats() }
+        penStats.strokes++
+        penStats.inputPoints += inputPoints
+        penStats.outputPoints += outputPoints
+        Log.d(TAG, "Simplified ${penType.name} stroke: $inputPoints -> $outputPoints points")
+    }
+
+    /**
+     * Deep copy points so later edits to the stored stroke do not alter the raw capture
+     */
+    private fun copyPoints(touchPointList: TouchPointList): TouchPointList {
+        val copy = TouchPointList()
+        touchPointList.points.forEach { point ->
+            copy.add(TouchPoint().apply {
+                x = point.x
+                y = point.y
+                pressure = point.pressure
+                size = point.size
+                timestamp = point.timestamp
+            })
+        }
+        return copy
+    }
+}
@@ -0,0 +1,82 @@
+package com.wyldsoft.notes.utils
+
+import com.onyx.android.sdk.pen.data.TouchPointList
+import com.wyldsoft.notes.data.ShapeFactory
+import com.wyldsoft.notes.editorview.drawing.shape.DrawingShape
+
+/**
+ * Splits strokes at the segments crossed by an eraser path for precise erasing
+ */
+object StrokeSplitter {
+
+    /**
+     * Result of splitting one stroke
+     * @param original The stroke that was cut
+     * @param fragments Surviving pieces, in point order; empty if the whole stroke was erased
+     */
+    data class SplitResult(
+        val original: DrawingShape,
+        val fragments: List<DrawingShape>
+    )
+
+    /**
+     * Split a shape where the eraser path touches it
+     * @param shape Shape to cut
+     * @param eraserPath Eraser path in canvas coordinates
+     * @param radius Eraser radius
+     * @return Split result, or null if the eraser does not touch the shape
+     */
+    fun split(shape: DrawingShape, eraserPath: TouchPointList, radius: Float): SplitResult? {
+        val strokeData = shape.strokeData ?: return null
+
+        // Dots have no segments: erased whole when touched
+        if (strokeData.size() < 2) {
+            return if (shape.hitTestPoints(eraserPath, radius)) SplitResult(shape, emptyList()) else null
+        }
+
+        val hitSegments = shape.findErasedSegments(eraserPath, radius) ?: return null
+
+        // Point objects are only built for strokes the eraser actually cuts
+        val points = strokeData.toTouchPoints()
+
+        // Surviving fragments are maximal runs of segments the eraser did not touch
+        val fragments = mutableListOf<DrawingShape>()
+        var runStart = -1
+        for (segment in 0..hitSegments.size) {
+            val survives = segment < hitSegments.size && !hitSegments[segment]
+            if (survives && runStart < 0) {
+                runStart = segment
+            } else if (!survives && runStart >= 0) {
+                // Run covers segments runStart..segment-1, i.e. points runStart..segment
+                fragments.add(createFragment(shape, points.subList(runStart, segment + 1)))
+                runStart = -1
+            }
+        }
+
+        return SplitResult(shape, fragments)
+    }
+
+    /**
+     * Create a new shape with the original's style and a copy of the given points
+     */
+    private fun createFragment(
+        original: DrawingShape,
+        points: List<com.onyx.android.sdk.data.note.TouchPoint>
+    ): DrawingShape {
+        val fragmentPoints = TouchPointList()
+        points.forEach { fragmentPoints.add(it) }
+
+        val fragment = ShapeFactory.createShape(original.shapeType)
+        fragment.setTouchPointList(fragmentPoints)
+            .setShapeType(original.shapeType)
+            .setTexture(original.texture)
+            .setStrokeColor(original.strokeColor)
+            .setStrokeWidth(original.strokeWidth)
+            // Share the original's timestamp so reloads keep the fragments at its z-position
+            .setCreatedAt(original.createdAt)
+            // Fragments are stored with the pen the stroke was drawn with, not the current one
+            .inheritPenProfile(original)
+        fragment.setTransparent(original.isTransparent)
+        return fragment
+    }
+}
@@ -0,0 +1,146 @@
+package com.wyldsoft.notes.editorview.rendering
+
+import android.graphics.Rect
+import android.view.View
+import com.onyx.android.sdk.api.device.epd.UpdateMode
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class RefreshPolicyTest {
+    companion object {
+        private const val WIDTH = 1404
+        private const val HEIGHT = 1872
+        private const val INTERVAL = 5
+    }
+
+    /**
+     * Records update mode calls instead of driving a panel
+     */
+    private class FakeUpdateModeController : EpdUpdateModeController {
+        val calls = mutableListOf<String>()
+
+        override fun setViewDefaultUpdateMode(view: View, mode: UpdateMode) {
+            calls.add("setViewDefaultUpdateMode $mode")
+        }
+
+        override fun resetViewUpdateMode(view: View) {
+            calls.add("resetViewUpdateMode")
+        }
+
+        override fun enablePost(view: View, enable: Boolean) {
+            calls.add("enablePost $enable")
+        }
+    }
+
+    private lateinit var controller: FakeUpdateModeController
+    private var gesture = false
+    private lateinit var policy: RefreshPolicy
+
+    @Before
+    fun setUp() {
+        controller = FakeUpdateModeController()
+        gesture = false
+        policy = RefreshPolicy(controller, gestureInProgress = { gesture }, fullRefreshInterval = INTERVAL)
+    }
+
+    @Test
+    fun strokeCommitsAreNeverPromotedToFullRefresh() {
+        repeat(INTERVAL * 4) {
+            val decision = policy.decide(RefreshPolicy.ContentType.STROKE, rect(100, 100, 200, 150), WIDTH, HEIGHT)
+            assertFalse(decision.fullRefresh)
+            assertEquals(UpdateMode.HAND_WRITING_REPAINT_MODE, decision.updateMode)
+        }
+    }
+
+    @Test
+    fun eraseRefreshesUseFastModeAndAreNeverPromoted() {
+        repeat(INTERVAL * 4) {
+            val decision = policy.decide(RefreshPolicy.ContentType.ERASE, rect(0, 0, 50, 50), WIDTH, HEIGHT)
+            assertFalse(decision.fullRefresh)
+            assertEquals(UpdateMode.DU, decision.updateMode)
+        }
+    }
+
+    @Test
+    fun settledViewportFrameIsPromotedAfterStrokesReachTheInterval() {
+        repeat(INTERVAL) {
+            policy.decide(RefreshPolicy.ContentType.STROKE, rect(100, 100, 200, 150), WIDTH, HEIGHT)
+        }
+
+        val decision = policy.decide(RefreshPolicy.ContentType.VIEWPORT, null, WIDTH, HEIGHT)
+
+        assertTrue(decision.fullRefresh)
+        assertEquals(UpdateMode.GC, decision.updateMode)
+        assertEquals(0, policy.getStats()["partialUpdatesSinceFullRefresh"])
+    }
+
+    @Test
+    fun viewportFramesDuringGestureAreNotPromoted() {
+        gesture = true
+        repeat(INTERVAL * 2) {
+            val decision = policy.decide(RefreshPolicy.ContentType.VIEWPORT, null, WIDTH, HEIGHT)
+            assertFalse(decision.fullRefresh)
+            assertEquals(UpdateMode.DU, decision.updateMode)
+        }
+
+        gesture = false
+        assertTrue(policy.decide(RefreshPolicy.ContentType.VIEWPORT, null, WIDTH, HEIGHT).fullRefresh)
+    }
+
+    @Test
+    fun fullRefreshBecomesDueAfterWritingWithoutScrolling() {
+        repeat(INTERVAL - 1) {
+            policy.decide(RefreshPolicy.ContentType.STROKE, rect(100, 100, 200, 150), WIDTH, HEIGHT)
+        }
+        assertFalse(policy.isFullRefreshDue())
+
+        policy.decide(RefreshPolicy.ContentType.ERASE, rect(0, 0, 50, 50), WIDTH, HEIGHT)
+        assertTrue(policy.isFullRefreshDue())
+
+        // The idle refresh is posted as a full viewport frame, which clears the count
+        assertTrue(policy.decide(RefreshPolicy.ContentType.VIEWPORT, null, WIDTH, HEIGHT).fullRefresh)
+        assertFalse(policy.isFullRefreshDue())
+    }
+
+    @Test
+    fun fullRefreshIsNotDueDuringGesture() {
+        repeat(INTERVAL) {
+            policy.decide(RefreshPolicy.ContentType.STROKE, rect(100, 100, 200, 150), WIDTH, HEIGHT)
+        }
+        gesture = true
+        assertFalse(policy.isFullRefreshDue())
+    }
+
+    @Test
+    fun settledViewportFrameModeDependsOnArea() {
+        val large = policy.decide(RefreshPolicy.ContentType.VIEWPORT, rect(0, 0, WIDTH, HEIGHT), WIDTH, HEIGHT)
+        val small = policy.decide(RefreshPolicy.ContentType.VIEWPORT, rect(0, 0, 200, 200), WIDTH, HEIGHT)
+
+        assertEquals(UpdateMode.GU, large.updateMode)
+        assertEquals(UpdateMode.HAND_WRITING_REPAINT_MODE, small.updateMode)
+    }
+
+    @Test
+    fun decisionsDoNotDriveTheControllerDirectly() {
+        repeat(INTERVAL * 2) {
+            policy.decide(RefreshPolicy.ContentType.VIEWPORT, null, WIDTH, HEIGHT)
+        }
+
+        assertSame(controller, policy.getUpdateModeController())
+        assertTrue(controller.calls.isEmpty())
+    }
+
+    // android.graphics.Rect is a stub in local tests, so set its public fields directly
+    private fun rect(left: Int, top: Int, right: Int, bottom: Int): Rect {
+        return Rect().apply {
+            this.left = left
+            this.top = top
+            this.right = right
+            this.bottom = bottom
+        }
+    }
+}